@@ -19,26 +19,35 @@ package org.fabric3.gradle.plugin.assembly.impl;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.ArtifactRequest;
-import org.eclipse.aether.resolution.ArtifactResolutionException;
-import org.eclipse.aether.resolution.ArtifactResult;
+import org.fabric3.gradle.plugin.core.checksum.ArchiveChecksums;
+import org.fabric3.gradle.plugin.core.checksum.ChecksumSettings;
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.ArchiveEntryCounter;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.report.StopWatchFactory;
 import org.fabric3.gradle.plugin.core.resolver.AetherBootstrap;
-import org.fabric3.gradle.plugin.core.stopwatch.NoOpStopWatch;
+import org.fabric3.gradle.plugin.core.resolver.ArtifactResolver;
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
+import org.fabric3.gradle.plugin.core.stopwatch.Span;
 import org.fabric3.gradle.plugin.core.stopwatch.StopWatch;
-import org.fabric3.gradle.plugin.core.stopwatch.StreamStopWatch;
 import org.fabric3.gradle.plugin.core.util.ConfigFile;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
 import org.fabric3.gradle.plugin.core.util.FileHelper;
 import org.fabric3.gradle.plugin.core.util.ProgressLoggerCompat;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.tasks.bundling.Zip;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.logging.ProgressLogger;
@@ -47,71 +56,131 @@ import static org.fabric3.gradle.plugin.core.Constants.FABRIC3_GROUP;
 
 /**
  * Extends the Zip task to add assembly-specific build tasks including runtime resolution, configuration, profile installation and extension installation.
+ *
+ * Checksums of the archive and its entries are written as described in {@link ArchiveChecksums} and configured with the task properties of
+ * {@link ChecksumSettings}. The entries are digested as they are written, but the archive is written by the Gradle zip writer, which seeks back to complete
+ * each entry header, so the archive is read again once it is complete to compute its checksum.
  */
 @SuppressWarnings("ResultOfMethodCallIgnored")
 public class Assemble extends Zip {
+    public static final String REPORTS_DIRECTORY = "reports" + File.separator + "fabric3-assembly";
 
     private StopWatch stopWatch;
     private ProgressLogger progressLogger;
     private File imageDir;
-    private RepositorySystem system;
-    private DefaultRepositorySystemSession session;
-    private List<RemoteRepository> repositories;
+    private ArtifactResolver resolver;
     private AssemblyPluginConvention convention;
+    private DirectoryReaper reaper;
+    private ImagePlan plan;
+    private List<File> installedContributions = new ArrayList<>();
+    private ChecksumSettings checksumSettings;
 
     @Inject
     public Assemble(ProgressLoggerFactory progressLoggerFactory) {
         this.progressLogger = progressLoggerFactory.newOperation("fabric3Assembly");
-        if (Boolean.parseBoolean(System.getProperty("fabric3.performance"))) {
-            stopWatch = new StreamStopWatch("gradle", TimeUnit.MILLISECONDS, System.out);
-        } else {
-            stopWatch = new NoOpStopWatch();
-        }
+        this.stopWatch = StopWatchFactory.create(this);
+        eachFile(new ArchiveEntryCounter());
+        checksumSettings = ChecksumSettings.register(this, new Callable<List<File>>() {
+            public List<File> call() {
+                return Collections.singletonList(getArchivePath());
+            }
+        });
     }
 
+    @SuppressWarnings("try") // spans are closed to mark the end of each phase
     protected void copy() {
         stopWatch.start();
-        init();
-        try {
-            installRuntime();
-            installShared();
-            installProfiles();
-            installExtensions();
-            installDatasources();
-            installContributions();
-            installConfiguration();
-            removeExtensions();
+        try (Span root = stopWatch.span(getName())) {
+            init();
+            try (Span span = stopWatch.span("installRuntime")) {
+                installRuntime();
+            }
+            try (Span span = stopWatch.span("installShared")) {
+                installShared();
+            }
+            try (Span span = stopWatch.span("installProfiles")) {
+                installProfiles();
+            }
+            try (Span span = stopWatch.span("installExtensions")) {
+                installExtensions();
+            }
+            try (Span span = stopWatch.span("installDatasources")) {
+                installDatasources();
+            }
+            try (Span span = stopWatch.span("installContributions")) {
+                installContributions();
+            }
+            try (Span span = stopWatch.span("installConfiguration")) {
+                installConfiguration();
+            }
+            try (Span span = stopWatch.span("removeExtensions")) {
+                removeExtensions();
+            }
 
             if (convention.isClean()) {
-                cleanRuntimes(imageDir);
+                try (Span span = stopWatch.span("cleanRuntimes")) {
+                    cleanRuntimes(imageDir);
+                }
+            }
+
+            if (convention.isHoistLibraries()) {
+                try (Span span = stopWatch.span("hoistLibraries")) {
+                    hoistLibraries(span);
+                }
+            }
+
+            if (plan != null) {
+                try (Span span = stopWatch.span("syncImage")) {
+                    syncImage(span);
+                }
             }
 
+            resolver.getLock().save();
+
             from(imageDir);
             progressLogger.completed("COMPLETED");
-        } catch (ArtifactResolutionException | IOException e) {
+
+            try (Span span = stopWatch.span("archive")) {
+                Operation operation = FlightRecorderEvents.archive(getPath());
+                super.copy();
+                span.add(Span.BYTES, getArchivePath().length());
+                operation.commit(getArchivePath(), getArchivePath().length());
+            }
+        } catch (IOException e) {
             throw new GradleException(e.getMessage(), e);
+        } finally {
+            stopWatch.stop();
+            stopWatch.flush();
         }
-        super.copy();
-        stopWatch.stop();
-        stopWatch.flush();
     }
 
-    private void init() {
+    protected CopyAction createCopyAction() {
+        return checksumSettings.apply(super.createCopyAction(), Collections.singletonList(getArchivePath()));
+    }
+
+    private void init() throws IOException {
         ProgressLoggerCompat.setDescription(progressLogger, "Fabric3 assembly plugin");
         ProgressLoggerCompat.setLoggingHeader(progressLogger, "Fabric3 assembly plugin");
         progressLogger.started("STARTING");
 
         Project project = getProject();
+        convention = (AssemblyPluginConvention) project.getConvention().getByName(AssemblyPluginConvention.FABRIC3_ASSEMBLY_CONVENTION);
+
         boolean offline = project.getGradle().getStartParameter().isOffline();
-        system = AetherBootstrap.getRepositorySystem();
+        RepositorySystem system = AetherBootstrap.getRepositorySystem();
         ServiceRegistry registry = getServices();
-        session = AetherBootstrap.getRepositorySystemSession(system, registry, offline);
-        repositories = AetherBootstrap.getRepositories(registry);
+        String updatePolicy = AetherBootstrap.getUpdatePolicy(convention.getSnapshotFreshness());
+        DefaultRepositorySystemSession session = AetherBootstrap.getRepositorySystemSession(system, registry, offline, updatePolicy);
+        ResolutionLock lock = ResolutionLock.load(new File(project.getProjectDir(), ResolutionLock.LOCK_FILE), convention.isUpdateLock());
+        resolver = new ArtifactResolver(system, session, AetherBootstrap.getRepositories(registry), lock, convention.getSnapshotFreshness(),
+                                        new File(getProject().getRootDir(), ArtifactResolver.VERIFIED_CACHE));
 
         File buildDir = project.getBuildDir();
         imageDir = new File(buildDir, "image");
         imageDir.mkdirs();
-        convention = (AssemblyPluginConvention) project.getConvention().getByName(AssemblyPluginConvention.FABRIC3_ASSEMBLY_CONVENTION);
+        reaper = DirectoryReaper.forBuildDir(buildDir);
+        reaper.resume();
+        plan = convention.isDifferentialImage() ? new ImagePlan(imageDir) : null;
         stopWatch.split("Fabric3 Assembly init");
     }
 
@@ -122,9 +191,17 @@ public class Assemble extends Zip {
      */
     private void cleanRuntimes(File imageDir) throws IOException {
         File runtimes = new File(imageDir, "runtimes");
+        if (plan != null) {
+            for (File file : plan.getDirectories(runtimes)) {
+                if (!convention.getContributionTarget().equals(file.getName())) {
+                    plan.removeDirectory(file);
+                }
+            }
+            return;
+        }
         for (File file : runtimes.listFiles()) {
             if (file.isDirectory() && !convention.getContributionTarget().equals(file.getName())) {
-                FileHelper.forceDelete(file);
+                reaper.discard(file);
             }
         }
     }
@@ -137,10 +214,14 @@ public class Assemble extends Zip {
             String fileName = id + "-" + version + ".jar";
             File extensionsDir = new File(imageDir, "extensions");
             File file = new File(extensionsDir, fileName);
-            boolean result = file.delete();
+            Operation operation = FlightRecorderEvents.delete(extension.toString());
+            long length = file.length();
+            boolean result = plan != null ? plan.remove(file) : file.delete();
             if (!result) {
                 throw new GradleException("Unable to exclude extension: " + file);
             }
+            operation.commit(file, length);
+            MetricsRegistry.getInstance().counter(MetricNames.FILES_EXCLUDED).increment();
         }
 
     }
@@ -159,55 +240,104 @@ public class Assemble extends Zip {
                 targetDir = new File(imageDir, destination);
             }
             File target = new File(targetDir, source.getName());
-            targetDir.mkdirs();
-            FileHelper.copy(source, target);
+            mkdirs(targetDir);
+            copy(source, target);
+        }
+    }
+
+    /**
+     * Writes the files of the planned image that differ from the image directory and removes files that are no longer part of the image.
+     *
+     * @param span the span to record written bytes in
+     */
+    private void syncImage(Span span) throws IOException {
+        progressLogger.progress("Syncing the runtime image");
+        ImagePlan.Report report = plan.sync(reaper);
+        span.add(Span.BYTES, report.getBytes());
+        getLogger().info("Fabric3 assembly image sync: " + report);
+        stopWatch.split("Fabric3 Assembly sync image");
+    }
+
+    /**
+     * Moves libraries embedded in more than one installed contribution to the host directory, where they are loaded once and shared.
+     *
+     * @param span the span to record savings in
+     */
+    private void hoistLibraries(Span span) throws IOException {
+        progressLogger.progress("Hoisting shared contribution libraries");
+        File workDirectory = new File(getProject().getBuildDir(), "fabric3" + File.separator + getName());
+        File hostDirectory = new File(imageDir, "host");
+        LibraryHoister.Report report;
+        if (plan != null) {
+            // hoisted before the image is synced so the plan contains the rewritten contributions and the shared libraries
+            File stagingDirectory = new File(workDirectory, "hoisted");
+            LibraryHoister hoister = new LibraryHoister(new File(stagingDirectory, "hoisted.state"));
+            report = hoister.hoist(plan, installedContributions, hostDirectory, stagingDirectory);
+        } else {
+            report = new LibraryHoister(new File(workDirectory, "hoisted.state")).hoist(installedContributions, hostDirectory);
         }
+        report.write(new File(getProject().getBuildDir(), REPORTS_DIRECTORY + File.separator + getName() + "-hoist.txt"));
+        span.add(Span.BYTES, report.getBytes());
+        getLogger().lifecycle("Fabric3 assembly: " + report);
+        stopWatch.split("Fabric3 Assembly hoist shared contribution libraries");
     }
 
-    private void installContributions() throws ArtifactResolutionException, IOException {
+    private void installContributions() throws IOException {
         File repository = new File(imageDir, "runtimes" + File.separator + convention.getContributionTarget() + File.separatorChar + "deploy");
-        repository.mkdirs();
+        mkdirs(repository);
+        installedContributions.clear();
 
         for (Artifact artifact : convention.getContributions()) {
             progressLogger.progress("Installing " + artifact.toString());
-            ArtifactResult result = system.resolveArtifact(session, new ArtifactRequest(artifact, repositories, ""));
-
-            File source = result.getArtifact().getFile();
+            File source = resolve(artifact);
 
             File target = new File(repository, source.getName());
-            FileHelper.copy(source, target);
+            copy(source, target);
+            installedContributions.add(target);
         }
 
         stopWatch.split("Fabric3 Assembly resolve and install contributions");
 
         for (Project project : convention.getProjectContributions()) {
             progressLogger.progress("Installing " + project.getName());
-            File[] files = new File(project.getBuildDir() + File.separator + "libs").listFiles();
-            File source = null;
-            if (files == null || files.length == 0) {
-                throw new GradleException("Archive not found for contribution project: " + project.getName());
-            } else if (files.length > 1) {
-                // More than one archive. Check if a WAR is produced and use that as sometimes the JAR task may not be disabled in a webapp project, resulting
-                // in multiple artifacts.
-                for (File file : files) {
-                    if (file.getName().endsWith(".war")) {
-                        source = file;
-                        break;
-                    }
-                }
-                if (source == null) {
-                    throw new GradleException("Contribution project has multiple library archives: " + project.getName());
-                }
-            } else {
-                source = files[0];
-            }
+            File source = getContributionArchive(project);
             File target = new File(repository, source.getName());
-            FileHelper.copy(source, target);
+            copy(source, target);
+            installedContributions.add(target);
         }
         stopWatch.split("Fabric3 Assembly install project contributions");
     }
 
-    private void installDatasources() throws ArtifactResolutionException, IOException {
+    /**
+     * Returns the archive built by a contribution project.
+     *
+     * @param project the contribution project
+     * @return the archive
+     */
+    static File getContributionArchive(Project project) {
+        File[] files = new File(project.getBuildDir() + File.separator + "libs").listFiles();
+        File source = null;
+        if (files == null || files.length == 0) {
+            throw new GradleException("Archive not found for contribution project: " + project.getName());
+        } else if (files.length > 1) {
+            // More than one archive. Check if a WAR is produced and use that as sometimes the JAR task may not be disabled in a webapp project, resulting
+            // in multiple artifacts.
+            for (File file : files) {
+                if (file.getName().endsWith(".war")) {
+                    source = file;
+                    break;
+                }
+            }
+            if (source == null) {
+                throw new GradleException("Contribution project has multiple library archives: " + project.getName());
+            }
+        } else {
+            source = files[0];
+        }
+        return source;
+    }
+
+    private void installDatasources() throws IOException {
         if (convention.getDatasources().isEmpty()) {
             return;
         }
@@ -215,13 +345,12 @@ public class Assemble extends Zip {
         File extensionsDir = new File(imageDir, "extensions");
         File datasourceDir = new File(extensionsDir, "datasource");
 
-        datasourceDir.mkdirs();
+        mkdirs(datasourceDir);
         for (Artifact artifact : convention.getDatasources()) {
             progressLogger.progress("Installing " + artifact.toString());
-            ArtifactResult result = system.resolveArtifact(session, new ArtifactRequest(artifact, repositories, ""));
-            File source = result.getArtifact().getFile();
+            File source = resolve(artifact);
             File target = new File(datasourceDir, source.getName());
-            FileHelper.copy(source, target);
+            copy(source, target);
         }
         stopWatch.split("Fabric3 Assembly resolve and extract datasource extensions");
     }
@@ -231,7 +360,7 @@ public class Assemble extends Zip {
         for (Artifact artifact : convention.getExtensions()) {
             progressLogger.progress("Installing " + artifact.toString());
             File source = resolve(artifact);
-            FileHelper.copy(source, new File(extensionDir, source.getName()));
+            copy(source, new File(extensionDir, source.getName()));
         }
         stopWatch.split("Fabric3 Assembly resolve and copy extensions");
     }
@@ -241,7 +370,7 @@ public class Assemble extends Zip {
         for (Artifact artifact : convention.getShared()) {
             progressLogger.progress("Installing " + artifact.toString());
             File source = resolve(artifact);
-            FileHelper.copy(source, new File(hostDir, source.getName()));
+            copy(source, new File(hostDir, source.getName()));
         }
         stopWatch.split("Fabric3 Assembly resolve and copy shared artifacts");
     }
@@ -249,7 +378,7 @@ public class Assemble extends Zip {
     private void installProfiles() throws IOException {
         for (Artifact profile : convention.getProfiles()) {
             progressLogger.progress("Installing " + profile.toString());
-            FileHelper.extract(resolve(profile), imageDir);
+            extract(resolve(profile), imageDir);
         }
         stopWatch.split("Fabric3 Assembly resolve and extract profiles");
     }
@@ -259,20 +388,42 @@ public class Assemble extends Zip {
         DefaultArtifact runtimeArtifact = new DefaultArtifact(FABRIC3_GROUP, "runtime-standalone", "bin", "zip", convention.getRuntimeVersion());
         File resolved = resolve(runtimeArtifact);
         stopWatch.split("Fabric3 Assembly resolve runtime distribution");
-        FileHelper.extract(resolved, imageDir);
+        extract(resolved, imageDir);
         stopWatch.split("Fabric3 Assembly extract runtime distribution");
     }
 
     private File resolve(Artifact artifact) {
         progressLogger.progress("Resolving " + artifact.toString());
-        ArtifactRequest request = new ArtifactRequest();
-        request.setRepositories(repositories);
-        request.setArtifact(artifact);
-        try {
-            ArtifactResult resolvedRuntime = system.resolveArtifact(session, request);
-            return resolvedRuntime.getArtifact().getFile();
-        } catch (ArtifactResolutionException e) {
-            throw new GradleException(e.getMessage(), e);
+        try (Span span = stopWatch.span("resolve")) {
+            span.add(Span.ARTIFACTS, 1);
+            return resolver.resolve(artifact);
+        }
+    }
+
+    private void mkdirs(File directory) {
+        if (plan != null) {
+            plan.mkdirs(directory);
+        }
+        directory.mkdirs();
+    }
+
+    private void copy(File source, File target) throws IOException {
+        if (plan != null) {
+            plan.copy(source, target);
+            return;
+        }
+        try (Span span = stopWatch.span("copy")) {
+            span.add(Span.BYTES, FileHelper.copy(source, target));
+        }
+    }
+
+    private void extract(File source, File destination) throws IOException {
+        if (plan != null) {
+            plan.extract(source, destination);
+            return;
+        }
+        try (Span span = stopWatch.span("extract")) {
+            span.add(Span.BYTES, FileHelper.extract(source, destination));
         }
     }
 
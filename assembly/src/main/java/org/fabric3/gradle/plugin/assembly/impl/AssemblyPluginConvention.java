@@ -47,6 +47,28 @@ public class AssemblyPluginConvention {
      */
     private String contributionTarget = "vm";
 
+    /**
+     * Minutes a locked or previously resolved snapshot is used before the remote repositories are checked for a newer version.
+     */
+    private long snapshotFreshness = 24 * 60;
+
+    /**
+     * True if artifacts resolved without a lock entry and refreshed snapshots should be recorded in the lock file. By default, only the fabric3Lock task
+     * writes the lock file.
+     */
+    private boolean updateLock;
+
+    /**
+     * True if libraries embedded in more than one contribution should be moved to the host directory.
+     */
+    private boolean hoistLibraries;
+
+    /**
+     * True if the image directory should be synced by writing only files that differ from their sources and removing files that are no longer part of the
+     * image, instead of writing every file.
+     */
+    private boolean differentialImage;
+
     private Set<Artifact> extensions = new HashSet<>();
     private Set<Artifact> profiles = new HashSet<>();
     private Set<Artifact> exclusions = new HashSet<>();
@@ -80,6 +102,38 @@ public class AssemblyPluginConvention {
         this.contributionTarget = contributionTarget;
     }
 
+    public boolean isUpdateLock() {
+        return updateLock;
+    }
+
+    public void setUpdateLock(boolean updateLock) {
+        this.updateLock = updateLock;
+    }
+
+    public long getSnapshotFreshness() {
+        return snapshotFreshness;
+    }
+
+    public void setSnapshotFreshness(long snapshotFreshness) {
+        this.snapshotFreshness = snapshotFreshness;
+    }
+
+    public boolean isHoistLibraries() {
+        return hoistLibraries;
+    }
+
+    public void setHoistLibraries(boolean hoistLibraries) {
+        this.hoistLibraries = hoistLibraries;
+    }
+
+    public boolean isDifferentialImage() {
+        return differentialImage;
+    }
+
+    public void setDifferentialImage(boolean differentialImage) {
+        this.differentialImage = differentialImage;
+    }
+
     public void shared(Map<String, String> extension) {
         shared.add(convert(extension, "jar"));
     }
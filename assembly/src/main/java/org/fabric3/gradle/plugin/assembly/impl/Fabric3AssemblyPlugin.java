@@ -18,6 +18,18 @@ package org.fabric3.gradle.plugin.assembly.impl;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.fabric3.gradle.plugin.core.analysis.ClassAnalysis;
+import org.fabric3.gradle.plugin.core.report.MetricsReporter;
+import org.fabric3.gradle.plugin.core.resolver.Lock;
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -32,6 +44,7 @@ import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
+import static org.fabric3.gradle.plugin.core.Constants.FABRIC3_GROUP;
 
 /**
  * Creates a Fabric3 runtime distribution.
@@ -46,9 +59,10 @@ public class Fabric3AssemblyPlugin implements Plugin<Project> {
     @Inject
     public void apply(final Project project) {
         disableJar(project);
+        MetricsReporter.install(project);
         project.getConvention().add(AssemblyPluginConvention.FABRIC3_ASSEMBLY_CONVENTION, AssemblyPluginConvention.class);
 
-        Zip zip = project.getTasks().create("fabric3Assembly", Assemble.class);
+        final Zip zip = project.getTasks().create("fabric3Assembly", Assemble.class);
         zip.setDescription("Assembles a Fabric3 runtime image.");
         zip.setGroup(BasePlugin.BUILD_GROUP);
         zip.getInputs().source(REBUILD_MARKER);
@@ -64,6 +78,48 @@ public class Fabric3AssemblyPlugin implements Plugin<Project> {
         JavaLibrary library = new JavaLibrary(artifact, runtimeConfiguration.getAllDependencies());
         project.getComponents().add(library);
 
+        addLockTask(project);
+        addAnalysisTask(project, zip);
+        addHotDeployTask(project, zip);
+    }
+
+    private void addHotDeployTask(Project project, Zip zip) {
+        HotDeploy hotDeploy = project.getTasks().create("fabric3HotDeploy", HotDeploy.class);
+        hotDeploy.setDescription("Watches contribution projects and configuration files and deploys changes to the assembled Fabric3 runtime image.");
+        hotDeploy.setGroup(BasePlugin.BUILD_GROUP);
+        hotDeploy.mustRunAfter(zip);
+    }
+
+    private void addAnalysisTask(final Project project, Zip zip) {
+        ClassAnalysis analysis = project.getTasks().create("fabric3AnalyzeClasses", ClassAnalysis.class);
+        analysis.setDescription("Reports duplicate classes and split packages in the Fabric3 runtime image.");
+        analysis.setGroup(BasePlugin.BUILD_GROUP);
+        analysis.dependsOn(zip);
+        analysis.setRoots(new Callable<Collection<File>>() {
+            public Collection<File> call() throws Exception {
+                return Collections.singletonList(new File(project.getBuildDir(), "image"));
+            }
+        });
+    }
+
+    private void addLockTask(final Project project) {
+        Lock lock = project.getTasks().create("fabric3Lock", Lock.class);
+        lock.setDescription("Resolves the Fabric3 assembly artifacts and records their exact versions in " + ResolutionLock.LOCK_FILE + ".");
+        lock.setGroup(BasePlugin.BUILD_GROUP);
+        lock.setArtifacts(new Callable<Collection<Artifact>>() {
+            public Collection<Artifact> call() throws Exception {
+                String name = AssemblyPluginConvention.FABRIC3_ASSEMBLY_CONVENTION;
+                AssemblyPluginConvention convention = (AssemblyPluginConvention) project.getConvention().getByName(name);
+                List<Artifact> artifacts = new ArrayList<>();
+                artifacts.add(new DefaultArtifact(FABRIC3_GROUP, "runtime-standalone", "bin", "zip", convention.getRuntimeVersion()));
+                artifacts.addAll(convention.getShared());
+                artifacts.addAll(convention.getProfiles());
+                artifacts.addAll(convention.getExtensions());
+                artifacts.addAll(convention.getDatasources());
+                artifacts.addAll(convention.getContributions());
+                return artifacts;
+            }
+        });
     }
 
     private void disableJar(Project project) {
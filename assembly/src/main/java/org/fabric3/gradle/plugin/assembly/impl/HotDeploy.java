@@ -0,0 +1,429 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.assembly.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.util.ConfigFile;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.tooling.BuildLauncher;
+import org.gradle.tooling.GradleConnectionException;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+/**
+ * Watches the contribution projects and configuration files of an assembled runtime image and deploys changes to the image until the build is cancelled.
+ *
+ * When a file in a contribution project changes, the project is rebuilt with its <code>assemble</code> task in a nested build run through the Gradle
+ * tooling API. Once the nested build completes, the archives of the projects whose <code>assemble</code> task succeeded replace their archives in the
+ * deploy directory of the contribution target runtime, where they are picked up by the runtime's deploy directory scanner. Archives rebuilt by other
+ * builds, such as an IDE or a continuous Gradle build, are deployed in the same way once they are complete, that is, they can be opened as archives and
+ * have not been modified for the quiet period. If the name of a contribution archive changes, for example with the project version, the previously
+ * deployed archive is removed. If the assembly hoists shared libraries, embedded libraries identical to a library in the host directory of the image are
+ * removed from the deployed archive, as they were when the image was assembled. Changed configuration files replace their copies in the image. Files are
+ * staged outside the image and atomically renamed into place, so the runtime does not observe partially written files.
+ */
+public class HotDeploy extends DefaultTask {
+    private static final String STAGING_DIRECTORY = "fabric3" + File.separator + "hotdeploy";
+
+    private long quietPeriod = 200;
+
+    private AssemblyPluginConvention convention;
+    private File imageDir;
+    private File deployDir;
+    private File stagingDir;
+    private WatchService watcher;
+    private Map<WatchKey, Watch> watches = new HashMap<>();
+    private ProjectConnection connection;
+
+    // archives rebuilt by other builds that were incomplete when they were last checked
+    private Set<Project> pending = new LinkedHashSet<>();
+
+    // the archive deployed for each contribution project
+    private Map<Project, File> deployed = new HashMap<>();
+
+    public long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Sets the time in milliseconds without further changes after which changes are deployed, so a set of files saved together results in a single
+     * rebuild. Defaults to 200.
+     *
+     * @param quietPeriod the quiet period
+     */
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    @TaskAction
+    public void watch() throws IOException {
+        init();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            for (Project project : convention.getProjectContributions()) {
+                registerTree(project.getProjectDir().toPath(), project);
+                File libs = new File(project.getBuildDir(), "libs");
+                libs.mkdirs();
+                register(libs.toPath(), new Watch(project, true));
+            }
+            for (ConfigFile configFile : convention.getConfigFiles()) {
+                File source = getConfigSource(configFile);
+                WatchKey key = register(source.getParentFile().toPath(), new Watch(null, false));
+                watches.get(key).configFiles.add(configFile);
+            }
+            getLogger().lifecycle("Fabric3 hot deploy: watching " + convention.getProjectContributions().size() + " contributions and "
+                                  + convention.getConfigFiles().size() + " configuration files for " + imageDir);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(1, TimeUnit.SECONDS);
+                if (key == null && pending.isEmpty()) {
+                    continue;
+                }
+                Set<Project> changed = new LinkedHashSet<>();
+                Set<Project> outputs = new LinkedHashSet<>(pending);
+                Set<ConfigFile> configFiles = new LinkedHashSet<>();
+                pending.clear();
+                while (key != null) {
+                    collect(key, changed, outputs, configFiles);
+                    key = watcher.poll(quietPeriod, TimeUnit.MILLISECONDS);
+                }
+                long start = System.nanoTime();
+                Set<Project> rebuilt = changed.isEmpty() ? Collections.<Project>emptySet() : rebuild(changed);
+                for (Project project : rebuilt) {
+                    deploy(project, true, start);
+                }
+                outputs.removeAll(changed);
+                for (Project project : outputs) {
+                    deploy(project, false, start);
+                }
+                for (ConfigFile configFile : configFiles) {
+                    deploy(configFile, start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+    }
+
+    private void init() {
+        Project project = getProject();
+        convention = (AssemblyPluginConvention) project.getConvention().getByName(AssemblyPluginConvention.FABRIC3_ASSEMBLY_CONVENTION);
+        imageDir = new File(project.getBuildDir(), "image");
+        deployDir = new File(imageDir, "runtimes" + File.separator + convention.getContributionTarget() + File.separator + "deploy");
+        if (!deployDir.isDirectory()) {
+            throw new GradleException("Runtime image not found in " + imageDir + ". Run fabric3Assembly before fabric3HotDeploy.");
+        }
+        stagingDir = new File(project.getBuildDir(), STAGING_DIRECTORY);
+        stagingDir.mkdirs();
+        for (Project contribution : convention.getProjectContributions()) {
+            File archive = getArchive(contribution);
+            if (archive != null && new File(deployDir, archive.getName()).isFile()) {
+                deployed.put(contribution, new File(deployDir, archive.getName()));
+            }
+        }
+    }
+
+    /**
+     * Collects the changes reported by a watch key.
+     */
+    private void collect(WatchKey key, Set<Project> changed, Set<Project> outputs, Set<ConfigFile> configFiles) throws IOException {
+        Watch watch = watches.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (watch == null) {
+                break;
+            }
+            Path path = event.kind() == StandardWatchEventKinds.OVERFLOW ? null : watch.directory.resolve((Path) event.context());
+            // configuration files may be in a contribution project directory
+            for (ConfigFile configFile : watch.configFiles) {
+                if (path == null || path.equals(getConfigSource(configFile).toPath())) {
+                    configFiles.add(configFile);
+                }
+            }
+            if (watch.project == null) {
+                continue;
+            }
+            if (watch.output) {
+                outputs.add(watch.project);
+            } else if (path == null || !isExcluded(path, watch.project)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    registerTree(path, watch.project);
+                }
+                changed.add(watch.project);
+            }
+        }
+        if (!key.reset()) {
+            watches.remove(key);
+        }
+    }
+
+    /**
+     * Rebuilds the archives of changed contribution projects in a nested build and waits for it to complete. The build continues after a task fails so
+     * the projects that did build can be deployed.
+     *
+     * @return the projects whose archives were rebuilt
+     */
+    private Set<Project> rebuild(Set<Project> projects) {
+        final Map<String, Project> tasks = new LinkedHashMap<>();
+        for (Project project : projects) {
+            tasks.put(project.getPath() + ":assemble", project);
+        }
+        getLogger().lifecycle("Fabric3 hot deploy: rebuilding " + tasks.keySet());
+        final Set<Project> rebuilt = new LinkedHashSet<>();
+        BuildLauncher launcher = getConnection().newBuild();
+        launcher.forTasks(tasks.keySet().toArray(new String[tasks.size()]));
+        launcher.withArguments(getArguments());
+        launcher.setStandardOutput(System.out);
+        launcher.setStandardError(System.err);
+        launcher.addProgressListener(new ProgressListener() {
+            public void statusChanged(ProgressEvent event) {
+                if (event instanceof TaskFinishEvent && ((TaskFinishEvent) event).getResult() instanceof TaskSuccessResult) {
+                    Project project = tasks.get(((TaskFinishEvent) event).getDescriptor().getTaskPath());
+                    if (project != null) {
+                        rebuilt.add(project);
+                    }
+                }
+            }
+        });
+        try {
+            launcher.run();
+        } catch (GradleConnectionException e) {
+            // keep watching so the change can be fixed and saved again
+            getLogger().error("Fabric3 hot deploy: rebuild failed: " + e.getMessage());
+        }
+        return rebuilt;
+    }
+
+    private ProjectConnection getConnection() {
+        if (connection == null) {
+            // the connection is kept open so the nested builds reuse a daemon
+            GradleConnector connector = GradleConnector.newConnector();
+            connector.forProjectDirectory(getProject().getRootDir());
+            connector.useInstallation(getProject().getGradle().getGradleHomeDir());
+            connection = connector.connect();
+        }
+        return connection;
+    }
+
+    private String[] getArguments() {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("--continue");
+        if (getProject().getGradle().getStartParameter().isOffline()) {
+            arguments.add("--offline");
+        }
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    /**
+     * Deploys the archive of a contribution project, removing the previously deployed archive if its name changed.
+     *
+     * @param project the project
+     * @param rebuilt true if the archive was rebuilt by the nested build, otherwise the archive is only deployed once it is complete
+     * @param start   the time the changes were detected
+     */
+    private void deploy(Project project, boolean rebuilt, long start) throws IOException {
+        File source = getArchive(project);
+        if (source == null) {
+            getLogger().warn("Fabric3 hot deploy: archive not found for contribution project: " + project.getName());
+            return;
+        }
+        if (!rebuilt && !isComplete(source)) {
+            // the archive is being written by another build
+            pending.add(project);
+            return;
+        }
+        File target = new File(deployDir, source.getName());
+        if (convention.isHoistLibraries()) {
+            // libraries hoisted to the host directory are removed so their classes are not loaded by both the host and the contribution classloaders
+            File stripped = new File(stagingDir, "hoisted" + File.separator + source.getName());
+            if (LibraryHoister.strip(source, stripped, new File(imageDir, "host"))) {
+                source = stripped;
+            }
+        }
+        replace(source, target, start);
+        File previous = deployed.put(project, target);
+        if (previous != null && !previous.equals(target) && Files.deleteIfExists(previous.toPath())) {
+            getLogger().lifecycle("Fabric3 hot deploy: removed " + previous);
+        }
+    }
+
+    /**
+     * Returns the archive built by a contribution project. Unlike {@link Assemble#getContributionArchive(Project)}, a project may have several archives
+     * since the build directory is not cleaned between rebuilds, in which case the most recently written archive is returned. A WAR is preferred in the
+     * same way.
+     *
+     * @return the archive or null if the project has no archive
+     */
+    private File getArchive(Project project) {
+        File[] files = new File(project.getBuildDir(), "libs").listFiles();
+        File archive = null;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!file.isFile() || !(name.endsWith(".jar") || name.endsWith(".war"))) {
+                    continue;
+                }
+                boolean war = name.endsWith(".war");
+                boolean currentWar = archive != null && archive.getName().endsWith(".war");
+                if (archive == null || (war && !currentWar) || (war == currentWar && file.lastModified() > archive.lastModified())) {
+                    archive = file;
+                }
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Returns true if an archive written by another build is complete: it has not been modified for the quiet period and its central directory, which is
+     * written last, can be read.
+     */
+    @SuppressWarnings("try")
+    private boolean isComplete(File archive) {
+        long length = archive.length();
+        long lastModified = archive.lastModified();
+        if (System.currentTimeMillis() - lastModified < quietPeriod) {
+            return false;
+        }
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            return archive.length() == length && archive.lastModified() == lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deploy(ConfigFile configFile, long start) throws IOException {
+        File source = getConfigSource(configFile);
+        if (!source.isFile()) {
+            return;
+        }
+        File targetDir;
+        if (configFile.getDestination() == null) {
+            targetDir = new File(imageDir, "runtimes" + File.separator + convention.getContributionTarget() + File.separator + "config");
+        } else {
+            targetDir = new File(imageDir, configFile.getDestination());
+        }
+        targetDir.mkdirs();
+        replace(source, new File(targetDir, source.getName()), start);
+    }
+
+    /**
+     * Atomically replaces an image file with a copy of its source unless the image file is already a copy. The copy is staged outside the image so that
+     * the deploy directory scanner does not observe the temporary file.
+     */
+    private void replace(File source, File target, long start) throws IOException {
+        FileSync.Source contents = FileSync.source(source);
+        if (FileSync.isUnchanged(target, contents)) {
+            return;
+        }
+        FileSync.replace(target, contents, stagingDir);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        getLogger().lifecycle("Fabric3 hot deploy: deployed " + target + " in " + millis + "ms");
+    }
+
+    private File getConfigSource(ConfigFile configFile) {
+        // main directory is parent of the build directory
+        return new File(getProject().getBuildDir().getParent(), configFile.getSource()).toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    /**
+     * Returns true if a path is in the build directory of a contribution project or is hidden, such as IDE and Gradle metadata.
+     */
+    private boolean isExcluded(Path path, Project project) {
+        Path buildDir = project.getBuildDir().toPath();
+        for (Path current = path; current != null && !current.equals(project.getProjectDir().toPath()); current = current.getParent()) {
+            if (current.equals(buildDir) || current.getFileName().toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerTree(Path root, final Project project) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+                if (isExcluded(directory, project)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(directory, new Watch(project, false));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private WatchKey register(Path directory, Watch watch) throws IOException {
+        WatchKey key = directory.register(watcher,
+                                          StandardWatchEventKinds.ENTRY_CREATE,
+                                          StandardWatchEventKinds.ENTRY_MODIFY,
+                                          StandardWatchEventKinds.ENTRY_DELETE);
+        if (!watches.containsKey(key)) {
+            watch.directory = directory;
+            watches.put(key, watch);
+        }
+        return key;
+    }
+
+    /**
+     * A watched directory.
+     */
+    private static class Watch {
+        private Path directory;
+        private Project project;
+        private boolean output;
+        private List<ConfigFile> configFiles = new ArrayList<>();
+
+        public Watch(Project project, boolean output) {
+            this.project = project;
+            this.output = output;
+        }
+    }
+
+}
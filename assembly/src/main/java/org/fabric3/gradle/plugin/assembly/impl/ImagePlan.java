@@ -0,0 +1,378 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.assembly.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+
+/**
+ * The intended contents of a runtime image, which are synced to the image directory by writing only files that differ and removing files that are no longer
+ * part of the image.
+ *
+ * Each file is planned with its source: either a file that is copied or an entry of an archive that is extracted. Later plans for the same path replace
+ * earlier ones, in the same way as overwriting the file. Image files are compared with their sources and replaced using {@link FileSync}. For extracted
+ * entries, the CRC read from the archive directory is used, so only the image file is read when the modification times differ.
+ */
+public class ImagePlan {
+    private File root;
+    private Map<String, Source> files = new TreeMap<>();
+    private Set<String> directories = new TreeSet<>();
+
+    /**
+     * Constructor.
+     *
+     * @param root the image directory
+     */
+    public ImagePlan(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Plans a copy of a file.
+     *
+     * @param source the file
+     * @param target the image file
+     */
+    public void copy(File source, File target) {
+        add(getPath(target), new Source(source, null, source.length(), source.lastModified(), -1));
+    }
+
+    /**
+     * Plans a directory, which is kept in the image even if it is empty.
+     *
+     * @param target the image directory
+     */
+    public void mkdirs(File target) {
+        addDirectory(getPath(target));
+    }
+
+    /**
+     * Plans the extraction of an archive, skipping manifests as {@link FileHelper#extract(File, File)} does.
+     *
+     * @param source      the archive
+     * @param destination the image directory to extract to
+     * @throws IOException if there is an error reading the archive directory
+     */
+    public void extract(File source, File destination) throws IOException {
+        String base = getPath(destination);
+        String prefix = base.isEmpty() ? "" : base + "/";
+        addDirectory(base);
+        try (ZipFile zipFile = new ZipFile(source)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    addDirectory(prefix + name.substring(0, name.length() - 1));
+                } else if (!name.toUpperCase().endsWith(".MF")) {
+                    add(prefix + name, new Source(source, name, entry.getSize(), entry.getTime(), entry.getCrc()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a planned file.
+     *
+     * @param target the image file
+     * @return true if the file was planned
+     */
+    public boolean remove(File target) {
+        return files.remove(getPath(target)) != null;
+    }
+
+    /**
+     * Removes a planned directory and its contents.
+     *
+     * @param target the image directory
+     */
+    public void removeDirectory(File target) {
+        String path = getPath(target);
+        String prefix = path + "/";
+        directories.remove(path);
+        for (Iterator<String> iterator = directories.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+        for (Iterator<String> iterator = files.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the planned subdirectories of a directory.
+     *
+     * @param target the image directory
+     * @return the subdirectories
+     */
+    public Set<File> getDirectories(File target) {
+        String prefix = getPath(target) + "/";
+        Set<File> children = new TreeSet<>();
+        for (String directory : directories) {
+            if (directory.startsWith(prefix) && directory.indexOf('/', prefix.length()) < 0) {
+                children.add(new File(root, directory));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns the planned files of a directory.
+     *
+     * @param target the image directory
+     * @return the files
+     */
+    public Set<File> getFiles(File target) {
+        String prefix = getPath(target) + "/";
+        Set<File> children = new TreeSet<>();
+        for (String file : files.keySet()) {
+            if (file.startsWith(prefix) && file.indexOf('/', prefix.length()) < 0) {
+                children.add(new File(root, file));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns the file planned to be copied to an image file.
+     *
+     * @param target the image file
+     * @return the source file or null if the image file is not planned or is extracted from an archive
+     */
+    public File getSource(File target) {
+        Source source = files.get(getPath(target));
+        return source == null || source.entry != null ? null : source.file;
+    }
+
+    /**
+     * Syncs the image directory with the plan.
+     *
+     * @param reaper the reaper used to remove directories that are no longer part of the image
+     * @return the sync report
+     * @throws IOException if there is an error reading a source or writing the image
+     */
+    public Report sync(DirectoryReaper reaper) throws IOException {
+        Report report = new Report();
+        root.mkdirs();
+        Map<File, ZipFile> archives = new HashMap<>();
+        try {
+            for (String directory : directories) {
+                File target = new File(root, directory);
+                if (target.isFile()) {
+                    delete(target, report);
+                }
+                target.mkdirs();
+            }
+            for (Map.Entry<String, Source> entry : files.entrySet()) {
+                sync(entry.getValue(), new File(root, entry.getKey()), archives, reaper, report);
+            }
+        } finally {
+            for (ZipFile zipFile : archives.values()) {
+                zipFile.close();
+            }
+        }
+        removeStale(root, "", reaper, report);
+        return report;
+    }
+
+    private void sync(final Source source, File target, final Map<File, ZipFile> archives, DirectoryReaper reaper, Report report) throws IOException {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        FileSync.Source contents = new FileSync.Source() {
+            public long getSize() {
+                return source.size;
+            }
+
+            public long getLastModified() {
+                return source.lastModified;
+            }
+
+            public long getCrc() {
+                return source.crc;
+            }
+
+            public InputStream open() throws IOException {
+                return source.open(archives);
+            }
+        };
+        if (FileSync.isUnchanged(target, contents)) {
+            report.unchanged++;
+            registry.counter(MetricNames.FILES_UNCHANGED).increment();
+            return;
+        }
+        if (target.isDirectory()) {
+            reaper.discard(target);
+        }
+        Operation operation = source.entry == null ? FlightRecorderEvents.copy(source.file) : FlightRecorderEvents.extract(source.file);
+        long start = System.nanoTime();
+        long bytes = FileSync.replace(target, contents);
+        report.written++;
+        report.bytes += bytes;
+        registry.counter(MetricNames.FILES_SYNCED).increment();
+        registry.counter(source.entry == null ? MetricNames.BYTES_COPIED : MetricNames.BYTES_EXTRACTED).add(bytes);
+        registry.histogram(MetricNames.IO_TIME).record(System.nanoTime() - start);
+        operation.commit(target, bytes);
+    }
+
+    private void removeStale(File directory, String path, DirectoryReaper reaper, Report report) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            throw new IOException("Failed to list contents of " + directory);
+        }
+        for (File child : children) {
+            String childPath = path.isEmpty() ? child.getName() : path + "/" + child.getName();
+            if (child.isDirectory()) {
+                if (directories.contains(childPath)) {
+                    removeStale(child, childPath, reaper, report);
+                } else {
+                    reaper.discard(child);
+                    report.removed++;
+                    MetricsRegistry.getInstance().counter(MetricNames.FILES_REMOVED).increment();
+                }
+            } else if (!files.containsKey(childPath)) {
+                delete(child, report);
+            }
+        }
+    }
+
+    private void delete(File file, Report report) throws IOException {
+        Operation operation = FlightRecorderEvents.delete(file.getPath());
+        long length = file.length();
+        if (!file.delete()) {
+            throw new IOException("Unable to delete file: " + file);
+        }
+        operation.commit(file, length);
+        report.removed++;
+        MetricsRegistry.getInstance().counter(MetricNames.FILES_REMOVED).increment();
+    }
+
+    private void add(String path, Source source) {
+        files.put(path, source);
+        int index = path.lastIndexOf('/');
+        if (index > 0) {
+            addDirectory(path.substring(0, index));
+        }
+    }
+
+    private void addDirectory(String path) {
+        while (!path.isEmpty() && directories.add(path)) {
+            int index = path.lastIndexOf('/');
+            path = index < 0 ? "" : path.substring(0, index);
+        }
+    }
+
+    private String getPath(File target) {
+        String path = root.toPath().relativize(target.toPath()).toString();
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * The source of an image file.
+     */
+    private static class Source {
+        private File file;
+        private String entry;
+        private long size;
+        private long lastModified;
+        private long crc;
+
+        /**
+         * Constructor.
+         *
+         * @param file         the source file or archive
+         * @param entry        the archive entry or null if the file is copied
+         * @param size         the size of the file contents
+         * @param lastModified the modification time or -1 if unknown
+         * @param crc          the CRC of the contents or -1 if it is not known
+         */
+        public Source(File file, String entry, long size, long lastModified, long crc) {
+            this.file = file;
+            this.entry = entry;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+
+        public InputStream open(Map<File, ZipFile> archives) throws IOException {
+            if (entry == null) {
+                return new FileInputStream(file);
+            }
+            ZipFile zipFile = archives.get(file);
+            if (zipFile == null) {
+                zipFile = new ZipFile(file);
+                archives.put(file, zipFile);
+            }
+            ZipEntry zipEntry = zipFile.getEntry(entry);
+            if (zipEntry == null) {
+                throw new IOException("Entry " + entry + " not found in " + file);
+            }
+            return zipFile.getInputStream(zipEntry);
+        }
+    }
+
+    /**
+     * The result of a sync.
+     */
+    public static class Report {
+        private int written;
+        private int unchanged;
+        private int removed;
+        private long bytes;
+
+        public int getWritten() {
+            return written;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String toString() {
+            return written + " files written (" + bytes + " bytes), " + unchanged + " unchanged, " + removed + " removed";
+        }
+    }
+
+}
@@ -0,0 +1,483 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.assembly.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+
+/**
+ * Moves libraries embedded in the <code>META-INF/lib</code> directory of more than one contribution into a shared directory so that a single copy is
+ * packaged and loaded.
+ *
+ * Only byte-identical libraries are hoisted. Candidates are found using the size and CRC recorded in each contribution's central directory and confirmed by
+ * comparing checksums of their contents. A library is not hoisted if the shared directory already contains a different file with the same name. The
+ * contributions are rewritten without the hoisted libraries. WAR contributions are skipped since their libraries are isolated by the web container.
+ *
+ * The libraries written to the shared directory are recorded in a state file along with their checksums. Libraries recorded by a previous run that are
+ * no longer hoisted are removed, and a recorded library may be replaced by a different version with the same name. Files in the shared directory that were
+ * not written by the hoister, such as configured shared libraries, are left in place.
+ *
+ * When the image is synced from an {@link ImagePlan}, the planned contribution sources are read instead of the image files, and the rewritten contributions
+ * and hoisted libraries are written to a staging directory and planned in place of the sources. The sync then keeps the hoisted image instead of restoring
+ * the original contributions and removing the shared libraries.
+ */
+public class LibraryHoister {
+    private static final String LIBRARY_PREFIX = "META-INF/lib/";
+    private static final String STATE_HEADER = "# Fabric3 hoisted libraries. Generated by the fabric3Assembly task.";
+
+    private File stateFile;
+
+    /**
+     * Constructor.
+     *
+     * @param stateFile the file recording the libraries written to the shared directory
+     */
+    public LibraryHoister(File stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * Hoists the shared libraries.
+     *
+     * @param contributions   the contribution archives, which are rewritten in place
+     * @param sharedDirectory the directory to move shared libraries to
+     * @return the hoisting report
+     * @throws IOException if there is an error reading or rewriting a contribution
+     */
+    public Report hoist(List<File> contributions, File sharedDirectory) throws IOException {
+        Map<File, File> rewrites = new LinkedHashMap<>();
+        for (File contribution : contributions) {
+            rewrites.put(contribution, contribution);
+        }
+        return hoist(rewrites, sharedDirectory, Collections.<String>emptySet());
+    }
+
+    /**
+     * Hoists the shared libraries of planned contributions.
+     *
+     * @param plan             the image plan, which is updated with the rewritten contributions and hoisted libraries
+     * @param contributions    the image files of the contributions
+     * @param sharedDirectory  the image directory to move shared libraries to
+     * @param stagingDirectory the directory the rewritten contributions and hoisted libraries are written to
+     * @return the hoisting report
+     * @throws IOException if there is an error reading or rewriting a contribution
+     */
+    public Report hoist(ImagePlan plan, List<File> contributions, File sharedDirectory, File stagingDirectory) throws IOException {
+        File stagedContributions = new File(stagingDirectory, "contributions");
+        File stagedLibraries = new File(stagingDirectory, "lib");
+        Map<File, File> rewrites = new LinkedHashMap<>();
+        Map<File, File> targets = new HashMap<>();
+        for (File target : contributions) {
+            File source = plan.getSource(target);
+            if (source != null) {
+                File staged = new File(stagedContributions, target.getName());
+                rewrites.put(source, staged);
+                targets.put(staged, target);
+            }
+        }
+        // files planned in the shared directory, such as configured shared libraries, are not replaced
+        Set<String> reserved = new HashSet<>();
+        for (File file : plan.getFiles(sharedDirectory)) {
+            reserved.add(file.getName());
+        }
+
+        Report report = hoist(rewrites, stagedLibraries, reserved);
+
+        for (File staged : report.rewritten) {
+            plan.copy(staged, targets.get(staged));
+        }
+        for (String name : report.hoisted.keySet()) {
+            plan.copy(new File(stagedLibraries, name), new File(sharedDirectory, name));
+        }
+        File[] previous = stagedContributions.listFiles();
+        if (previous != null) {
+            for (File file : previous) {
+                if (!report.rewritten.contains(file) && !file.delete()) {
+                    throw new IOException("Unable to delete file: " + file);
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Hoists the shared libraries.
+     *
+     * @param contributions   the contribution archives mapped to the files they are rewritten to, which may be the same file
+     * @param sharedDirectory the directory to move shared libraries to
+     * @param reserved        names of libraries in the shared directory that must not be replaced
+     * @return the hoisting report
+     * @throws IOException if there is an error reading or rewriting a contribution
+     */
+    private Report hoist(Map<File, File> contributions, File sharedDirectory, Set<String> reserved) throws IOException {
+        Report report = new Report();
+        // candidate libraries keyed by size and CRC
+        Map<String, List<Library>> candidates = new TreeMap<>();
+        for (File contribution : contributions.keySet()) {
+            if (!contribution.getName().endsWith(".jar")) {
+                continue;
+            }
+            try (ZipFile zipFile = new ZipFile(contribution)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (isLibrary(entry)) {
+                        String key = entry.getSize() + ":" + Long.toHexString(entry.getCrc());
+                        List<Library> libraries = candidates.get(key);
+                        if (libraries == null) {
+                            libraries = new ArrayList<>();
+                            candidates.put(key, libraries);
+                        }
+                        libraries.add(new Library(contribution, entry.getName(), entry.getSize()));
+                    }
+                }
+            }
+        }
+
+        // libraries written by the previous run keyed by name, with their checksums
+        Map<String, String> previous = readState();
+        Map<String, String> written = new TreeMap<>();
+
+        // libraries to remove keyed by contribution
+        Map<File, Set<String>> removals = new HashMap<>();
+        Set<String> hoistedNames = new HashSet<>();
+        for (List<Library> libraries : candidates.values()) {
+            if (count(libraries) < 2) {
+                continue;
+            }
+            for (List<Library> identical : confirm(libraries)) {
+                if (count(identical) < 2) {
+                    continue;
+                }
+                Library first = identical.get(0);
+                String name = first.entry.substring(LIBRARY_PREFIX.length());
+                File target = new File(sharedDirectory, name);
+                String existing = target.exists() ? checksum(target) : null;
+                boolean owned = existing != null && existing.equals(previous.get(name));
+                if (!hoistedNames.add(name) || reserved.contains(name) || (existing != null && !existing.equals(first.digest) && !owned)) {
+                    report.conflicts.add(name);
+                    continue;
+                }
+                if (existing == null || owned) {
+                    if (!first.digest.equals(existing)) {
+                        extract(first, target);
+                    }
+                    written.put(name, first.digest);
+                }
+                report.hoisted.put(name, count(identical));
+                report.bytes += first.size * (count(identical) - 1);
+                report.classes += countClasses(target) * (count(identical) - 1);
+                for (Library library : identical) {
+                    Set<String> entries = removals.get(library.contribution);
+                    if (entries == null) {
+                        entries = new HashSet<>();
+                        removals.put(library.contribution, entries);
+                    }
+                    entries.add(library.entry);
+                }
+            }
+        }
+
+        for (Map.Entry<File, Set<String>> entry : removals.entrySet()) {
+            File rewritten = contributions.get(entry.getKey());
+            rewrite(entry.getKey(), rewritten, entry.getValue());
+            report.rewritten.add(rewritten);
+        }
+
+        for (Map.Entry<String, String> entry : previous.entrySet()) {
+            String name = entry.getKey();
+            File stale = new File(sharedDirectory, name);
+            if (!written.containsKey(name) && !hoistedNames.contains(name) && stale.isFile() && entry.getValue().equals(checksum(stale))) {
+                if (!stale.delete()) {
+                    throw new IOException("Unable to delete file: " + stale);
+                }
+                report.removed.add(name);
+            }
+        }
+        writeState(written);
+        return report;
+    }
+
+    /**
+     * Writes a copy of a contribution without the embedded libraries that are identical to a library of the same name in the shared directory, such as
+     * the libraries hoisted when the image was assembled. WAR contributions are not stripped.
+     *
+     * @param contribution    the contribution archive
+     * @param stripped        the file the stripped copy is written to
+     * @param sharedDirectory the shared directory
+     * @return true if libraries were removed and the copy was written
+     * @throws IOException if there is an error reading the contribution or writing the copy
+     */
+    public static boolean strip(File contribution, File stripped, File sharedDirectory) throws IOException {
+        if (!contribution.getName().endsWith(".jar")) {
+            return false;
+        }
+        Set<String> removed = new HashSet<>();
+        try (ZipFile zipFile = new ZipFile(contribution)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!isLibrary(entry)) {
+                    continue;
+                }
+                File shared = new File(sharedDirectory, entry.getName().substring(LIBRARY_PREFIX.length()));
+                if (!shared.isFile() || shared.length() != entry.getSize()) {
+                    continue;
+                }
+                try (InputStream stream = zipFile.getInputStream(entry)) {
+                    if (checksum(shared).equals(FileHelper.checksum(stream, ResolutionLock.CHECKSUM_ALGORITHM))) {
+                        removed.add(entry.getName());
+                    }
+                }
+            }
+        }
+        if (removed.isEmpty()) {
+            return false;
+        }
+        rewrite(contribution, stripped, removed);
+        return true;
+    }
+
+    private static boolean isLibrary(ZipEntry entry) {
+        String name = entry.getName();
+        return !entry.isDirectory() && name.startsWith(LIBRARY_PREFIX) && name.endsWith(".jar") && name.indexOf('/', LIBRARY_PREFIX.length()) < 0;
+    }
+
+    /**
+     * Returns the number of contributions containing a library. A contribution may contain the same library under different names.
+     */
+    private int count(List<Library> libraries) {
+        Set<File> contributions = new HashSet<>();
+        for (Library library : libraries) {
+            contributions.add(library.contribution);
+        }
+        return contributions.size();
+    }
+
+    /**
+     * Groups libraries with the same size and CRC by the checksum of their contents.
+     */
+    private Collection<List<Library>> confirm(List<Library> libraries) throws IOException {
+        Map<String, List<Library>> identical = new TreeMap<>();
+        for (Library library : libraries) {
+            try (ZipFile zipFile = new ZipFile(library.contribution); InputStream stream = zipFile.getInputStream(zipFile.getEntry(library.entry))) {
+                library.digest = FileHelper.checksum(stream, ResolutionLock.CHECKSUM_ALGORITHM);
+            }
+            List<Library> group = identical.get(library.digest);
+            if (group == null) {
+                group = new ArrayList<>();
+                identical.put(library.digest, group);
+            }
+            group.add(library);
+        }
+        return identical.values();
+    }
+
+    private void extract(Library library, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        File temp = FileSync.getTempFile(target);
+        try (ZipFile zipFile = new ZipFile(library.contribution);
+             InputStream input = zipFile.getInputStream(zipFile.getEntry(library.entry));
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+            FileHelper.copy(input, output);
+        }
+        FileSync.commit(temp, target);
+    }
+
+    private static void rewrite(File contribution, File rewritten, Set<String> removed) throws IOException {
+        rewritten.getParentFile().mkdirs();
+        File temp = FileSync.getTempFile(rewritten);
+        try (ZipFile zipFile = new ZipFile(contribution); ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (removed.contains(entry.getName())) {
+                    continue;
+                }
+                ZipEntry copy = new ZipEntry(entry);
+                // deflated entries are recompressed and may differ in size
+                copy.setCompressedSize(-1);
+                output.putNextEntry(copy);
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    FileHelper.copy(input, output);
+                }
+                output.closeEntry();
+            }
+        }
+        FileSync.commit(temp, rewritten);
+    }
+
+    /**
+     * Counts the classes in a library using its central directory, so entries are not inflated.
+     */
+    private int countClasses(File library) throws IOException {
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(library)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                if (entries.nextElement().getName().endsWith(".class")) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String checksum(File file) throws IOException {
+        return FileHelper.checksum(file, ResolutionLock.CHECKSUM_ALGORITHM);
+    }
+
+    private Map<String, String> readState() throws IOException {
+        Map<String, String> state = new HashMap<>();
+        if (!stateFile.isFile()) {
+            return state;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('=');
+                if (!line.startsWith("#") && separator > 0) {
+                    state.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        }
+        return state;
+    }
+
+    private void writeState(Map<String, String> libraries) throws IOException {
+        stateFile.getParentFile().mkdirs();
+        File temp = FileSync.getTempFile(stateFile);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(STATE_HEADER + "\n");
+            for (Map.Entry<String, String> entry : libraries.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+        FileSync.commit(temp, stateFile);
+    }
+
+    /**
+     * A library embedded in a contribution.
+     */
+    private static class Library {
+        private File contribution;
+        private String entry;
+        private long size;
+        private String digest;
+
+        public Library(File contribution, String entry, long size) {
+            this.contribution = contribution;
+            this.entry = entry;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The result of hoisting libraries.
+     */
+    public static class Report {
+        private Map<String, Integer> hoisted = new TreeMap<>();
+        private Set<String> conflicts = new TreeSet<>();
+        private Set<String> removed = new TreeSet<>();
+        private Set<File> rewritten = new TreeSet<>();
+        private long bytes;
+        private long classes;
+
+        /**
+         * Returns the number of bytes no longer duplicated in the image.
+         *
+         * @return the bytes saved
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of class files no longer duplicated in the image.
+         *
+         * @return the classes saved
+         */
+        public long getClasses() {
+            return classes;
+        }
+
+        /**
+         * Writes the report.
+         *
+         * @param file the report file
+         * @throws IOException if there is an error writing the file
+         */
+        public void write(File file) throws IOException {
+            file.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writer.write("Hoisted libraries: " + hoisted.size() + "\n");
+                for (Map.Entry<String, Integer> entry : hoisted.entrySet()) {
+                    writer.write("  " + entry.getKey() + " (" + entry.getValue() + " contributions)\n");
+                }
+                writer.write("Rewritten contributions: " + rewritten.size() + "\n");
+                writer.write("Removed libraries no longer hoisted: " + removed.size() + "\n");
+                for (String name : removed) {
+                    writer.write("  " + name + "\n");
+                }
+                writer.write("Bytes saved: " + bytes + "\n");
+                writer.write("Classes saved: " + classes + "\n");
+                if (!conflicts.isEmpty()) {
+                    writer.write("Libraries not hoisted due to name conflicts: " + conflicts.size() + "\n");
+                    for (String conflict : conflicts) {
+                        writer.write("  " + conflict + "\n");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return hoisted.size() + " libraries hoisted from " + rewritten.size() + " contributions, " + bytes + " bytes and " + classes + " classes saved";
+        }
+    }
+
+}
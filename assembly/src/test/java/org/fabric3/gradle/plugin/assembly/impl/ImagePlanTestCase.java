@@ -0,0 +1,234 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.assembly.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
+
+/**
+ *
+ */
+public class ImagePlanTestCase extends TestCase {
+    private File directory;
+    private File image;
+    private File library;
+    private File archive;
+    private DirectoryReaper reaper;
+
+    public void testSyncWritesPlannedFiles() throws Exception {
+        ImagePlan.Report report = plan().sync(reaper);
+
+        assertEquals(3, report.getWritten());
+        assertEquals(0, report.getUnchanged());
+        assertEquals(0, report.getRemoved());
+        assertEquals("library", read(new File(image, "lib/library.jar")));
+        assertEquals("config", read(new File(image, "ext/config/system.xml")));
+        assertEquals("class", read(new File(image, "ext/A.class")));
+        assertFalse(new File(image, "ext/META-INF/MANIFEST.MF").exists());
+        assertTrue(new File(image, "empty").isDirectory());
+        assertEquals(library.lastModified(), new File(image, "lib/library.jar").lastModified());
+    }
+
+    public void testSyncSkipsUnchangedFiles() throws Exception {
+        plan().sync(reaper);
+        Object fileKey = fileKey(new File(image, "lib/library.jar"));
+
+        ImagePlan.Report report = plan().sync(reaper);
+
+        assertEquals(0, report.getWritten());
+        assertEquals(3, report.getUnchanged());
+        assertEquals(0, report.getRemoved());
+        assertEquals(fileKey, fileKey(new File(image, "lib/library.jar")));
+    }
+
+    public void testSyncComparesContentsWhenOnlyTheTimestampDiffers() throws Exception {
+        plan().sync(reaper);
+        File copy = new File(image, "lib/library.jar");
+        copy.setLastModified(library.lastModified() - 10000);
+
+        ImagePlan.Report report = plan().sync(reaper);
+
+        assertEquals(0, report.getWritten());
+        assertEquals(library.lastModified(), copy.lastModified());
+    }
+
+    public void testSyncReplacesChangedFiles() throws Exception {
+        plan().sync(reaper);
+        write(library, "updated library");
+
+        ImagePlan.Report report = plan().sync(reaper);
+
+        assertEquals(1, report.getWritten());
+        assertEquals(2, report.getUnchanged());
+        assertEquals("updated library", read(new File(image, "lib/library.jar")));
+    }
+
+    public void testSyncRemovesStaleFiles() throws Exception {
+        plan().sync(reaper);
+        write(new File(image, "lib/stale.jar"), "stale");
+        File staleDirectory = new File(image, "stale/nested");
+        staleDirectory.mkdirs();
+        write(new File(staleDirectory, "file.txt"), "stale");
+
+        ImagePlan plan = plan();
+        assertTrue(plan.remove(new File(image, "lib/library.jar")));
+        ImagePlan.Report report = plan.sync(reaper);
+
+        assertEquals(0, report.getWritten());
+        assertEquals(2, report.getUnchanged());
+        assertEquals(3, report.getRemoved());
+        assertFalse(new File(image, "lib/library.jar").exists());
+        assertFalse(new File(image, "lib/stale.jar").exists());
+        assertFalse(new File(image, "stale").exists());
+        assertTrue(new File(image, "lib").isDirectory());
+    }
+
+    public void testSyncKeepsHoistedLibraries() throws Exception {
+        File first = contribution("first.jar");
+        File second = contribution("second.jar");
+        File deploy = new File(image, "deploy");
+        File host = new File(image, "host");
+        File staging = new File(directory, "hoisted");
+        LibraryHoister hoister = new LibraryHoister(new File(staging, "hoisted.state"));
+        List<File> contributions = Arrays.asList(new File(deploy, "first.jar"), new File(deploy, "second.jar"));
+
+        ImagePlan plan = plan();
+        plan.copy(first, contributions.get(0));
+        plan.copy(second, contributions.get(1));
+        hoister.hoist(plan, contributions, host, staging);
+        plan.sync(reaper);
+
+        assertNotNull(entry(new File(host, "shared.jar"), "shared/B.class"));
+        assertNull(entry(contributions.get(0), "META-INF/lib/shared.jar"));
+        assertNotNull(entry(contributions.get(0), "A.class"));
+        assertNull(entry(contributions.get(1), "META-INF/lib/shared.jar"));
+        assertNotNull(entry(first, "META-INF/lib/shared.jar"));
+        Object fileKey = fileKey(new File(host, "shared.jar"));
+
+        plan = plan();
+        plan.copy(first, contributions.get(0));
+        plan.copy(second, contributions.get(1));
+        hoister.hoist(plan, contributions, host, staging);
+        ImagePlan.Report report = plan.sync(reaper);
+
+        assertEquals(0, report.getWritten());
+        assertEquals(6, report.getUnchanged());
+        assertEquals(0, report.getRemoved());
+        assertEquals(fileKey, fileKey(new File(host, "shared.jar")));
+        assertNull(entry(contributions.get(0), "META-INF/lib/shared.jar"));
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("image").toFile();
+        image = new File(directory, "image");
+        library = new File(directory, "library.jar");
+        write(library, "library");
+        archive = new File(directory, "extension.jar");
+        try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(archive))) {
+            stream.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            stream.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            stream.putNextEntry(new ZipEntry("config/"));
+            stream.putNextEntry(new ZipEntry("config/system.xml"));
+            stream.write("config".getBytes(StandardCharsets.UTF_8));
+            stream.putNextEntry(new ZipEntry("A.class"));
+            stream.write("class".getBytes(StandardCharsets.UTF_8));
+        }
+        reaper = new DirectoryReaper(new File(directory, "trash"));
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // removed by the reaper in the background
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private ImagePlan plan() throws IOException {
+        ImagePlan plan = new ImagePlan(image);
+        plan.copy(library, new File(image, "lib/library.jar"));
+        plan.extract(archive, new File(image, "ext"));
+        plan.mkdirs(new File(image, "empty"));
+        return plan;
+    }
+
+    private File contribution(String name) throws IOException {
+        ByteArrayOutputStream shared = new ByteArrayOutputStream();
+        try (ZipOutputStream stream = new ZipOutputStream(shared)) {
+            stream.putNextEntry(new ZipEntry("shared/B.class"));
+            stream.write("shared".getBytes(StandardCharsets.UTF_8));
+        }
+        File file = new File(directory, name);
+        try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file))) {
+            stream.putNextEntry(new ZipEntry("A.class"));
+            stream.write(name.getBytes(StandardCharsets.UTF_8));
+            stream.putNextEntry(new ZipEntry("META-INF/lib/shared.jar"));
+            stream.write(shared.toByteArray());
+        }
+        return file;
+    }
+
+    private ZipEntry entry(File file, String name) throws IOException {
+        try (ZipFile zipFile = new ZipFile(file)) {
+            return zipFile.getEntry(name);
+        }
+    }
+
+    /**
+     * Returns the key identifying a file, which changes when the file is replaced.
+     */
+    private Object fileKey(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.fabric3.gradle.plugin.core.util.ArtifactConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link ArtifactConverter#convert(Map, String)} for the artifact types used in plugin conventions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArtifactConverterBenchmark {
+    private Map<String, String> jar;
+    private Map<String, String> extension;
+
+    @Setup
+    public void setUp() {
+        jar = new HashMap<>();
+        jar.put("group", "org.fabric3");
+        jar.put("name", "fabric3-binding-ws");
+        jar.put("version", "3.0.0");
+        extension = new HashMap<>(jar);
+        extension.put("extension", "war");
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        blackhole.consume(ArtifactConverter.convert(jar, "jar"));
+        blackhole.consume(ArtifactConverter.convert(jar, "zip"));
+        blackhole.consume(ArtifactConverter.convert(jar, "pom"));
+        blackhole.consume(ArtifactConverter.convert(extension, "jar"));
+    }
+}
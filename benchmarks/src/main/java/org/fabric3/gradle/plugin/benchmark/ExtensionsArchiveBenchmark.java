@@ -0,0 +1,80 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fabric3.gradle.plugin.packager.impl.ExtensionSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ExtensionSet#writeArchive(File)}, which the packager uses to build <code>f3.extensions.jar</code>: each extension jar is written as a
+ * deflated entry of a new jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtensionsArchiveBenchmark {
+
+    @Param({"20", "200"})
+    public int extensions;
+
+    @Param({"65536"})
+    public int extensionSize;
+
+    private ExtensionSet extensionSet;
+    private File archive;
+
+    @Setup
+    public void setUp() throws IOException {
+        File directory = Fixtures.directory("extensions-archive");
+        File extensionsDirectory = new File(directory, "extensions");
+        extensionsDirectory.mkdirs();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < extensions; i++) {
+            File file = new File(extensionsDirectory, "extension" + i + ".jar");
+            Fixtures.zip(file, 16, extensionSize / 16, Fixtures.SEED + i);
+            files.add(file);
+        }
+        extensionSet = new ExtensionSet(Collections.<File>emptyList(), files);
+        archive = new File(directory, "f3.extensions.jar");
+    }
+
+    @Benchmark
+    public long createExtensionsArchive() throws IOException {
+        extensionSet.writeArchive(archive);
+        return archive.length();
+    }
+}
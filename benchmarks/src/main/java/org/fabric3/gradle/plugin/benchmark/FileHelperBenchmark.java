@@ -0,0 +1,103 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link FileHelper#extract(File, File)} and both {@link FileHelper} copy overloads on archives with many small entries or a few large ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileHelperBenchmark {
+
+    /**
+     * The archive layout: <code>small</code> is 4096 entries of 1 KB, similar to a runtime distribution, <code>large</code> is 8 entries of 4 MB.
+     */
+    @Param({"small", "large"})
+    public String layout;
+
+    private File archive;
+    private File extractDirectory;
+    private File target;
+
+    @Setup
+    public void setUp() throws IOException {
+        File directory = Fixtures.directory("file-helper-" + layout);
+        archive = new File(directory, "archive.zip");
+        if ("small".equals(layout)) {
+            Fixtures.zip(archive, 4096, 1024, Fixtures.SEED);
+        } else {
+            Fixtures.zip(archive, 8, 4 * 1024 * 1024, Fixtures.SEED);
+        }
+        extractDirectory = new File(directory, "extracted");
+        extractDirectory.mkdirs();
+        target = new File(directory, "copy.zip");
+    }
+
+    @Benchmark
+    public long extract() throws IOException {
+        return FileHelper.extract(archive, extractDirectory);
+    }
+
+    @Benchmark
+    public long copyFile() throws IOException {
+        return FileHelper.copy(archive, target);
+    }
+
+    @Benchmark
+    public int copyStream() throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(archive)); OutputStream output = new NullOutputStream()) {
+            return FileHelper.copy(input, output);
+        }
+    }
+
+    /**
+     * Discards written bytes so that only the read and buffer copy path is measured.
+     */
+    private static class NullOutputStream extends OutputStream {
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
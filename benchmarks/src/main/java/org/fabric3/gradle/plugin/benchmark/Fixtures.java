@@ -0,0 +1,266 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * Generates reproducible benchmark fixtures. Contents are derived from a fixed seed and entries carry a fixed timestamp so that the same parameters always
+ * produce byte-identical files.
+ *
+ * Fixtures are written below the directory given by the <code>fabric3.benchmark.fixtures</code> system property, or a temporary directory if it is not set.
+ */
+public final class Fixtures {
+    public static final String FIXTURES_PROPERTY = "fabric3.benchmark.fixtures";
+    public static final long SEED = 0xFAB3L;
+
+    // 2015-01-01T00:00:00Z
+    private static final long TIMESTAMP = 1420070400000L;
+
+    /**
+     * Returns an empty fixture directory, deleting any previous contents.
+     *
+     * @param name the fixture name
+     * @return the directory
+     * @throws IOException if the directory cannot be cleaned
+     */
+    public static File directory(String name) throws IOException {
+        String root = System.getProperty(FIXTURES_PROPERTY, System.getProperty("java.io.tmpdir") + File.separator + "fabric3-benchmarks");
+        File directory = new File(root, name);
+        if (directory.exists()) {
+            FileHelper.deleteDirectory(directory);
+        }
+        if (!directory.mkdirs()) {
+            throw new IOException("Unable to create fixture directory: " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Writes a zip archive of entries containing random data.
+     *
+     * @param file      the archive
+     * @param entries   the number of entries
+     * @param entrySize the size of each entry in bytes
+     * @param seed      the random seed
+     * @throws IOException if there is an error writing the archive
+     */
+    public static void zip(File file, int entries, int entrySize, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] data = new byte[entrySize];
+        int directories = Math.min(entries, 16);
+        try (ZipOutputStream stream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            // spread entries over directories, which are listed first as in runtime and profile distributions
+            for (int i = 0; i < directories; i++) {
+                ZipEntry entry = new ZipEntry("dir" + i + "/");
+                entry.setTime(TIMESTAMP);
+                stream.putNextEntry(entry);
+                stream.closeEntry();
+            }
+            for (int i = 0; i < entries; i++) {
+                ZipEntry entry = new ZipEntry("dir" + (i % directories) + "/entry" + i + ".bin");
+                entry.setTime(TIMESTAMP);
+                stream.putNextEntry(entry);
+                fill(random, data);
+                stream.write(data);
+                stream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes a zip archive with the given entries, preceded by entries for their parent directories.
+     *
+     * @param file    the archive
+     * @param entries the entry contents keyed by path, using '/' as the separator
+     * @throws IOException if there is an error writing the archive
+     */
+    public static void zip(File file, SortedMap<String, byte[]> entries) throws IOException {
+        SortedSet<String> directories = new TreeSet<>();
+        for (String name : entries.keySet()) {
+            for (int pos = name.indexOf('/'); pos >= 0; pos = name.indexOf('/', pos + 1)) {
+                directories.add(name.substring(0, pos + 1));
+            }
+        }
+        try (ZipOutputStream stream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (String directory : directories) {
+                ZipEntry entry = new ZipEntry(directory);
+                entry.setTime(TIMESTAMP);
+                stream.putNextEntry(entry);
+                stream.closeEntry();
+            }
+            for (Map.Entry<String, byte[]> contents : entries.entrySet()) {
+                ZipEntry entry = new ZipEntry(contents.getKey());
+                entry.setTime(TIMESTAMP);
+                stream.putNextEntry(entry);
+                stream.write(contents.getValue());
+                stream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes a file containing random data.
+     *
+     * @param file the file
+     * @param size the size in bytes
+     * @param seed the random seed
+     * @throws IOException if there is an error writing the file
+     */
+    public static void file(File file, int size, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] data = new byte[FileHelper.BUFFER * 4];
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            int remaining = size;
+            while (remaining > 0) {
+                fill(random, data);
+                int length = Math.min(remaining, data.length);
+                stream.write(data, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    /**
+     * Creates a directory tree.
+     *
+     * @param directory the root directory
+     * @param depth     the depth of the tree
+     * @param breadth   the number of subdirectories per directory
+     * @param files     the number of files per directory
+     * @throws IOException if there is an error creating the tree
+     */
+    public static void tree(File directory, int depth, int breadth, int files) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+        for (int i = 0; i < files; i++) {
+            try (OutputStream stream = new FileOutputStream(new File(directory, "file" + i + ".txt"))) {
+                stream.write(i);
+            }
+        }
+        if (depth > 1) {
+            for (int i = 0; i < breadth; i++) {
+                tree(new File(directory, "dir" + i), depth - 1, breadth, files);
+            }
+        }
+    }
+
+    /**
+     * Creates a Maven repository containing jar artifacts with POMs and SHA-1 checksums.
+     *
+     * @param directory the repository directory
+     * @param group     the group id
+     * @param artifacts the number of artifacts, named <code>artifact0</code> to <code>artifactN-1</code>
+     * @param version   the artifact version
+     * @param size      the size of each jar in bytes
+     * @throws IOException if there is an error creating the repository
+     */
+    public static void repository(File directory, String group, int artifacts, String version, int size) throws IOException {
+        for (int i = 0; i < artifacts; i++) {
+            File jar = install(directory, group, "artifact" + i, version, null, "jar");
+            jar(jar, size, SEED + i);
+            checksum(jar);
+        }
+    }
+
+    /**
+     * Writes a jar of random data spread over entries of up to 8 KB.
+     *
+     * @param file the jar
+     * @param size the approximate size of the contents in bytes
+     * @param seed the random seed
+     * @throws IOException if there is an error writing the jar
+     */
+    public static void jar(File file, int size, long seed) throws IOException {
+        int entrySize = Math.min(size, FileHelper.BUFFER * 4);
+        zip(file, Math.max(1, size / entrySize), entrySize, seed);
+    }
+
+    /**
+     * Creates the repository directory and POM for an artifact and returns the location of the artifact file, which the caller must write and then
+     * {@link #checksum(File) checksum}.
+     *
+     * @param directory  the repository directory
+     * @param group      the group id
+     * @param name       the artifact id
+     * @param version    the version
+     * @param classifier the classifier or null
+     * @param extension  the file extension
+     * @return the artifact file
+     * @throws IOException if there is an error creating the directory or POM
+     */
+    public static File install(File directory, String group, String name, String version, String classifier, String extension) throws IOException {
+        File artifactDirectory = new File(directory, group.replace('.', File.separatorChar) + File.separator + name + File.separator + version);
+        if (!artifactDirectory.isDirectory() && !artifactDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + artifactDirectory);
+        }
+        File pom = new File(artifactDirectory, name + "-" + version + ".pom");
+        if (!pom.exists()) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(pom), StandardCharsets.UTF_8)) {
+                writer.write("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n");
+                writer.write("  <modelVersion>4.0.0</modelVersion>\n");
+                writer.write("  <groupId>" + group + "</groupId>\n");
+                writer.write("  <artifactId>" + name + "</artifactId>\n");
+                writer.write("  <version>" + version + "</version>\n");
+                writer.write("</project>\n");
+            }
+            checksum(pom);
+        }
+        String suffix = classifier == null ? "" : "-" + classifier;
+        return new File(artifactDirectory, name + "-" + version + suffix + "." + extension);
+    }
+
+    /**
+     * Writes the SHA-1 checksum file for a repository file.
+     *
+     * @param file the file
+     * @throws IOException if there is an error reading the file or writing the checksum
+     */
+    public static void checksum(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file.getPath() + ".sha1"), StandardCharsets.UTF_8)) {
+            writer.write(FileHelper.checksum(file, "SHA-1"));
+        }
+    }
+
+    private static void fill(Random random, byte[] data) {
+        // half random, half repeated bytes so that compression has representative work to do
+        random.nextBytes(data);
+        for (int i = data.length / 2; i < data.length; i++) {
+            data[i] = (byte) (i % 64);
+        }
+    }
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.fabric3.gradle.plugin.core.resolver.AetherBootstrap;
+import org.fabric3.gradle.plugin.core.resolver.ArtifactResolver;
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures resolving the artifacts of an assembly or package workload from a {@link ShapedRepositoryServer} into an empty local repository.
+ *
+ * The <code>sequential</code> benchmark resolves artifacts one at a time through {@link ArtifactResolver}, as the Fabric3 tasks do; the <code>batch</code>
+ * benchmark submits all requests to Aether at once so that the connector can download them concurrently. Each invocation starts from an empty local
+ * repository so every artifact is transferred over HTTP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RemoteResolutionBenchmark {
+
+    @Param({"assembly", "packager"})
+    public String workload;
+
+    @Param({"50"})
+    public int extensions;
+
+    /**
+     * Per-request latency in milliseconds.
+     */
+    @Param({"0", "20", "100"})
+    public long latency;
+
+    /**
+     * Bandwidth cap in bytes per second, or 0 for unlimited.
+     */
+    @Param({"0", "1048576"})
+    public long bandwidth;
+
+    @Param({"0"})
+    public double errorRate;
+
+    @Param({"8"})
+    public int maxConnections;
+
+    private ShapedRepositoryServer server;
+    private RepositorySystem system;
+    private List<RemoteRepository> repositories;
+    private List<Artifact> artifacts;
+    private File directory;
+    private RepositorySystemSession session;
+
+    @Setup(Level.Trial)
+    public void setUpServer() throws IOException {
+        directory = Fixtures.directory("remote-resolution");
+        SyntheticRepository repository = new SyntheticRepository(new File(directory, "remote"));
+        repository.create(extensions);
+        if ("assembly".equals(workload)) {
+            artifacts = SyntheticRepository.getAssemblyArtifacts(extensions);
+        } else {
+            artifacts = SyntheticRepository.getPackagerArtifacts(extensions);
+        }
+
+        server = new ShapedRepositoryServer(repository.getDirectory());
+        server.setLatency(latency);
+        server.setBandwidth(bandwidth);
+        server.setErrorRate(errorRate);
+        server.setMaxConnections(maxConnections);
+        URI uri = server.start();
+
+        system = AetherBootstrap.getRepositorySystem();
+        repositories = Collections.singletonList(new RemoteRepository.Builder("shaped", "default", uri.toString()).build());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpSession() throws IOException {
+        File local = new File(directory, "local");
+        if (local.exists()) {
+            FileHelper.deleteDirectory(local);
+        }
+        session = AetherBootstrap.getRepositorySystemSession(system, local, false, RepositoryPolicy.UPDATE_POLICY_NEVER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        ResolutionLock lock = ResolutionLock.load(new File(directory, ResolutionLock.LOCK_FILE));
+        ArtifactResolver resolver = new ArtifactResolver(system, session, repositories, lock, 0);
+        long bytes = 0;
+        for (Artifact artifact : artifacts) {
+            bytes += resolver.resolve(artifact).length();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public int batch() throws ArtifactResolutionException {
+        List<ArtifactRequest> requests = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            requests.add(new ArtifactRequest(artifact, repositories, null));
+        }
+        return system.resolveArtifacts(session, requests).size();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.fabric3.gradle.plugin.core.resolver.AetherBootstrap;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures resolving artifacts with an {@link AetherBootstrap} repository system against a generated <code>file://</code> remote repository.
+ *
+ * With a <code>cold</code> local repository, every invocation starts from an empty local repository so each artifact is transferred; with a <code>warm</code>
+ * one, artifacts are already present locally and only the resolution overhead is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResolutionBenchmark {
+    private static final String GROUP = "org.fabric3.benchmark";
+    private static final String VERSION = "1.0.0";
+
+    @Param({"20", "200"})
+    public int artifacts;
+
+    @Param({"cold", "warm"})
+    public String localRepository;
+
+    private RepositorySystem system;
+    private List<RemoteRepository> repositories;
+    private File directory;
+    private RepositorySystemSession session;
+
+    @Setup(Level.Trial)
+    public void setUpRepository() throws IOException, ArtifactResolutionException {
+        directory = Fixtures.directory("resolution");
+        File remote = new File(directory, "remote");
+        Fixtures.repository(remote, GROUP, artifacts, VERSION, 32 * 1024);
+        system = AetherBootstrap.getRepositorySystem();
+        repositories = Collections.singletonList(new RemoteRepository.Builder("fixture", "default", remote.toURI().toString()).build());
+        if ("warm".equals(localRepository)) {
+            setUpSession();
+            resolve();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpSession() throws IOException {
+        File local = new File(directory, "local");
+        if ("cold".equals(localRepository) && local.exists()) {
+            FileHelper.deleteDirectory(local);
+        }
+        // a new session per invocation so that the session cache does not carry over
+        session = AetherBootstrap.getRepositorySystemSession(system, local, false, RepositoryPolicy.UPDATE_POLICY_NEVER);
+    }
+
+    @Benchmark
+    public List<ArtifactResult> resolve() throws ArtifactResolutionException {
+        List<ArtifactRequest> requests = new ArrayList<>(artifacts);
+        for (int i = 0; i < artifacts; i++) {
+            requests.add(new ArtifactRequest(new DefaultArtifact(GROUP, "artifact" + i, "jar", VERSION), repositories, null));
+        }
+        return system.resolveArtifacts(session, requests);
+    }
+}
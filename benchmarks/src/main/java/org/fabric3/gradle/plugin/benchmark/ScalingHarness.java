@@ -0,0 +1,327 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.gradle.testkit.runner.GradleRunner;
+import static org.fabric3.gradle.plugin.core.util.JsonHelper.quote;
+
+/**
+ * Runs <code>fabric3Assembly</code> and <code>fabric3Packager</code> with the Gradle TestKit against generated builds of increasing size to detect
+ * non-linear slowdowns.
+ *
+ * A <code>file://</code> {@link SyntheticRepository} is generated. For each task, project count and size N, a build is generated in which every project
+ * assembles or packages N extensions (and, for assemblies, N/4 contributions). Each build runs once to warm the daemon and local repository and is then
+ * measured, recording wall time, configuration time, the accumulated Fabric3 task time and the peak heap of the build JVM.
+ *
+ * The run fails if, for any task and project count, the task time of the largest size exceeds the time of the smallest size scaled linearly by the size
+ * ratio and the configured tolerance. Results are written as JSON.
+ *
+ * Configuration is passed as system properties:
+ * <pre>
+ *     fabric3.scaling.classpath - the plugin classpath (required)
+ *     fabric3.scaling.sizes     - comma-separated extension counts, default 20,50,100,200
+ *     fabric3.scaling.projects  - comma-separated project counts, default 1,4
+ *     fabric3.scaling.tolerance - allowed factor over linear scaling, default 2.0
+ *     fabric3.scaling.report    - the JSON report file
+ * </pre>
+ */
+public class ScalingHarness {
+    public static final String CLASSPATH_PROPERTY = "fabric3.scaling.classpath";
+    public static final String SIZES_PROPERTY = "fabric3.scaling.sizes";
+    public static final String PROJECTS_PROPERTY = "fabric3.scaling.projects";
+    public static final String TOLERANCE_PROPERTY = "fabric3.scaling.tolerance";
+    public static final String REPORT_PROPERTY = "fabric3.scaling.report";
+
+    private static final String[] TASKS = {"fabric3Assembly", "fabric3Packager"};
+    private static final String GROUP = SyntheticRepository.GROUP;
+    private static final String VERSION = SyntheticRepository.VERSION;
+
+    private File root;
+    private File repository;
+    private List<File> classpath = new ArrayList<>();
+    private int[] sizes;
+    private int[] projects;
+    private double tolerance;
+
+    public static void main(String[] args) throws IOException {
+        String classpath = System.getProperty(CLASSPATH_PROPERTY);
+        if (classpath == null) {
+            throw new IllegalArgumentException("The plugin classpath must be set using " + CLASSPATH_PROPERTY);
+        }
+        ScalingHarness harness = new ScalingHarness(classpath,
+                                                    parse(System.getProperty(SIZES_PROPERTY, "20,50,100,200")),
+                                                    parse(System.getProperty(PROJECTS_PROPERTY, "1,4")),
+                                                    Double.parseDouble(System.getProperty(TOLERANCE_PROPERTY, "2.0")));
+        List<Result> results = harness.run();
+        String report = System.getProperty(REPORT_PROPERTY);
+        if (report != null) {
+            write(new File(report), results);
+        }
+        List<String> failures = harness.check(results);
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Non-linear scaling detected:\n" + String.join("\n", failures));
+        }
+    }
+
+    public ScalingHarness(String classpath, int[] sizes, int[] projects, double tolerance) {
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                this.classpath.add(new File(entry));
+            }
+        }
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+        this.projects = projects.clone();
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Generates the repository and runs all scenarios.
+     *
+     * @return the results
+     * @throws IOException if there is an error generating the fixtures
+     */
+    public List<Result> run() throws IOException {
+        root = Fixtures.directory("scaling");
+        repository = new File(root, "repository");
+        new SyntheticRepository(repository).create(sizes[sizes.length - 1]);
+        List<Result> results = new ArrayList<>();
+        System.out.println("task,projects,size,wallMs,configurationMs,taskMs,peakHeapMB");
+        for (String task : TASKS) {
+            for (int count : projects) {
+                for (int size : sizes) {
+                    Result result = run(task, count, size);
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Compares the largest and smallest size of each task and project count.
+     *
+     * @param results the results
+     * @return descriptions of scenarios that scale worse than linearly within the tolerance
+     */
+    public List<String> check(List<Result> results) {
+        List<String> failures = new ArrayList<>();
+        for (String task : TASKS) {
+            for (int count : projects) {
+                Result smallest = null;
+                Result largest = null;
+                for (Result result : results) {
+                    if (result.task.equals(task) && result.projects == count) {
+                        if (smallest == null || result.size < smallest.size) {
+                            smallest = result;
+                        }
+                        if (largest == null || result.size > largest.size) {
+                            largest = result;
+                        }
+                    }
+                }
+                if (smallest == null || smallest == largest) {
+                    continue;
+                }
+                double limit = smallest.taskNanos * ((double) largest.size / smallest.size) * tolerance;
+                if (largest.taskNanos > limit) {
+                    failures.add(String.format(Locale.ROOT,
+                                               "%s with %d project(s): %d extensions took %.0f ms, more than %.0f ms allowed from %d extensions (%.0f ms)",
+                                               task,
+                                               count,
+                                               largest.size,
+                                               largest.taskNanos / 1e6,
+                                               limit / 1e6,
+                                               smallest.size,
+                                               smallest.taskNanos / 1e6));
+                }
+            }
+        }
+        return failures;
+    }
+
+    private Result run(String task, int count, int size) throws IOException {
+        File directory = new File(root, task + "-" + count + "-" + size);
+        createBuild(directory, task, count, size);
+        List<String> arguments = new ArrayList<>();
+        arguments.add("clean");
+        arguments.add(task);
+        arguments.add("--init-script");
+        arguments.add(new File(directory, "scaling.init.gradle").getAbsolutePath());
+        // keep resolved artifacts out of the user's local repository
+        arguments.add("-Dmaven.repo.local=" + new File(root, "local").getAbsolutePath());
+        if (count > 1) {
+            arguments.add("--parallel");
+        }
+        GradleRunner runner = GradleRunner.create().withProjectDir(directory).withArguments(arguments);
+
+        // warm the daemon and the local repository
+        runner.build();
+        long start = System.nanoTime();
+        runner.build();
+        long wall = System.nanoTime() - start;
+
+        Properties properties = new Properties();
+        try (InputStream stream = new FileInputStream(new File(directory, "build" + File.separator + "fabric3-scaling.properties"))) {
+            properties.load(stream);
+        }
+        return new Result(task,
+                          count,
+                          size,
+                          wall,
+                          Long.parseLong(properties.getProperty("configurationNanos")),
+                          Long.parseLong(properties.getProperty("taskNanos")),
+                          Long.parseLong(properties.getProperty("peakHeapBytes")));
+    }
+
+    private void createBuild(File directory, String task, int count, int size) throws IOException {
+        if (directory.exists()) {
+            FileHelper.deleteDirectory(directory);
+        }
+        directory.mkdirs();
+        try (InputStream stream = getClass().getResourceAsStream("scaling.init.gradle");
+             OutputStream target = new FileOutputStream(new File(directory, "scaling.init.gradle"))) {
+            FileHelper.copy(stream, target);
+        }
+
+        StringBuilder settings = new StringBuilder("rootProject.name = 'scaling'\n");
+        StringBuilder build = new StringBuilder("buildscript {\n    dependencies {\n        classpath files(");
+        String separator = "";
+        for (File file : classpath) {
+            build.append(separator).append(groovy(file.getAbsolutePath()));
+            separator = ", ";
+        }
+        build.append(")\n    }\n}\n\nallprojects {\n    repositories {\n");
+        build.append("        maven {\n            url ").append(groovy(repository.toURI().toString())).append("\n        }\n    }\n}\n");
+        write(new File(directory, "build.gradle"), build.toString());
+
+        boolean assembly = "fabric3Assembly".equals(task);
+        for (int p = 0; p < count; p++) {
+            String name = "project" + p;
+            settings.append("include '").append(name).append("'\n");
+            StringBuilder project = new StringBuilder();
+            if (assembly) {
+                project.append("apply plugin: 'java'\napply plugin: 'fabric3-assembly'\n\n");
+                project.append("runtimeVersion = '").append(VERSION).append("'\n");
+            } else {
+                project.append("apply plugin: 'war'\napply plugin: 'fabric3-packager'\n\n");
+            }
+            project.append("profile group: '").append(GROUP).append("', name: 'profile").append(p % SyntheticRepository.PROFILES).append("', version: '").append(VERSION);
+            project.append("'\n");
+            for (int i = 0; i < size; i++) {
+                project.append("extension group: '").append(GROUP).append("', name: 'extension").append(i).append("', version: '").append(VERSION);
+                project.append("'\n");
+            }
+            if (assembly) {
+                for (int i = 0; i < size / 4; i++) {
+                    project.append("contribution group: '").append(GROUP).append("', name: 'contribution").append(i).append("', version: '");
+                    project.append(VERSION).append("'\n");
+                }
+            }
+            File projectDirectory = new File(directory, name);
+            projectDirectory.mkdirs();
+            write(new File(projectDirectory, "build.gradle"), project.toString());
+        }
+        write(new File(directory, "settings.gradle"), settings.toString());
+    }
+
+    private static String groovy(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    private static int[] parse(String values) {
+        String[] tokens = values.split(",");
+        int[] parsed = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            parsed[i] = Integer.parseInt(tokens[i].trim());
+        }
+        return parsed;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(contents);
+        }
+    }
+
+    private static void write(File file, List<Result> results) throws IOException {
+        file.getParentFile().mkdirs();
+        StringBuilder builder = new StringBuilder("[");
+        String separator = "\n";
+        for (Result result : results) {
+            builder.append(separator).append("  {\"task\": ").append(quote(result.task));
+            builder.append(", \"projects\": ").append(result.projects).append(", \"size\": ").append(result.size);
+            builder.append(", \"wallNanos\": ").append(result.wallNanos).append(", \"configurationNanos\": ").append(result.configurationNanos);
+            builder.append(", \"taskNanos\": ").append(result.taskNanos).append(", \"peakHeapBytes\": ").append(result.peakHeapBytes).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n]\n");
+        write(file, builder.toString());
+    }
+
+    /**
+     * The measurements of a scenario.
+     */
+    public static class Result {
+        private String task;
+        private int projects;
+        private int size;
+        private long wallNanos;
+        private long configurationNanos;
+        private long taskNanos;
+        private long peakHeapBytes;
+
+        public Result(String task, int projects, int size, long wallNanos, long configurationNanos, long taskNanos, long peakHeapBytes) {
+            this.task = task;
+            this.projects = projects;
+            this.size = size;
+            this.wallNanos = wallNanos;
+            this.configurationNanos = configurationNanos;
+            this.taskNanos = taskNanos;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public String toString() {
+            return String.format(Locale.ROOT,
+                                 "%s,%d,%d,%.0f,%.0f,%.0f,%.1f",
+                                 task,
+                                 projects,
+                                 size,
+                                 wallNanos / 1e6,
+                                 configurationNanos / 1e6,
+                                 taskNanos / 1e6,
+                                 peakHeapBytes / (1024d * 1024d));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a directory as a Maven repository over HTTP on the loopback interface, shaped to approximate a remote repository so that transport and
+ * concurrency changes can be evaluated without a network.
+ *
+ * Shaping is configured before the server is started:
+ * <ul>
+ * <li>latency - a delay applied before each response</li>
+ * <li>bandwidth - a cap in bytes per second applied to each response body</li>
+ * <li>error rate - the probability a request fails with <code>503 Service Unavailable</code>; errors are drawn from a seeded random sequence</li>
+ * <li>connection limit - the number of requests served concurrently; further requests queue until a handler is free</li>
+ * </ul>
+ */
+public class ShapedRepositoryServer implements AutoCloseable {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private File root;
+    private long latency;
+    private long bandwidth;
+    private double errorRate;
+    private int maxConnections = 8;
+    private Random errors = new Random(Fixtures.SEED);
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong failures = new AtomicLong();
+    private AtomicLong bytesServed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param root the repository directory
+     */
+    public ShapedRepositoryServer(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Sets the delay applied before each response.
+     *
+     * @param latency the latency in milliseconds
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the bandwidth cap applied to each response.
+     *
+     * @param bandwidth the bandwidth in bytes per second, or 0 for unlimited
+     */
+    public void setBandwidth(long bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Sets the probability that a request fails.
+     *
+     * @param errorRate the error rate between 0 and 1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the maximum number of requests served concurrently.
+     *
+     * @param maxConnections the maximum number of concurrent requests
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Starts the server on an ephemeral port.
+     *
+     * @return the repository URI
+     * @throws IOException if the server cannot be started
+     */
+    public URI start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxConnections);
+        executor = Executors.newFixedThreadPool(maxConnections);
+        server.setExecutor(executor);
+        server.createContext("/", new RepositoryHandler());
+        server.start();
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private boolean fail() {
+        if (errorRate <= 0) {
+            return false;
+        }
+        synchronized (errors) {
+            return errors.nextDouble() < errorRate;
+        }
+    }
+
+    private void delay(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private class RepositoryHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                requests.incrementAndGet();
+                delay(latency);
+                String method = exchange.getRequestMethod();
+                File file = new File(root, exchange.getRequestURI().getPath());
+                if (fail()) {
+                    failures.incrementAndGet();
+                    exchange.sendResponseHeaders(503, -1);
+                } else if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                    exchange.sendResponseHeaders(405, -1);
+                } else if (!file.isFile() || !file.getCanonicalPath().startsWith(root.getCanonicalPath())) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else if ("HEAD".equals(method)) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(file.length()));
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, file.length());
+                    send(file, exchange.getResponseBody());
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void send(File file, OutputStream output) throws IOException {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            long start = System.nanoTime();
+            long sent = 0;
+            try (InputStream input = new FileInputStream(file)) {
+                int n;
+                while ((n = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, n);
+                    sent += n;
+                    bytesServed.addAndGet(n);
+                    if (bandwidth > 0) {
+                        // sleep until the elapsed time matches the time the bytes sent so far take at the capped rate
+                        long expected = TimeUnit.SECONDS.toNanos(sent) / bandwidth;
+                        delay(TimeUnit.NANOSECONDS.toMillis(expected - (System.nanoTime() - start)));
+                    }
+                }
+            }
+        }
+    }
+}
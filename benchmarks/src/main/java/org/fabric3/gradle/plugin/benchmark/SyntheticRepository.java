@@ -0,0 +1,151 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.fabric3.gradle.plugin.core.Constants;
+
+/**
+ * Generates a Maven repository with the artifacts resolved by Fabric3 assemblies and packages: a fake <code>runtime-standalone</code> distribution,
+ * profiles, the artifacts added by default by the packager, and numbered extension and contribution jars. Contents are reproducible.
+ */
+public class SyntheticRepository {
+    public static final String GROUP = "org.fabric3.synthetic";
+    public static final String VERSION = "1.0.0";
+    public static final int PROFILES = 2;
+
+    private static final int ARTIFACT_SIZE = 64 * 1024;
+    private static final int PROFILE_EXTENSIONS = 10;
+    private static final int RUNTIME_EXTENSIONS = 40;
+    private static final String[] PACKAGER_ARTIFACTS = {"fabric3-databinding-json", "fabric3-node", "fabric3-node-extensions"};
+
+    private File directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the repository directory
+     */
+    public SyntheticRepository(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Generates the repository.
+     *
+     * @param size the number of extension jars; a quarter as many contribution jars are generated
+     * @throws IOException if there is an error writing the repository
+     */
+    public void create(int size) throws IOException {
+        Random random = new Random(Fixtures.SEED);
+
+        SortedMap<String, byte[]> runtime = new TreeMap<>();
+        runtime.put("bin/server.jar", bytes(random, ARTIFACT_SIZE));
+        runtime.put("boot/fabric3-boot.jar", bytes(random, ARTIFACT_SIZE));
+        runtime.put("host/fabric3-host.jar", bytes(random, ARTIFACT_SIZE));
+        for (int i = 0; i < RUNTIME_EXTENSIONS; i++) {
+            runtime.put("extensions/fabric3-runtime-extension" + i + ".jar", bytes(random, ARTIFACT_SIZE));
+        }
+        runtime.put("runtimes/vm/config/systemConfig.xml", "<config/>".getBytes(StandardCharsets.UTF_8));
+        File runtimeZip = Fixtures.install(directory, Constants.FABRIC3_GROUP, "runtime-standalone", VERSION, "bin", "zip");
+        Fixtures.zip(runtimeZip, runtime);
+        Fixtures.checksum(runtimeZip);
+
+        for (int p = 0; p < PROFILES; p++) {
+            SortedMap<String, byte[]> profile = new TreeMap<>();
+            for (int i = 0; i < PROFILE_EXTENSIONS; i++) {
+                profile.put("extensions/profile" + p + "-extension" + i + ".jar", bytes(random, ARTIFACT_SIZE));
+            }
+            File profileZip = Fixtures.install(directory, GROUP, "profile" + p, VERSION, "bin", "zip");
+            Fixtures.zip(profileZip, profile);
+            Fixtures.checksum(profileZip);
+        }
+
+        for (String name : PACKAGER_ARTIFACTS) {
+            installJar(Constants.FABRIC3_GROUP, name, Constants.FABRIC3_VERSION, random.nextLong());
+        }
+        for (int i = 0; i < size; i++) {
+            installJar(GROUP, "extension" + i, VERSION, random.nextLong());
+        }
+        for (int i = 0; i < size / 4; i++) {
+            installJar(GROUP, "contribution" + i, VERSION, random.nextLong());
+        }
+    }
+
+    /**
+     * Returns the artifacts resolved by <code>fabric3Assembly</code> for a project using the first profile, in resolution order.
+     *
+     * @param size the number of extensions
+     * @return the artifacts
+     */
+    public static List<Artifact> getAssemblyArtifacts(int size) {
+        List<Artifact> artifacts = new ArrayList<>();
+        artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, "runtime-standalone", "bin", "zip", VERSION));
+        artifacts.add(new DefaultArtifact(GROUP, "profile0", "bin", "zip", VERSION));
+        for (int i = 0; i < size; i++) {
+            artifacts.add(new DefaultArtifact(GROUP, "extension" + i, "jar", VERSION));
+        }
+        for (int i = 0; i < size / 4; i++) {
+            artifacts.add(new DefaultArtifact(GROUP, "contribution" + i, "jar", VERSION));
+        }
+        return artifacts;
+    }
+
+    /**
+     * Returns the artifacts resolved by <code>fabric3Packager</code> for a project using the first profile, in resolution order.
+     *
+     * @param size the number of extensions
+     * @return the artifacts
+     */
+    public static List<Artifact> getPackagerArtifacts(int size) {
+        List<Artifact> artifacts = new ArrayList<>();
+        artifacts.add(new DefaultArtifact(GROUP, "profile0", "bin", "zip", VERSION));
+        artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, PACKAGER_ARTIFACTS[0], "jar", Constants.FABRIC3_VERSION));
+        for (int i = 0; i < size; i++) {
+            artifacts.add(new DefaultArtifact(GROUP, "extension" + i, "jar", VERSION));
+        }
+        artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, PACKAGER_ARTIFACTS[1], "jar", Constants.FABRIC3_VERSION));
+        artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, PACKAGER_ARTIFACTS[2], "jar", Constants.FABRIC3_VERSION));
+        return artifacts;
+    }
+
+    private void installJar(String group, String name, String version, long seed) throws IOException {
+        File jar = Fixtures.install(directory, group, name, version, null, "jar");
+        Fixtures.jar(jar, ARTIFACT_SIZE, seed);
+        Fixtures.checksum(jar);
+    }
+
+    private static byte[] bytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * The names, supertypes and annotations of a class read from its class file without loading it.
+ *
+ * Annotations are the runtime-visible annotations declared on the class. Member annotations are the runtime-visible annotations declared on its fields,
+ * methods and method parameters.
+ */
+public class ClassInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_MODULE = 0x8000;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS = "RuntimeVisibleParameterAnnotations";
+
+    private String name;
+    private String superName;
+    private Set<String> interfaces = new TreeSet<>();
+    private Set<String> annotations = new TreeSet<>();
+    private Set<String> memberAnnotations = new TreeSet<>();
+    private long checksum;
+
+    /**
+     * Reads a class file.
+     *
+     * @param bytes the class file contents
+     * @return the class or null if the class file describes a module
+     * @throws IOException if the class file is invalid
+     */
+    public static ClassInfo parse(byte[] bytes) throws IOException {
+        try {
+            return new ClassInfo().read(ByteBuffer.wrap(bytes), bytes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated class file");
+        }
+    }
+
+    private ClassInfo() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the superclass name or null if the class is <code>java.lang.Object</code> or an interface with no superclass recorded.
+     *
+     * @return the superclass name
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public Set<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    public Set<String> getMemberAnnotations() {
+        return memberAnnotations;
+    }
+
+    /**
+     * Returns the CRC-32 of the class file contents.
+     *
+     * @return the checksum
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    private ClassInfo read(ByteBuffer buffer, byte[] bytes) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid class file");
+        }
+        buffer.getInt(); // minor and major version
+        String[] utf8 = new String[buffer.getShort() & 0xFFFF];
+        int[] classes = new int[utf8.length];
+        for (int i = 1; i < utf8.length; i++) {
+            int tag = buffer.get();
+            switch (tag) {
+                case 1: // Utf8
+                    int length = buffer.getShort() & 0xFFFF;
+                    utf8[i] = decode(bytes, buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    break;
+                case 7: // Class
+                    classes[i] = buffer.getShort() & 0xFFFF;
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    buffer.getShort();
+                    break;
+                case 15: // MethodHandle
+                    buffer.get();
+                    buffer.getShort();
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    buffer.getInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    buffer.getLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+        int access = buffer.getShort() & 0xFFFF;
+        if ((access & ACC_MODULE) != 0) {
+            return null;
+        }
+        name = toClassName(utf8[classes[buffer.getShort() & 0xFFFF]]);
+        int superIndex = buffer.getShort() & 0xFFFF;
+        superName = superIndex == 0 ? null : toClassName(utf8[classes[superIndex]]);
+        int interfaceCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(toClassName(utf8[classes[buffer.getShort() & 0xFFFF]]));
+        }
+        // fields then methods
+        for (int member = 0; member < 2; member++) {
+            int count = buffer.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                buffer.position(buffer.position() + 6); // access flags, name and descriptor
+                readAttributes(buffer, utf8, memberAnnotations);
+            }
+        }
+        readAttributes(buffer, utf8, annotations);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        checksum = crc.getValue();
+        return this;
+    }
+
+    private void readAttributes(ByteBuffer buffer, String[] utf8, Set<String> target) {
+        int count = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            String attribute = utf8[buffer.getShort() & 0xFFFF];
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attribute)) {
+                readAnnotations(buffer, utf8, target);
+            } else if (RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS.equals(attribute)) {
+                int parameters = buffer.get() & 0xFF;
+                for (int j = 0; j < parameters; j++) {
+                    readAnnotations(buffer, utf8, memberAnnotations);
+                }
+            }
+            buffer.position(end);
+        }
+    }
+
+    private void readAnnotations(ByteBuffer buffer, String[] utf8, Set<String> target) {
+        int count = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            target.add(readAnnotation(buffer, utf8));
+        }
+    }
+
+    private String readAnnotation(ByteBuffer buffer, String[] utf8) {
+        String type = utf8[buffer.getShort() & 0xFFFF];
+        int pairs = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < pairs; i++) {
+            buffer.getShort(); // element name
+            skipElementValue(buffer, utf8);
+        }
+        // descriptor of the form Lcom/foo/Annotation;
+        return toClassName(type.substring(1, type.length() - 1));
+    }
+
+    private void skipElementValue(ByteBuffer buffer, String[] utf8) {
+        int tag = buffer.get();
+        switch (tag) {
+            case 'e':
+                buffer.getInt();
+                break;
+            case '@':
+                readAnnotation(buffer, utf8);
+                break;
+            case '[':
+                int count = buffer.getShort() & 0xFFFF;
+                for (int i = 0; i < count; i++) {
+                    skipElementValue(buffer, utf8);
+                }
+                break;
+            default:
+                // constant, string or class value
+                buffer.getShort();
+        }
+    }
+
+    private static String toClassName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        // modified UTF-8 only differs from UTF-8 for null characters and supplementary characters, which do not occur in type names
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+}
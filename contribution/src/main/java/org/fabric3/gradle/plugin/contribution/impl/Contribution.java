@@ -0,0 +1,204 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.ArchiveEntryCounter;
+import org.fabric3.gradle.plugin.core.report.StopWatchFactory;
+import org.fabric3.gradle.plugin.core.stopwatch.Span;
+import org.fabric3.gradle.plugin.core.stopwatch.StopWatch;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+
+/**
+ * Extends the Jar task to package library dependencies in the contribution <code>META-INF/lib</code> directory, or merged into the archive if
+ * {@link #setMergeLibraries(boolean)} is set, and record archive timings. If {@link #setIncremental(boolean)} is set, unchanged entries are copied from the
+ * previous archive instead of being recompressed.
+ */
+public class Contribution extends Jar {
+    public static final String REPORTS_DIRECTORY = "reports" + File.separator + "fabric3-contribution";
+
+    private StopWatch stopWatch;
+    private Set<File> libraries = Collections.emptySet();
+    private FileCollection classes;
+    private boolean index = true;
+    private boolean mergeLibraries;
+    private Set<String> overridden = Collections.emptySet();
+    private File mergeDirectory;
+    private boolean incremental;
+    private IncrementalJarWriter writer;
+
+    public Contribution() {
+        this.stopWatch = StopWatchFactory.create(this);
+        eachFile(new ArchiveEntryCounter());
+        eachFile(new Action<FileCopyDetails>() {
+            public void execute(FileCopyDetails details) {
+                // exclude contribution service files replaced by the merged versions
+                if (overridden.contains(details.getPath()) && !details.getFile().getPath().startsWith(mergeDirectory.getPath())) {
+                    details.exclude();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the libraries to package in <code>META-INF/lib</code>.
+     *
+     * @param libraries the libraries
+     */
+    public void libraries(Set<File> libraries) {
+        this.libraries = libraries;
+        if (mergeLibraries) {
+            getInputs().files(libraries);
+        } else {
+            getMetaInf().into("lib").from(libraries);
+        }
+    }
+
+    public Set<File> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * Sets the contribution classes to include in the {@link ContributionIndexer#INDEX_FILE}.
+     *
+     * @param classes the classes
+     */
+    public void classes(FileCollection classes) {
+        this.classes = classes;
+    }
+
+    public boolean isIndex() {
+        return index;
+    }
+
+    /**
+     * Sets whether the {@link ContributionIndexer#INDEX_FILE} is generated in <code>META-INF</code>. Defaults to true.
+     *
+     * @param index true if the index is generated
+     */
+    public void setIndex(boolean index) {
+        this.index = index;
+    }
+
+    public boolean isMergeLibraries() {
+        return mergeLibraries;
+    }
+
+    /**
+     * Sets whether the contents of the libraries are merged into the contribution archive instead of being packaged as nested jars. Conflicts are resolved as
+     * described in {@link LibraryMerger} and reported in <code>build/reports/fabric3-contribution</code>. Must be set before the libraries are configured.
+     *
+     * @param mergeLibraries true if libraries are merged
+     */
+    public void setMergeLibraries(boolean mergeLibraries) {
+        this.mergeLibraries = mergeLibraries;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether the archive is updated incrementally using {@link IncrementalJarWriter}, which avoids recompressing libraries and classes that have not
+     * changed since the previous build. Defaults to false.
+     *
+     * @param incremental true if the archive is updated incrementally
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    @SuppressWarnings("try") // spans are closed to mark the end of each phase
+    protected void copy() {
+        stopWatch.start();
+        try (Span root = stopWatch.span(getName())) {
+            File workDirectory = new File(getProject().getBuildDir(), "fabric3" + File.separator + getName());
+            if (incremental) {
+                File stateFile = new File(workDirectory, "archive.state");
+                writer = new IncrementalJarWriter(getArchivePath(), stateFile, getEntryCompression() != ZipEntryCompression.STORED);
+            }
+            Collection<File> classesDirectories = classes == null ? Collections.<File>emptySet() : classes.getFiles();
+            if (mergeLibraries) {
+                mergeDirectory = new File(workDirectory, "merged");
+                try (Span span = stopWatch.span("mergeLibraries")) {
+                    DirectoryReaper reaper = DirectoryReaper.forBuildDir(getProject().getBuildDir());
+                    reaper.resume();
+                    LibraryMerger.Report report = new LibraryMerger(reaper).merge(classesDirectories, libraries, mergeDirectory);
+                    report.write(new File(getProject().getBuildDir(), REPORTS_DIRECTORY + File.separator + getName() + "-merge.txt"));
+                    overridden = report.getOverridden();
+                    span.add(Span.ARTIFACTS, libraries.size());
+                    getLogger().info("Merged contribution libraries: " + report);
+                } catch (IOException e) {
+                    throw new GradleException("Unable to merge contribution libraries: " + e.getMessage(), e);
+                }
+                from(mergeDirectory);
+                stopWatch.split("Fabric3 Contribution merge libraries");
+            }
+            if (index && classes != null) {
+                File indexFile = new File(workDirectory, ContributionIndexer.INDEX_FILE);
+                try (Span span = stopWatch.span("index")) {
+                    if (mergeLibraries) {
+                        List<File> directories = new ArrayList<>(classesDirectories);
+                        directories.add(mergeDirectory);
+                        new ContributionIndexer().write(directories, Collections.<File>emptySet(), indexFile);
+                    } else {
+                        new ContributionIndexer().write(classesDirectories, libraries, indexFile);
+                    }
+                    span.add(Span.BYTES, indexFile.length());
+                } catch (IOException e) {
+                    throw new GradleException("Unable to index contribution: " + e.getMessage(), e);
+                }
+                getMetaInf().from(indexFile);
+                stopWatch.split("Fabric3 Contribution index");
+            }
+            try (Span span = stopWatch.span("archive")) {
+                Operation operation = FlightRecorderEvents.archive(getPath());
+                super.copy();
+                span.add(Span.BYTES, getArchivePath().length());
+                span.add(Span.ARTIFACTS, libraries.size());
+                operation.commit(getArchivePath(), getArchivePath().length());
+            }
+            if (writer != null) {
+                getLogger().info("Reused " + writer.getReused() + " unchanged entries and wrote " + writer.getWritten() + " entries in " + getArchivePath());
+            }
+        } finally {
+            stopWatch.stop();
+            stopWatch.flush();
+        }
+    }
+
+    protected CopyAction createCopyAction() {
+        return writer == null ? super.createCopyAction() : writer;
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * Writes an index of the classes in a contribution and its <code>META-INF/lib</code> libraries so the runtime can discover components without
+ * introspecting the contribution.
+ *
+ * The index is a UTF-8 text file. Each source, which is either the contribution classes or a library, starts with a line of the form
+ * <code>source=&lt;path&gt;|&lt;checksum&gt;</code>, where the checksum is the SHA-1 of the sorted class names and their CRC-32 values and can be used to
+ * verify the index is current. The source line is followed by a line for each class in name order of the form
+ * <code>&lt;class&gt;=&lt;superclass&gt;|&lt;interfaces&gt;|&lt;annotations&gt;|&lt;member annotations&gt;</code>, where lists are comma-separated.
+ *
+ * Class files are read in parallel and are not loaded.
+ */
+public class ContributionIndexer {
+    public static final String INDEX_FILE = "fabric3.index";
+    public static final String CLASSES_SOURCE = "classes";
+    public static final String LIBRARY_PREFIX = "META-INF/lib/";
+
+    private static final String HEADER = "# Fabric3 contribution index. Generated by the fabric3Contribution task.";
+    private static final int VERSION = 1;
+    private static final int BATCH_SIZE = 256;
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * Indexes the contribution classes and libraries.
+     *
+     * @param classesDirectories the directories containing the contribution classes
+     * @param libraries          the libraries
+     * @param target             the index file to write
+     * @return the number of indexed classes
+     * @throws IOException if there is an error reading a class file or writing the index
+     */
+    public int write(Collection<File> classesDirectories, Collection<File> libraries, File target) throws IOException {
+        List<File> classFiles = new ArrayList<>();
+        for (File directory : classesDirectories) {
+            collect(directory, classFiles);
+        }
+        // library sources are keyed by path so they are written in order
+        Map<String, Future<List<ClassInfo>>> libraryResults = new TreeMap<>();
+        List<Future<List<ClassInfo>>> classResults = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int i = 0; i < classFiles.size(); i += BATCH_SIZE) {
+                final List<File> batch = classFiles.subList(i, Math.min(i + BATCH_SIZE, classFiles.size()));
+                classResults.add(executor.submit(new Callable<List<ClassInfo>>() {
+                    public List<ClassInfo> call() throws IOException {
+                        return readClasses(batch);
+                    }
+                }));
+            }
+            for (final File library : libraries) {
+                if (!library.isFile() || !(library.getName().endsWith(".jar") || library.getName().endsWith(".zip"))) {
+                    continue;
+                }
+                libraryResults.put(LIBRARY_PREFIX + library.getName(), executor.submit(new Callable<List<ClassInfo>>() {
+                    public List<ClassInfo> call() throws IOException {
+                        return readLibrary(library);
+                    }
+                }));
+            }
+
+            Map<String, Map<String, ClassInfo>> indexed = new TreeMap<>();
+            Map<String, ClassInfo> classes = new TreeMap<>();
+            for (Future<List<ClassInfo>> result : classResults) {
+                add(result.get(), classes);
+            }
+            int count = classes.size();
+            for (Map.Entry<String, Future<List<ClassInfo>>> entry : libraryResults.entrySet()) {
+                Map<String, ClassInfo> libraryClasses = new TreeMap<>();
+                add(entry.getValue().get(), libraryClasses);
+                indexed.put(entry.getKey(), libraryClasses);
+                count += libraryClasses.size();
+            }
+            write(target, classes, indexed);
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Contribution indexing interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void write(File target, Map<String, ClassInfo> classes, Map<String, Map<String, ClassInfo>> libraries) throws IOException {
+        target.getParentFile().mkdirs();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write("\nversion=" + VERSION + "\n");
+            write(writer, CLASSES_SOURCE, classes);
+            for (Map.Entry<String, Map<String, ClassInfo>> entry : libraries.entrySet()) {
+                write(writer, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void write(Writer writer, String source, Map<String, ClassInfo> classes) throws IOException {
+        writer.write("source=" + source + "|" + checksum(classes) + "\n");
+        for (ClassInfo info : classes.values()) {
+            writer.write(info.getName() + "=" + (info.getSuperName() == null ? "" : info.getSuperName()) + "|" + join(info.getInterfaces()) + "|"
+                         + join(info.getAnnotations()) + "|" + join(info.getMemberAnnotations()) + "\n");
+        }
+    }
+
+    private void add(List<ClassInfo> infos, Map<String, ClassInfo> classes) {
+        for (ClassInfo info : infos) {
+            classes.put(info.getName(), info);
+        }
+    }
+
+    private List<ClassInfo> readClasses(List<File> files) throws IOException {
+        List<ClassInfo> infos = new ArrayList<>();
+        for (File file : files) {
+            try {
+                add(ClassInfo.parse(Files.readAllBytes(file.toPath())), infos);
+            } catch (IOException e) {
+                throw new IOException("Unable to index " + file + ": " + e.getMessage(), e);
+            }
+        }
+        return infos;
+    }
+
+    private List<ClassInfo> readLibrary(File library) throws IOException {
+        List<ClassInfo> infos = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(library)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                // multi-release versions are indexed by their base version
+                if (!entry.getName().endsWith(CLASS_SUFFIX) || entry.getName().startsWith("META-INF/")) {
+                    continue;
+                }
+                ByteArrayOutputStream stream = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : FileHelper.BUFFER);
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    FileHelper.copy(input, stream);
+                }
+                try {
+                    add(ClassInfo.parse(stream.toByteArray()), infos);
+                } catch (IOException e) {
+                    throw new IOException("Unable to index " + entry.getName() + " in " + library + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return infos;
+    }
+
+    private void add(ClassInfo info, List<ClassInfo> infos) {
+        if (info != null) {
+            infos.add(info);
+        }
+    }
+
+    private void collect(File file, List<File> classFiles) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, classFiles);
+                }
+            }
+        } else if (file.getName().endsWith(CLASS_SUFFIX)) {
+            classFiles.add(file);
+        }
+    }
+
+    private String checksum(Map<String, ClassInfo> classes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        for (ClassInfo info : classes.values()) {
+            digest.update((info.getName() + ":" + Long.toHexString(info.getChecksum()) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return FileHelper.toHex(digest.digest());
+    }
+
+    private String join(Set<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (Iterator<String> iterator = values.iterator(); iterator.hasNext(); ) {
+            builder.append(iterator.next());
+            if (iterator.hasNext()) {
+                builder.append(',');
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -20,6 +20,7 @@ import javax.inject.Inject;
 import java.io.File;
 import java.util.Set;
 
+import org.fabric3.gradle.plugin.core.report.MetricsReporter;
 import org.gradle.api.Action;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -51,13 +52,15 @@ public class Fabric3ContributionPlugin implements Plugin<Project> {
     public void apply(final Project project) {
 
         disableJar(project);
+        MetricsReporter.install(project);
 
-        final Jar contribution = project.getTasks().create("fabric3Contribution", Jar.class);
+        final Contribution contribution = project.getTasks().create("fabric3Contribution", Contribution.class);
         contribution.setDescription("Assembles a contribution archive containing the main classes and library dependencies.");
         contribution.setGroup(BasePlugin.BUILD_GROUP);
 
         JavaPluginConvention convention = project.getConvention().getPlugin(JavaPluginConvention.class);
         contribution.from(convention.getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME).getOutput());
+        contribution.classes(convention.getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME).getOutput());
 
         Configuration runtimeConfiguration = project.getConfigurations().getByName("runtime");
         ArchivePublishArtifact jarArtifact = new ArchivePublishArtifact(contribution);
@@ -73,7 +76,7 @@ public class Fabric3ContributionPlugin implements Plugin<Project> {
                 FileTree compileTree = project.getConfigurations().getByName("compile").getAsFileTree();
                 Configuration providedCompile = project.getConfigurations().getByName(PROVIDED_COMPILE);
                 Set<File> libraries = compileTree.minus(providedCompile).getFiles();
-                contribution.getMetaInf().into("lib").from(libraries);
+                contribution.libraries(libraries);
                 contribution.getMetaInf().into("lib").from(new File("~/.profile"));
             }
         });
@@ -0,0 +1,497 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.fabric3.gradle.plugin.core.analysis.CentralDirectory;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.WorkResult;
+
+/**
+ * Writes a jar, reusing the compressed contents of entries that have not changed since the previous archive was written.
+ *
+ * A state file records the size and modification time of the source of each entry along with the archive the state applies to. An entry is unchanged if
+ * its source has the same size and modification time and the previous archive contains the entry with the recorded CRC, in which case its compressed bytes
+ * are copied from the previous archive without being read from the source or recompressed. Other entries are compressed to a scratch file. The archive is
+ * then assembled in a temporary file and renamed over the previous archive.
+ *
+ * Archives are deterministic: entries are ordered by name, with the manifest first, and carry a fixed timestamp and the Unix mode of their source. If the
+ * copy spec yields a path more than once, the first file is written and the duplicates are reported. Zip64 archives are not supported.
+ */
+public class IncrementalJarWriter implements CopyAction {
+    private static final String STATE_HEADER = "# Fabric3 incremental archive state. Generated by the fabric3Contribution task.";
+    private static final String ARCHIVE_KEY = "archive";
+    private static final String META_INF = "META-INF/";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOC_LENGTH = 30;
+    private static final int CEN_LENGTH = 46;
+    private static final int EOCD_LENGTH = 22;
+    private static final int VERSION = 20;
+    // external attributes hold the Unix mode in the upper 16 bits when the host system in the version made by is Unix
+    private static final int UNIX_HOST = 3 << 8;
+    private static final int UNIX_FILE_FLAG = 0100000;
+    private static final int UNIX_DIRECTORY_FLAG = 040000;
+    private static final int DOS_DIRECTORY_FLAG = 0x10;
+    private static final int UTF8_FLAG = 0x0800;
+    // all entries are written with the MS-DOS timestamp 1980-02-01 00:00
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (2 << 5) | 1;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final Logger LOGGER = Logging.getLogger(IncrementalJarWriter.class);
+
+    private static final Comparator<String> ENTRY_ORDER = new Comparator<String>() {
+        public int compare(String first, String second) {
+            int result = rank(first) - rank(second);
+            return result != 0 ? result : first.compareTo(second);
+        }
+
+        private int rank(String name) {
+            return name.equals(META_INF) ? 0 : name.equals(MANIFEST) ? 1 : 2;
+        }
+    };
+
+    private File archive;
+    private File stateFile;
+    private boolean compressed;
+
+    private int reused;
+    private int written;
+
+    /**
+     * Constructor.
+     *
+     * @param archive    the archive to write
+     * @param stateFile  the file recording the sources of the archive entries
+     * @param compressed true if entries are deflated, false if they are stored
+     */
+    public IncrementalJarWriter(File archive, File stateFile, boolean compressed) {
+        this.archive = archive;
+        this.stateFile = stateFile;
+        this.compressed = compressed;
+    }
+
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        reused = 0;
+        written = 0;
+        File scratch = new File(stateFile.getParentFile(), stateFile.getName() + ".entries");
+        File temp = FileSync.getTempFile(archive);
+        try {
+            stateFile.getParentFile().mkdirs();
+            archive.getParentFile().mkdirs();
+            Map<String, Source> previous = readState();
+            Map<String, CentralDirectory.Entry> previousEntries = previous.isEmpty() ? Collections.<String, CentralDirectory.Entry>emptyMap()
+                                                                                     : readEntries();
+            Map<String, Entry> entries = collect(stream, previous, previousEntries, scratch);
+            if (entries.size() > MAX_ENTRIES) {
+                throw new GradleException("Archive " + archive + " has more than " + MAX_ENTRIES + " entries, which requires Zip64. Disable incremental mode.");
+            }
+            write(entries, scratch, temp);
+            FileSync.commit(temp, archive);
+            writeState(entries);
+        } catch (IOException e) {
+            throw new GradleException("Unable to write " + archive + ": " + e.getMessage(), e);
+        } finally {
+            scratch.delete();
+            temp.delete();
+        }
+        MetricsRegistry.getInstance().counter(MetricNames.ZIP_ENTRIES_REUSED).add(reused);
+        return new WorkResult() {
+            public boolean getDidWork() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of entries copied from the previous archive by the last write.
+     *
+     * @return the number of entries reused
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * Returns the number of entries read from their source and compressed by the last write.
+     *
+     * @return the number of entries written
+     */
+    public int getWritten() {
+        return written;
+    }
+
+    private Map<String, Entry> collect(CopyActionProcessingStream stream,
+                                       final Map<String, Source> previous,
+                                       final Map<String, CentralDirectory.Entry> previousEntries,
+                                       File scratch) throws IOException {
+        final Map<String, Entry> entries = new HashMap<>();
+        final List<String> duplicates = new ArrayList<>();
+        final int method = compressed ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (final CountingStream output = new CountingStream(new FileOutputStream(scratch))) {
+            stream.process(new CopyActionProcessingStreamAction() {
+                public void processFile(FileCopyDetailsInternal details) {
+                    String name = details.getRelativePath().getPathString() + (details.isDirectory() ? "/" : "");
+                    if (entries.containsKey(name)) {
+                        if (!details.isDirectory()) {
+                            duplicates.add(name);
+                        }
+                        return;
+                    }
+                    Entry entry = new Entry(name, details.getSize(), details.getLastModified(), details.getMode());
+                    if (!details.isDirectory()) {
+                        CentralDirectory.Entry previousEntry = previousEntries.get(name);
+                        Source source = previous.get(name);
+                        if (previousEntry != null && source != null && source.matches(details, previousEntry, method)) {
+                            entry.reuse(previousEntry);
+                            reused++;
+                        } else {
+                            try {
+                                compress(details, entry, deflater, output);
+                            } catch (IOException e) {
+                                throw new GradleException("Unable to write " + name + ": " + e.getMessage(), e);
+                            }
+                            written++;
+                        }
+                    }
+                    entries.put(name, entry);
+                }
+            });
+        } finally {
+            deflater.end();
+        }
+        if (!duplicates.isEmpty()) {
+            LOGGER.warn("Archive " + archive + " contains " + duplicates.size() + " duplicate paths, which were skipped: " + duplicates);
+        }
+        return entries;
+    }
+
+    /**
+     * Compresses an entry directly into the scratch file. The entry data spans the scratch file positions before and after it is written.
+     */
+    private void compress(FileCopyDetailsInternal details, Entry entry, Deflater deflater, CountingStream output) throws IOException {
+        CRC32 crc = new CRC32();
+        long start = output.position;
+        long size = 0;
+        try (InputStream input = details.open()) {
+            OutputStream target = output;
+            if (compressed) {
+                deflater.reset();
+                // finished rather than closed, which would close the scratch file
+                target = new DeflaterOutputStream(output, deflater, FileHelper.BUFFER);
+            }
+            byte[] buffer = new byte[FileHelper.BUFFER];
+            int n;
+            while (-1 != (n = input.read(buffer))) {
+                crc.update(buffer, 0, n);
+                target.write(buffer, 0, n);
+                size += n;
+            }
+            if (compressed) {
+                ((DeflaterOutputStream) target).finish();
+            }
+        }
+        entry.write(compressed ? ZipEntry.DEFLATED : ZipEntry.STORED, crc.getValue(), output.position - start, size, start);
+    }
+
+    private void write(Map<String, Entry> entries, File scratch, File temp) throws IOException {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names, ENTRY_ORDER);
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        try (RandomAccessFile previous = reused > 0 ? new RandomAccessFile(archive, "r") : null;
+             RandomAccessFile pending = new RandomAccessFile(scratch, "r");
+             CountingStream output = new CountingStream(new FileOutputStream(temp))) {
+            byte[] buffer = new byte[FileHelper.BUFFER * 4];
+            for (String name : names) {
+                Entry entry = entries.get(name);
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                long offset = output.position;
+                if (offset > MAX_OFFSET) {
+                    throw new GradleException("Archive " + archive + " exceeds 4GB, which requires Zip64. Disable incremental mode.");
+                }
+                output.write(header(LOC_SIGNATURE, LOC_LENGTH, entry, nameBytes.length, 0));
+                output.write(nameBytes);
+                if (entry.previous) {
+                    copy(previous, dataOffset(previous, entry), entry.compressedSize, output, buffer);
+                } else {
+                    copy(pending, entry.offset, entry.compressedSize, output, buffer);
+                }
+                directory.write(header(CEN_SIGNATURE, CEN_LENGTH, entry, nameBytes.length, offset));
+                directory.write(nameBytes);
+            }
+            long directoryOffset = output.position;
+            if (directoryOffset + directory.size() > MAX_OFFSET) {
+                throw new GradleException("Archive " + archive + " exceeds 4GB, which requires Zip64. Disable incremental mode.");
+            }
+            directory.writeTo(output);
+            ByteBuffer end = ByteBuffer.allocate(EOCD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(EOCD_SIGNATURE);
+            end.putShort((short) 0); // disk number
+            end.putShort((short) 0); // disk with the central directory
+            end.putShort((short) names.size());
+            end.putShort((short) names.size());
+            end.putInt(directory.size());
+            end.putInt((int) directoryOffset);
+            end.putShort((short) 0); // comment length
+            output.write(end.array());
+        }
+    }
+
+    private byte[] header(int signature, int length, Entry entry, int nameLength, long offset) {
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(signature);
+        if (signature == CEN_SIGNATURE) {
+            header.putShort((short) (UNIX_HOST | VERSION)); // version made by
+        }
+        header.putShort((short) VERSION); // version needed to extract
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putShort((short) DOS_TIME);
+        header.putShort((short) DOS_DATE);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) nameLength);
+        header.putShort((short) 0); // extra field length
+        if (signature == CEN_SIGNATURE) {
+            header.putShort((short) 0); // comment length
+            header.putShort((short) 0); // disk number
+            header.putShort((short) 0); // internal attributes
+            header.putInt(externalAttributes(entry));
+            header.putInt((int) offset);
+        }
+        return header.array();
+    }
+
+    private int externalAttributes(Entry entry) {
+        if (entry.name.endsWith("/")) {
+            return ((UNIX_DIRECTORY_FLAG | entry.mode) << 16) | DOS_DIRECTORY_FLAG;
+        }
+        return (UNIX_FILE_FLAG | entry.mode) << 16;
+    }
+
+    private long dataOffset(RandomAccessFile file, Entry entry) throws IOException {
+        byte[] bytes = new byte[LOC_LENGTH];
+        file.seek(entry.offset);
+        file.readFully(bytes);
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != LOC_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name + " in " + archive);
+        }
+        return entry.offset + LOC_LENGTH + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    private void copy(RandomAccessFile file, long offset, long length, OutputStream output, byte[] buffer) throws IOException {
+        file.seek(offset);
+        long remaining = length;
+        while (remaining > 0) {
+            int n = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file reading entry data");
+            }
+            output.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private Map<String, CentralDirectory.Entry> readEntries() throws IOException {
+        Map<String, CentralDirectory.Entry> entries = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            for (CentralDirectory.Entry entry : CentralDirectory.read(file)) {
+                entries.put(entry.getName(), entry);
+            }
+        } catch (ZipException e) {
+            // the previous archive is not readable and is rewritten
+            return Collections.emptyMap();
+        }
+        return entries;
+    }
+
+    private Map<String, Source> readState() throws IOException {
+        Map<String, Source> state = new HashMap<>();
+        if (!stateFile.isFile() || !archive.isFile()) {
+            return state;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('=');
+                if (line.startsWith("#") || separator < 0) {
+                    continue;
+                }
+                String[] values = line.substring(separator + 1).split("\\|");
+                try {
+                    if (values.length == 2 && line.substring(0, separator).equals(ARCHIVE_KEY)) {
+                        // the state only applies to the archive it was written with
+                        if (Long.parseLong(values[0]) != archive.length() || Long.parseLong(values[1]) != archive.lastModified()) {
+                            return Collections.emptyMap();
+                        }
+                    } else if (values.length == 3) {
+                        Source source = new Source(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2], 16));
+                        state.put(line.substring(0, separator), source);
+                    }
+                } catch (NumberFormatException e) {
+                    return Collections.emptyMap();
+                }
+            }
+        }
+        return state;
+    }
+
+    private void writeState(Map<String, Entry> entries) throws IOException {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names, ENTRY_ORDER);
+        File temp = FileSync.getTempFile(stateFile);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(STATE_HEADER + "\n");
+            writer.write(ARCHIVE_KEY + "=" + archive.length() + "|" + archive.lastModified() + "\n");
+            for (String name : names) {
+                Entry entry = entries.get(name);
+                if (!entry.name.endsWith("/")) {
+                    writer.write(entry.name + "=" + entry.sourceSize + "|" + entry.sourceLastModified + "|" + Long.toHexString(entry.crc) + "\n");
+                }
+            }
+        }
+        FileSync.commit(temp, stateFile);
+    }
+
+    /**
+     * The source of an entry in the previous archive.
+     */
+    private static class Source {
+        private long size;
+        private long lastModified;
+        private long crc;
+
+        public Source(long size, long lastModified, long crc) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+
+        /**
+         * Returns true if the source is unchanged and the previous entry is written with the compression method of the archive.
+         */
+        public boolean matches(FileCopyDetailsInternal details, CentralDirectory.Entry entry, int method) {
+            return size == details.getSize() && lastModified == details.getLastModified() && crc == entry.getCrc() && size == entry.getSize()
+                   && entry.getMethod() == method;
+        }
+    }
+
+    /**
+     * An entry in the archive being written. The offset is the local header offset in the previous archive for reused entries, otherwise the offset of
+     * the compressed data in the scratch file.
+     */
+    private static class Entry {
+        private String name;
+        private long sourceSize;
+        private long sourceLastModified;
+        private int mode;
+        private boolean previous;
+        private int method = ZipEntry.STORED;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long offset;
+
+        public Entry(String name, long sourceSize, long sourceLastModified, int mode) {
+            this.name = name;
+            this.sourceSize = sourceSize;
+            this.sourceLastModified = sourceLastModified;
+            this.mode = mode & 07777;
+        }
+
+        public void reuse(CentralDirectory.Entry entry) {
+            write(entry.getMethod(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(), entry.getLocalOffset());
+            previous = true;
+        }
+
+        public void write(int method, long crc, long compressedSize, long size, long offset) {
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A buffered stream that tracks the number of bytes written.
+     */
+    private static class CountingStream extends BufferedOutputStream {
+        private long position;
+
+        public CountingStream(OutputStream stream) {
+            super(stream, FileHelper.BUFFER * 4);
+        }
+
+        public void write(int b) throws IOException {
+            super.write(b);
+            position++;
+        }
+
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            super.write(bytes, offset, length);
+            position += length;
+        }
+    }
+
+}
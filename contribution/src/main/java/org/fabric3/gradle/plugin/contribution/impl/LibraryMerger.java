@@ -0,0 +1,285 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * Merges the contents of contribution libraries into a directory that is packaged with the contribution classes in place of nested
+ * <code>META-INF/lib</code> jars.
+ *
+ * Conflicts are resolved deterministically:
+ * <ul>
+ * <li>Entries in the contribution classes take precedence over library entries.</li>
+ * <li>Libraries are merged in file name order and the first library containing an entry takes precedence.</li>
+ * <li>Service provider files in <code>META-INF/services</code> are merged, starting with the contribution's providers followed by the providers of each
+ * library in order. Duplicate providers and comments are removed.</li>
+ * <li>Library manifests, signature files and <code>module-info.class</code> are stripped since they do not apply to the merged archive.</li>
+ * </ul>
+ */
+public class LibraryMerger {
+    private static final String META_INF = "META-INF/";
+    private static final String SERVICES = "META-INF/services/";
+
+    private DirectoryReaper reaper;
+
+    /**
+     * Constructor.
+     *
+     * @param reaper the reaper used to clear the merge directory
+     */
+    public LibraryMerger(DirectoryReaper reaper) {
+        this.reaper = reaper;
+    }
+
+    /**
+     * Merges the libraries.
+     *
+     * @param classesDirectories the directories containing the contribution classes and resources
+     * @param libraries          the libraries
+     * @param directory          the directory to merge the libraries into, which is cleared first
+     * @return the merge report
+     * @throws IOException if there is an error reading a library or writing an entry
+     */
+    public Report merge(Collection<File> classesDirectories, Collection<File> libraries, File directory) throws IOException {
+        reaper.clean(directory);
+
+        Map<String, File> contribution = new HashMap<>();
+        for (File classesDirectory : classesDirectories) {
+            collect(classesDirectory, "", contribution);
+        }
+
+        List<File> sorted = new ArrayList<>(libraries);
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File first, File second) {
+                int result = first.getName().compareTo(second.getName());
+                return result != 0 ? result : first.getPath().compareTo(second.getPath());
+            }
+        });
+
+        Report report = new Report();
+        // entry name to the library and CRC of the merged entry
+        Map<String, String> owners = new HashMap<>();
+        Map<String, Long> checksums = new HashMap<>();
+        Map<String, Set<String>> services = new TreeMap<>();
+        for (File library : sorted) {
+            if (!library.isFile()) {
+                report.ignored.add(library.getName());
+                continue;
+            }
+            try (ZipFile zipFile = new ZipFile(library)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    if (!isSafe(name) || isStripped(name)) {
+                        report.stripped++;
+                    } else if (isService(name)) {
+                        Set<String> providers = services.get(name);
+                        if (providers == null) {
+                            providers = new LinkedHashSet<>();
+                            File contributionFile = contribution.get(name);
+                            if (contributionFile != null) {
+                                try (InputStream stream = new FileInputStream(contributionFile)) {
+                                    readProviders(stream, providers);
+                                }
+                                report.overridden.add(name);
+                            }
+                            services.put(name, providers);
+                        }
+                        try (InputStream stream = zipFile.getInputStream(entry)) {
+                            readProviders(stream, providers);
+                        }
+                    } else if (contribution.containsKey(name)) {
+                        report.conflicts.put(name, "contribution over " + library.getName());
+                    } else if (owners.containsKey(name)) {
+                        if (checksums.get(name) == entry.getCrc()) {
+                            report.identical++;
+                        } else {
+                            report.conflicts.put(name, owners.get(name) + " over " + library.getName());
+                        }
+                    } else {
+                        File target = new File(directory, name);
+                        target.getParentFile().mkdirs();
+                        try (InputStream input = zipFile.getInputStream(entry);
+                             OutputStream output = new BufferedOutputStream(new FileOutputStream(target))) {
+                            FileHelper.copy(input, output);
+                        }
+                        owners.put(name, library.getName());
+                        checksums.put(name, entry.getCrc());
+                        report.merged++;
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> entry : services.entrySet()) {
+            File target = new File(directory, entry.getKey());
+            target.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8))) {
+                for (String provider : entry.getValue()) {
+                    writer.write(provider);
+                    writer.write("\n");
+                }
+            }
+            report.services.add(entry.getKey());
+        }
+        return report;
+    }
+
+    private boolean isStripped(String name) {
+        if (name.equals("module-info.class")) {
+            return true;
+        }
+        if (!name.startsWith(META_INF) || name.indexOf('/', META_INF.length()) >= 0) {
+            return false;
+        }
+        String file = name.substring(META_INF.length()).toUpperCase();
+        return file.equals("MANIFEST.MF") || file.equals("INDEX.LIST") || file.startsWith("SIG-") || file.endsWith(".SF") || file.endsWith(".DSA")
+               || file.endsWith(".RSA") || file.endsWith(".EC");
+    }
+
+    private boolean isService(String name) {
+        return name.startsWith(SERVICES) && name.indexOf('/', SERVICES.length()) < 0;
+    }
+
+    private boolean isSafe(String name) {
+        // reject entries that would be written outside the merge directory
+        return !name.startsWith("/") && !name.contains("\\") && !name.equals("..") && !name.startsWith("../") && !name.contains("/../")
+               && !name.endsWith("/..");
+    }
+
+    private void readProviders(InputStream stream, Set<String> providers) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                providers.add(line);
+            }
+        }
+    }
+
+    private void collect(File file, String path, Map<String, File> entries) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+                collect(child, childPath + "/", entries);
+            } else {
+                entries.put(childPath, child);
+            }
+        }
+    }
+
+    /**
+     * The result of merging libraries.
+     */
+    public static class Report {
+        private int merged;
+        private int identical;
+        private int stripped;
+        private Map<String, String> conflicts = new TreeMap<>();
+        private Set<String> services = new TreeSet<>();
+        private Set<String> overridden = new HashSet<>();
+        private Set<String> ignored = new TreeSet<>();
+
+        /**
+         * Returns the contribution service provider files that are replaced by merged files.
+         *
+         * @return the service provider file paths
+         */
+        public Set<String> getOverridden() {
+            return overridden;
+        }
+
+        /**
+         * Writes the report.
+         *
+         * @param file the report file
+         * @throws IOException if there is an error writing the file
+         */
+        public void write(File file) throws IOException {
+            file.getParentFile().mkdirs();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writer.write("Merged entries: " + merged + "\n");
+                writer.write("Skipped identical entries: " + identical + "\n");
+                writer.write("Stripped manifest, signature, module and unsafe entries: " + stripped + "\n");
+                writer.write("Skipped conflicting entries: " + conflicts.size() + "\n");
+                for (Map.Entry<String, String> entry : conflicts.entrySet()) {
+                    writer.write("  " + entry.getKey() + ": " + entry.getValue() + "\n");
+                }
+                writer.write("Merged service files: " + services.size() + "\n");
+                for (String service : services) {
+                    writer.write("  " + service + "\n");
+                }
+                if (!ignored.isEmpty()) {
+                    writer.write("Ignored libraries that are not archives: " + ignored.size() + "\n");
+                    for (String library : ignored) {
+                        writer.write("  " + library + "\n");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "merged=" + merged + " identical=" + identical + " stripped=" + stripped + " conflicts=" + conflicts.size() + " services=" + services.size();
+        }
+    }
+
+}
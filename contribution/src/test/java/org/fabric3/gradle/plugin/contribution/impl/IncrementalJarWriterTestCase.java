@@ -0,0 +1,235 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.contribution.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+
+/**
+ *
+ */
+public class IncrementalJarWriterTestCase extends TestCase {
+    private File directory;
+    private File archive;
+    private File stateFile;
+    private File manifest;
+    private File classFile;
+    private File library;
+
+    public void testWritesArchive() throws Exception {
+        IncrementalJarWriter writer = new IncrementalJarWriter(archive, stateFile, true);
+        writer.execute(stream(details("lib/b.jar", library, 0644), details("META-INF/MANIFEST.MF", manifest, 0644), details("a/A.class", classFile, 0644)));
+
+        assertEquals(3, writer.getWritten());
+        assertEquals(0, writer.getReused());
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                names.add(entry.getName());
+                assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            }
+            assertEquals(Arrays.asList("META-INF/MANIFEST.MF", "a/A.class", "lib/b.jar"), names);
+            assertContents(library, zipFile, "lib/b.jar");
+            assertContents(manifest, zipFile, "META-INF/MANIFEST.MF");
+            assertContents(classFile, zipFile, "a/A.class");
+        }
+    }
+
+    public void testArchiveIsDeterministic() throws Exception {
+        new IncrementalJarWriter(archive, stateFile, true).execute(stream(details("a/A.class", classFile, 0644), details("lib/b.jar", library, 0644)));
+        File second = new File(directory, "second.jar");
+        library.setLastModified(library.lastModified() - 10000);
+        new IncrementalJarWriter(second, new File(directory, "second.state"), true).execute(stream(details("lib/b.jar", library, 0644),
+                                                                                                       details("a/A.class", classFile, 0644)));
+
+        assertTrue(Arrays.equals(Files.readAllBytes(archive.toPath()), Files.readAllBytes(second.toPath())));
+    }
+
+    public void testReusesUnchangedEntries() throws Exception {
+        new IncrementalJarWriter(archive, stateFile, true).execute(stream(details("a/A.class", classFile, 0644), details("lib/b.jar", library, 0644)));
+        write(classFile, "changed class contents");
+
+        IncrementalJarWriter writer = new IncrementalJarWriter(archive, stateFile, true);
+        writer.execute(stream(details("a/A.class", classFile, 0644), details("lib/b.jar", library, 0644)));
+
+        assertEquals(1, writer.getWritten());
+        assertEquals(1, writer.getReused());
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertContents(classFile, zipFile, "a/A.class");
+            assertContents(library, zipFile, "lib/b.jar");
+        }
+    }
+
+    public void testCompressionChangeRewritesEntries() throws Exception {
+        new IncrementalJarWriter(archive, stateFile, true).execute(stream(details("lib/b.jar", library, 0644)));
+
+        IncrementalJarWriter writer = new IncrementalJarWriter(archive, stateFile, false);
+        writer.execute(stream(details("lib/b.jar", library, 0644)));
+
+        assertEquals(1, writer.getWritten());
+        assertEquals(0, writer.getReused());
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("lib/b.jar").getMethod());
+            assertContents(library, zipFile, "lib/b.jar");
+        }
+    }
+
+    public void testWritesUnixModes() throws Exception {
+        new IncrementalJarWriter(archive, stateFile, true).execute(stream(directoryDetails("bin", 0755), details("bin/run.sh", classFile, 0755),
+                                                                          details("lib/b.jar", library, 0644)));
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(archive.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = bytes.getInt(bytes.limit() - 6);
+        List<String> modes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0x02014b50, bytes.getInt(offset));
+            assertEquals(3, (bytes.getShort(offset + 4) & 0xFFFF) >> 8);
+            int nameLength = bytes.getShort(offset + 28) & 0xFFFF;
+            String name = new String(bytes.array(), offset + 46, nameLength, StandardCharsets.UTF_8);
+            modes.add(name + " " + Integer.toOctalString(bytes.getInt(offset + 38) >>> 16));
+            offset += 46 + nameLength;
+        }
+        assertEquals(Arrays.asList("bin/ 40755", "bin/run.sh 100755", "lib/b.jar 100644"), modes);
+    }
+
+    public void testDuplicatePathsKeepFirstFile() throws Exception {
+        IncrementalJarWriter writer = new IncrementalJarWriter(archive, stateFile, true);
+        writer.execute(stream(details("a/A.class", classFile, 0644), details("a/A.class", library, 0644)));
+
+        assertEquals(1, writer.getWritten());
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            assertEquals(1, zipFile.size());
+            assertContents(classFile, zipFile, "a/A.class");
+        }
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("jar").toFile();
+        archive = new File(directory, "contribution.jar");
+        stateFile = new File(directory, "contribution.state");
+        manifest = new File(directory, "MANIFEST.MF");
+        write(manifest, "Manifest-Version: 1.0\n");
+        classFile = new File(directory, "A.class");
+        write(classFile, "class contents");
+        library = new File(directory, "b.jar");
+        byte[] bytes = new byte[64 * 1024];
+        new Random(0).nextBytes(bytes);
+        Files.write(library.toPath(), bytes);
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertContents(File expected, ZipFile zipFile, String name) throws IOException {
+        try (InputStream stream = zipFile.getInputStream(zipFile.getEntry(name))) {
+            byte[] contents = Files.readAllBytes(expected.toPath());
+            byte[] actual = new byte[contents.length + 1];
+            int total = 0;
+            int n;
+            while (total < actual.length && (n = stream.read(actual, total, actual.length - total)) != -1) {
+                total += n;
+            }
+            assertEquals(name, contents.length, total);
+            assertTrue(name, Arrays.equals(contents, Arrays.copyOf(actual, total)));
+        }
+    }
+
+    private CopyActionProcessingStream stream(final FileCopyDetailsInternal... details) {
+        return new CopyActionProcessingStream() {
+            public void process(CopyActionProcessingStreamAction action) {
+                for (FileCopyDetailsInternal detail : details) {
+                    action.processFile(detail);
+                }
+            }
+        };
+    }
+
+    private FileCopyDetailsInternal directoryDetails(String path, int mode) {
+        return details(path, null, mode);
+    }
+
+    /**
+     * Returns the details of a file copied to a path in the archive or of a directory if the file is null.
+     */
+    private FileCopyDetailsInternal details(final String path, final File file, final int mode) {
+        final RelativePath relativePath = RelativePath.parse(file != null, path);
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getRelativePath":
+                        return relativePath;
+                    case "getPath":
+                        return path;
+                    case "isDirectory":
+                        return file == null;
+                    case "getSize":
+                        return file == null ? 0L : file.length();
+                    case "getLastModified":
+                        return file == null ? 0L : file.lastModified();
+                    case "getMode":
+                        return mode;
+                    case "getFile":
+                        return file;
+                    case "open":
+                        return new FileInputStream(file);
+                    case "copyTo":
+                        Files.copy(file.toPath(), (OutputStream) args[0]);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        };
+        ClassLoader classLoader = getClass().getClassLoader();
+        return (FileCopyDetailsInternal) Proxy.newProxyInstance(classLoader, new Class<?>[]{FileCopyDetailsInternal.class}, handler);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.distribution.impl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+
+import org.fabric3.gradle.plugin.core.checksum.ArchiveChecksums;
+import org.fabric3.gradle.plugin.core.checksum.ChecksumSettings;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.tasks.bundling.Compression;
+import org.gradle.api.tasks.bundling.Tar;
+
+/**
+ * Extends the Tar task to compress gzip archives on a pool of threads using a {@link ParallelGzipOutputStream}. Defaults to gzip compression. Writes
+ * {@link ArchiveChecksums} for the archive and its entries, which are configured with the task properties of {@link ChecksumSettings}.
+ *
+ * The supported compressions are those of the Gradle {@link Compression} setting: gzip, bzip2, which is written on a single thread by the Ant bzip2
+ * stream, and none. Zstandard is not offered: neither the JDK nor Ant provide a codec, and the available Java codecs bind the native zstd library,
+ * which would be loaded into the long-lived Gradle daemon and tie the plugin to the platforms the library is built for.
+ */
+public class CompressedTar extends Tar {
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int blockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private ChecksumSettings checksumSettings;
+
+    public CompressedTar() {
+        setCompression(Compression.GZIP);
+        checksumSettings = ChecksumSettings.register(this, new Callable<List<File>>() {
+            public List<File> call() {
+                return Collections.singletonList(getArchivePath());
+            }
+        });
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the gzip compression level from 0 to 9. Defaults to the deflate default level.
+     *
+     * @param compressionLevel the compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the size of the blocks compressed in parallel. Defaults to 128K. The archive contents only depend on the block size and level, not the number of
+     * threads.
+     *
+     * @param blockSize the block size
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the number of compression threads. Defaults to the number of available processors.
+     *
+     * @param compressionThreads the number of threads
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    protected CopyAction createCopyAction() {
+        CopyAction action = new DistributionArchiveWriter(null, getArchivePath(), getCompression(), compressionLevel, blockSize, compressionThreads);
+        return checksumSettings.apply(action, Collections.singletonList(getArchivePath()));
+    }
+
+}
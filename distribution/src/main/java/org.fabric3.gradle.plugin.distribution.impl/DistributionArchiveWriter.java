@@ -0,0 +1,360 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.distribution.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.apache.tools.zip.UnixStat;
+import org.apache.tools.zip.Zip64Mode;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
+import org.fabric3.gradle.plugin.core.checksum.ArchiveChecksums;
+import org.fabric3.gradle.plugin.core.checksum.ArchiveDigests;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.bundling.Compression;
+
+/**
+ * Writes a zip and a tar archive from a single walk of the distribution contents. The zip archive is optional.
+ *
+ * Each file is read once in chunks that are passed to a writer thread per archive, so both archives are compressed concurrently. The number of chunks
+ * queued for a writer is bounded, which limits memory use when one archive is slower to write. Entries are written with the same paths, modification times
+ * and Unix modes as the Gradle <code>Zip</code> and <code>Tar</code> tasks. Gzip compressed tar archives are written using a
+ * {@link ParallelGzipOutputStream}. Both archives are digested as they are written; the zip archive is written sequentially with data descriptors instead
+ * of seeking back to complete each local header.
+ */
+public class DistributionArchiveWriter implements CopyAction, ArchiveDigests {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_PENDING = 32;
+
+    private File zipFile;
+    private File tarFile;
+    private Compression tarCompression;
+    private int level;
+    private int blockSize;
+    private int threads;
+    private DigestOutputStream zipDigest;
+    private DigestOutputStream tarDigest;
+
+    /**
+     * Constructor.
+     *
+     * @param zipFile        the zip archive or null if only the tar archive is written
+     * @param tarFile        the tar archive
+     * @param tarCompression the tar archive compression
+     * @param level          the gzip compression level
+     * @param blockSize      the size of the blocks compressed in parallel for gzip
+     * @param threads        the number of gzip compression threads
+     */
+    public DistributionArchiveWriter(File zipFile, File tarFile, Compression tarCompression, int level, int blockSize, int threads) {
+        this.zipFile = zipFile;
+        this.tarFile = tarFile;
+        this.tarCompression = tarCompression;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.threads = threads;
+    }
+
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        final ZipOutputStream zip;
+        final TarOutputStream tar;
+        try {
+            zip = zipFile == null ? null : new ZipOutputStream(createZipStream());
+            if (zip != null) {
+                zip.setUseZip64(Zip64Mode.Never);
+                zip.setMethod(ZipOutputStream.DEFLATED);
+            }
+            tar = new TarOutputStream(createTarStream());
+            tar.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+        } catch (IOException e) {
+            throw new GradleException("Unable to create distribution archives: " + e.getMessage(), e);
+        }
+        final Writer zipWriter = zip == null ? null : new Writer(zipFile);
+        final Writer tarWriter = new Writer(tarFile);
+        try {
+            stream.process(new CopyActionProcessingStreamAction() {
+                public void processFile(FileCopyDetailsInternal details) {
+                    String path = details.getRelativePath().getPathString();
+                    long lastModified = details.getLastModified();
+                    int mode = details.getMode();
+                    if (details.isDirectory()) {
+                        if (zip != null) {
+                            zipWriter.submit(putZipEntry(zip, path + "/", lastModified, UnixStat.DIR_FLAG | mode));
+                        }
+                        tarWriter.submit(putTarEntry(tar, path + "/", lastModified, UnixStat.DIR_FLAG | mode, 0));
+                    } else {
+                        if (zip != null) {
+                            zipWriter.submit(putZipEntry(zip, path, lastModified, UnixStat.FILE_FLAG | mode));
+                        }
+                        tarWriter.submit(putTarEntry(tar, path, lastModified, UnixStat.FILE_FLAG | mode, details.getSize()));
+                        try (InputStream input = details.open()) {
+                            byte[] chunk;
+                            while ((chunk = read(input)) != null) {
+                                if (zip != null) {
+                                    zipWriter.submit(write(zip, chunk));
+                                }
+                                tarWriter.submit(write(tar, chunk));
+                            }
+                        } catch (IOException e) {
+                            throw new GradleException("Unable to read " + details.getFile() + ": " + e.getMessage(), e);
+                        }
+                    }
+                    if (zip != null) {
+                        zipWriter.submit(closeEntry(zip));
+                        zipWriter.checkFailure();
+                    }
+                    tarWriter.submit(closeEntry(tar));
+                    tarWriter.checkFailure();
+                }
+            });
+            if (zip != null) {
+                zipWriter.submit(close(zip));
+                zipWriter.await();
+            }
+            tarWriter.submit(close(tar));
+            tarWriter.await();
+        } finally {
+            if (zip != null) {
+                zipWriter.shutdown();
+                closeQuietly(zip);
+            }
+            tarWriter.shutdown();
+            closeQuietly(tar);
+        }
+        return new WorkResult() {
+            public boolean getDidWork() {
+                return true;
+            }
+        };
+    }
+
+    public String getDigest(File archive) {
+        if (archive.equals(zipFile) && zipDigest != null) {
+            return FileHelper.toHex(zipDigest.getMessageDigest().digest());
+        }
+        return archive.equals(tarFile) && tarDigest != null ? FileHelper.toHex(tarDigest.getMessageDigest().digest()) : null;
+    }
+
+    /**
+     * Returns the stream the zip archive is written to. The archive is written sequentially, with the sizes and CRC of each entry in a data descriptor
+     * following its contents, so it can be digested as it is written.
+     */
+    private OutputStream createZipStream() throws IOException {
+        zipDigest = new DigestOutputStream(new FileOutputStream(zipFile), ArchiveChecksums.createDigest());
+        return new BufferedOutputStream(zipDigest, CHUNK_SIZE);
+    }
+
+    private OutputStream createTarStream() throws IOException {
+        tarDigest = new DigestOutputStream(new FileOutputStream(tarFile), ArchiveChecksums.createDigest());
+        OutputStream stream = new BufferedOutputStream(tarDigest, CHUNK_SIZE);
+        switch (tarCompression) {
+            case GZIP:
+                return new ParallelGzipOutputStream(stream, level, blockSize, threads);
+            case BZIP2:
+                // the bzip2 stream expects the caller to write the magic header
+                stream.write('B');
+                stream.write('Z');
+                return new CBZip2OutputStream(stream);
+            default:
+                return stream;
+        }
+    }
+
+    /**
+     * Reads the next chunk of a file.
+     *
+     * @return the chunk or null if the end of the file has been reached
+     */
+    private byte[] read(InputStream input) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int read = 0;
+        int n;
+        while (read < buffer.length && -1 != (n = input.read(buffer, read, buffer.length - read))) {
+            read += n;
+        }
+        if (read == 0) {
+            return null;
+        }
+        if (read < buffer.length) {
+            byte[] chunk = new byte[read];
+            System.arraycopy(buffer, 0, chunk, 0, read);
+            return chunk;
+        }
+        return buffer;
+    }
+
+    private Operation putZipEntry(final ZipOutputStream zip, final String path, final long lastModified, final int mode) {
+        return new Operation() {
+            public void execute() throws IOException {
+                ZipEntry entry = new ZipEntry(path);
+                entry.setTime(lastModified);
+                entry.setUnixMode(mode);
+                zip.putNextEntry(entry);
+            }
+        };
+    }
+
+    private Operation putTarEntry(final TarOutputStream tar, final String path, final long lastModified, final int mode, final long size) {
+        return new Operation() {
+            public void execute() throws IOException {
+                TarEntry entry = new TarEntry(path);
+                entry.setModTime(lastModified);
+                entry.setMode(mode);
+                entry.setSize(size);
+                tar.putNextEntry(entry);
+            }
+        };
+    }
+
+    private Operation write(final OutputStream stream, final byte[] chunk) {
+        return new Operation() {
+            public void execute() throws IOException {
+                stream.write(chunk);
+            }
+        };
+    }
+
+    private Operation closeEntry(final ZipOutputStream zip) {
+        return new Operation() {
+            public void execute() throws IOException {
+                zip.closeEntry();
+            }
+        };
+    }
+
+    private Operation closeEntry(final TarOutputStream tar) {
+        return new Operation() {
+            public void execute() throws IOException {
+                tar.closeEntry();
+            }
+        };
+    }
+
+    private Operation close(final OutputStream stream) {
+        return new Operation() {
+            public void execute() throws IOException {
+                stream.close();
+            }
+        };
+    }
+
+    private void closeQuietly(OutputStream stream) {
+        try {
+            // no-op if the archive was completed
+            stream.close();
+        } catch (IOException e) {
+            // ignore since the archive failed
+        }
+    }
+
+    /**
+     * An archive write performed on a writer thread.
+     */
+    private interface Operation {
+
+        void execute() throws IOException;
+
+    }
+
+    /**
+     * Performs the writes to an archive in order on a dedicated thread.
+     */
+    private static class Writer {
+        private File archive;
+        private ExecutorService executor = Executors.newSingleThreadExecutor();
+        private Semaphore pending = new Semaphore(MAX_PENDING);
+        // the first failed write, including runtime exceptions thrown by the archive stream
+        private volatile Exception failure;
+
+        public Writer(File archive) {
+            this.archive = archive;
+        }
+
+        public void submit(final Operation operation) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GradleException("Interrupted writing " + archive, e);
+            }
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        // skip the remaining writes once the archive has failed
+                        if (failure == null) {
+                            operation.execute();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failure = e;
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        }
+
+        public void checkFailure() {
+            if (failure != null) {
+                throw new GradleException("Unable to write " + archive + ": " + failure.getMessage(), failure);
+            }
+        }
+
+        public void await() {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // wait for the queued writes to complete
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GradleException("Interrupted writing " + archive, e);
+            }
+            checkFailure();
+        }
+
+        /**
+         * Stops the writer thread, discarding queued writes if the distribution failed.
+         */
+        public void shutdown() {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.distribution.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+
+import org.fabric3.gradle.plugin.core.checksum.ArchiveChecksums;
+import org.fabric3.gradle.plugin.core.checksum.ChecksumSettings;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.tasks.bundling.Compression;
+import org.gradle.api.tasks.bundling.Zip;
+
+/**
+ * Extends the Zip task to also write a tar archive of the same contents, so distributions published in both formats are read once. The tar archive is
+ * written next to the zip archive with the extension of the Gradle <code>Tar</code> task for the configured compression. Gzip compression is performed on a
+ * pool of threads as described in {@link CompressedTar}. Writes {@link ArchiveChecksums} for both archives and their entries, which are
+ * configured with the task properties of {@link ChecksumSettings}. Both archives are digested as they are written, so neither is read again.
+ */
+public class DistributionArchives extends Zip {
+    private Compression tarCompression = Compression.NONE;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int blockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private ChecksumSettings checksumSettings;
+
+    public DistributionArchives() {
+        getOutputs().file(new Callable<File>() {
+            public File call() {
+                return getTarPath();
+            }
+        });
+        checksumSettings = ChecksumSettings.register(this, new Callable<List<File>>() {
+            public List<File> call() {
+                return Arrays.asList(getArchivePath(), getTarPath());
+            }
+        });
+    }
+
+    public Compression getTarCompression() {
+        return tarCompression;
+    }
+
+    /**
+     * Sets the tar archive compression: gzip, bzip2 or none. Defaults to none. Zstandard is not supported for the reasons given in {@link CompressedTar}.
+     *
+     * @param tarCompression the compression
+     */
+    public void setTarCompression(Compression tarCompression) {
+        this.tarCompression = tarCompression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Returns the tar archive path.
+     *
+     * @return the tar archive path
+     */
+    public File getTarPath() {
+        String name = getArchiveName();
+        String suffix = "." + getExtension();
+        if (name.endsWith(suffix)) {
+            name = name.substring(0, name.length() - suffix.length());
+        }
+        return new File(getDestinationDir(), name + "." + getTarExtension());
+    }
+
+    protected CopyAction createCopyAction() {
+        CopyAction action = new DistributionArchiveWriter(getArchivePath(), getTarPath(), tarCompression, compressionLevel, blockSize, compressionThreads);
+        return checksumSettings.apply(action, Arrays.asList(getArchivePath(), getTarPath()));
+    }
+
+    private String getTarExtension() {
+        switch (tarCompression) {
+            case GZIP:
+                return "tgz";
+            case BZIP2:
+                return "tbz2";
+            default:
+                return "tar";
+        }
+    }
+
+}
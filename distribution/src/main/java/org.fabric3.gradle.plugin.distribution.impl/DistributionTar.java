@@ -0,0 +1,48 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.distribution.impl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.fabric3.gradle.plugin.core.checksum.ArchiveChecksums;
+import org.fabric3.gradle.plugin.core.checksum.ChecksumSettings;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.tasks.bundling.Tar;
+
+/**
+ * Extends the Tar task to write {@link ArchiveChecksums} for the archive and its entries, which are configured with the task properties of
+ * {@link ChecksumSettings}.
+ */
+public class DistributionTar extends Tar {
+    private ChecksumSettings checksumSettings;
+
+    public DistributionTar() {
+        checksumSettings = ChecksumSettings.register(this, new Callable<List<File>>() {
+            public List<File> call() {
+                return Collections.singletonList(getArchivePath());
+            }
+        });
+    }
+
+    protected CopyAction createCopyAction() {
+        return checksumSettings.apply(super.createCopyAction(), Collections.singletonList(getArchivePath()));
+    }
+
+}
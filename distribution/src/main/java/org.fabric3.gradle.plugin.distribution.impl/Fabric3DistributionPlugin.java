@@ -28,13 +28,11 @@ import org.gradle.api.internal.file.FileOperations;
 import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.plugins.ExtensionContainer;
 import org.gradle.api.tasks.bundling.AbstractArchiveTask;
-import org.gradle.api.tasks.bundling.Tar;
-import org.gradle.api.tasks.bundling.Zip;
 import org.gradle.internal.reflect.Instantiator;
 
 /**
  * Plugin that builds distributions. This plugin is similar to the standard Gradle plugin except it allows contents to be placed in the root archive folder and
- * does not include an install task.
+ * does not include an install task. A combined task writes the zip and tar distributions from a single walk of the contents.
  */
 public class Fabric3DistributionPlugin implements Plugin<Project> {
 
@@ -42,6 +40,8 @@ public class Fabric3DistributionPlugin implements Plugin<Project> {
     private static final String DISTRIBUTION_GROUP = "distribution";
     private static final String TASK_DIST_ZIP_NAME = "distZip";
     private static final String TASK_DIST_TAR_NAME = "distTar";
+    private static final String TASK_DIST_ARCHIVES_NAME = "distArchives";
+    private static final String TASK_DIST_TGZ_NAME = "distTgz";
 
     private final Instantiator instantiator;
     private final FileOperations fileOperations;
@@ -72,6 +72,8 @@ public class Fabric3DistributionPlugin implements Plugin<Project> {
 
                 addZipTask(project, distribution);
                 addTarTask(project, distribution);
+                addArchivesTask(project, distribution);
+                addTgzTask(project, distribution);
                 return args;
             }
 
@@ -87,7 +89,7 @@ public class Fabric3DistributionPlugin implements Plugin<Project> {
         if (!MAIN_DISTRIBUTION_NAME.equals(distribution.getName())) {
             taskName = distribution.getName() + "DistZip";
         }
-        configureArchiveTask(project, taskName, distribution, Zip.class);
+        configureArchiveTask(project, taskName, distribution, DistributionZip.class);
     }
 
     void addTarTask(Project project, Distribution distribution) {
@@ -95,10 +97,31 @@ public class Fabric3DistributionPlugin implements Plugin<Project> {
         if (!MAIN_DISTRIBUTION_NAME.equals(distribution.getName())) {
             taskName = distribution.getName() + "DistTar";
         }
-        configureArchiveTask(project, taskName, distribution, Tar.class);
+        configureArchiveTask(project, taskName, distribution, DistributionTar.class);
     }
 
-    private <T extends AbstractArchiveTask> void configureArchiveTask(Project project, String taskName, final Distribution distribution, Class<T> type) {
+    void addArchivesTask(Project project, Distribution distribution) {
+        String taskName = TASK_DIST_ARCHIVES_NAME;
+        if (!MAIN_DISTRIBUTION_NAME.equals(distribution.getName())) {
+            taskName = distribution.getName() + "DistArchives";
+        }
+        AbstractArchiveTask archiveTask = configureArchiveTask(project, taskName, distribution, DistributionArchives.class);
+        archiveTask.setDescription("Bundles the project as zip and tar distributions, reading the contents once.");
+    }
+
+    void addTgzTask(Project project, Distribution distribution) {
+        String taskName = TASK_DIST_TGZ_NAME;
+        if (!MAIN_DISTRIBUTION_NAME.equals(distribution.getName())) {
+            taskName = distribution.getName() + "DistTgz";
+        }
+        AbstractArchiveTask archiveTask = configureArchiveTask(project, taskName, distribution, CompressedTar.class);
+        archiveTask.setDescription("Bundles the project as a gzip compressed tar distribution, compressing in parallel.");
+    }
+
+    private <T extends AbstractArchiveTask> AbstractArchiveTask configureArchiveTask(Project project,
+                                                                                     String taskName,
+                                                                                     final Distribution distribution,
+                                                                                     Class<T> type) {
         AbstractArchiveTask archiveTask = project.getTasks().create(taskName, type);
         archiveTask.setDescription("Bundles the project as a distribution.");
         archiveTask.setGroup(DISTRIBUTION_GROUP);
@@ -115,6 +138,7 @@ public class Fabric3DistributionPlugin implements Plugin<Project> {
             }
         });
         archiveTask.into("").with((distribution.getContents()));
+        return archiveTask;
     }
 
 }
@@ -0,0 +1,186 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.distribution.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gzip stream, compressing blocks of the input on a pool of threads.
+ *
+ * Each block is compressed independently using the end of the previous block as the dictionary, which keeps the compression ratio close to a single
+ * deflate stream. Blocks are flushed to a byte boundary and concatenated in order into a single gzip member, so the result can be read by any gzip
+ * decompressor. Block boundaries only depend on the block size, so the output is identical for any number of threads. The header does not record a
+ * modification time.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private OutputStream out;
+    private int level;
+    private int maxPending;
+    private ExecutorService executor;
+    private Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private CRC32 crc = new CRC32();
+    private long size;
+    private byte[] block;
+    private int count;
+    private byte[] previous;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param out       the stream to write compressed data to
+     * @param level     the compression level from 0 to 9, or -1 for the default level
+     * @param blockSize the size of the blocks compressed in parallel, which must be at least 32K
+     * @param threads   the number of compression threads
+     * @throws IOException if there is an error writing the header
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize, int threads) throws IOException {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + ": " + blockSize);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.out = out;
+        this.level = level;
+        this.block = new byte[blockSize];
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads);
+        out.write(HEADER);
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        crc.update(bytes, offset, length);
+        size += length;
+        while (length > 0) {
+            int n = Math.min(length, block.length - count);
+            System.arraycopy(bytes, offset, block, count, n);
+            count += n;
+            offset += n;
+            length -= n;
+            if (count == block.length) {
+                submit(false);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) size); // size modulo 2^32
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(final boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = count;
+        final byte[] dictionary = previous;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return compress(data, length, dictionary, last);
+            }
+        }));
+        previous = data;
+        block = new byte[data.length];
+        count = 0;
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    private byte[] compress(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // a sync flush ends the block on a byte boundary so the next block can be appended
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.packager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+
+/**
+ * Writes the contents of a WAR to an exploded directory, replacing only files that have changed since the previous sync.
+ *
+ * Files are compared and replaced with {@link FileSync}, so unchanged files are left in place and a container scanning the directory does not observe
+ * partially written archives. Files in the directory that are no longer part of the WAR are removed, and directories are removed with a
+ * {@link DirectoryReaper}.
+ */
+public class ExplodedWarSync implements CopyAction {
+    private File directory;
+    private DirectoryReaper reaper;
+
+    private long written;
+    private int changed;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the exploded WAR directory
+     * @param reaper    the reaper used to remove directories
+     */
+    public ExplodedWarSync(File directory, DirectoryReaper reaper) {
+        this.directory = directory;
+        this.reaper = reaper;
+    }
+
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        written = 0;
+        changed = 0;
+        directory.mkdirs();
+        final Set<File> contents = new HashSet<>();
+        contents.add(directory);
+        stream.process(new CopyActionProcessingStreamAction() {
+            public void processFile(FileCopyDetailsInternal details) {
+                File target = new File(directory, details.getRelativePath().getPathString());
+                File parent = target;
+                while (parent != null && contents.add(parent)) {
+                    parent = parent.getParentFile();
+                }
+                try {
+                    if (details.isDirectory()) {
+                        target.mkdirs();
+                    } else {
+                        sync(details, target);
+                    }
+                } catch (IOException e) {
+                    throw new GradleException("Unable to write " + target + ": " + e.getMessage(), e);
+                }
+            }
+        });
+        try {
+            removeStale(directory, contents);
+        } catch (IOException e) {
+            throw new GradleException(e.getMessage(), e);
+        }
+        final boolean didWork = changed > 0;
+        return new WorkResult() {
+            public boolean getDidWork() {
+                return didWork;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes written by the last sync.
+     *
+     * @return the number of bytes written
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Returns the number of files written or removed by the last sync.
+     *
+     * @return the number of files changed
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    private void sync(final FileCopyDetailsInternal details, File target) throws IOException {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        FileSync.Source source = new FileSync.Source() {
+            public long getSize() {
+                return details.getSize();
+            }
+
+            public long getLastModified() {
+                return details.getLastModified();
+            }
+
+            public long getCrc() {
+                return -1;
+            }
+
+            public InputStream open() {
+                return details.open();
+            }
+        };
+        if (FileSync.isUnchanged(target, source)) {
+            registry.counter(MetricNames.FILES_UNCHANGED).increment();
+            return;
+        }
+        if (target.isDirectory()) {
+            reaper.discard(target);
+        }
+        long bytes = FileSync.replace(target, source);
+        written += bytes;
+        changed++;
+        registry.counter(MetricNames.FILES_SYNCED).increment();
+        registry.counter(MetricNames.BYTES_COPIED).add(bytes);
+    }
+
+    private void removeStale(File dir, Set<File> contents) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list contents of " + dir);
+        }
+        for (File file : files) {
+            if (!contents.contains(file)) {
+                if (file.isDirectory()) {
+                    reaper.discard(file);
+                } else {
+                    FileHelper.forceDelete(file);
+                }
+                changed++;
+                MetricsRegistry.getInstance().counter(MetricNames.FILES_REMOVED).increment();
+            } else if (file.isDirectory()) {
+                removeStale(file, contents);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.packager.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * The extension jars installed by the packager: the jars contained in the <code>extensions</code> directory of each profile followed by the resolved
+ * extension jars. A later jar replaces an earlier one with the same name, so an extension replaces a jar of the same name in a profile.
+ */
+public class ExtensionSet {
+    private static final String EXTENSIONS_PREFIX = "extensions/";
+
+    // the earliest time a zip entry can record, used for sources without a modification time
+    private static final long UNKNOWN_TIME = new GregorianCalendar(1980, Calendar.JANUARY, 1).getTimeInMillis();
+
+    private Collection<File> profiles;
+    private Collection<File> extensions;
+    private Map<String, File> sources;
+
+    /**
+     * Constructor.
+     *
+     * @param profiles   the resolved profiles
+     * @param extensions the resolved extensions
+     */
+    public ExtensionSet(Collection<File> profiles, Collection<File> extensions) {
+        this.profiles = profiles;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Returns the names of the extension jars in name order mapped to the profile or extension file each jar is read from.
+     *
+     * @return the extension jar names and their sources
+     * @throws IOException if there is an error reading a profile
+     */
+    public Map<String, File> getSources() throws IOException {
+        if (sources == null) {
+            Map<String, File> calculated = new TreeMap<>();
+            for (File profile : profiles) {
+                try (ZipFile zipFile = new ZipFile(profile)) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(EXTENSIONS_PREFIX) && name.endsWith(".jar") && name.indexOf('/', EXTENSIONS_PREFIX.length()) < 0) {
+                            calculated.put(name.substring(EXTENSIONS_PREFIX.length()), profile);
+                        }
+                    }
+                }
+            }
+            for (File extension : extensions) {
+                calculated.put(extension.getName(), extension);
+            }
+            sources = calculated;
+        }
+        return sources;
+    }
+
+    /**
+     * Visits the extension jars in name order.
+     *
+     * @param visitor the visitor
+     * @throws IOException if there is an error reading a profile or extension
+     */
+    public void visit(Visitor visitor) throws IOException {
+        Map<File, ZipFile> zipFiles = new HashMap<>();
+        try {
+            for (Map.Entry<String, File> source : getSources().entrySet()) {
+                String name = source.getKey();
+                File file = source.getValue();
+                if (extensions.contains(file) && file.getName().equals(name)) {
+                    try (InputStream stream = new FileInputStream(file)) {
+                        visitor.visit(name, file.lastModified(), stream);
+                    }
+                } else {
+                    ZipFile zipFile = zipFiles.get(file);
+                    if (zipFile == null) {
+                        zipFile = new ZipFile(file);
+                        zipFiles.put(file, zipFile);
+                    }
+                    ZipEntry entry = zipFile.getEntry(EXTENSIONS_PREFIX + name);
+                    try (InputStream stream = zipFile.getInputStream(entry)) {
+                        visitor.visit(name, entry.getTime(), stream);
+                    }
+                }
+            }
+        } finally {
+            for (ZipFile zipFile : zipFiles.values()) {
+                zipFile.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the extension jars as entries of an archive. Entries are read from the profiles in place so the profiles are not extracted to disk. Each entry
+     * is given the modification time of its source, or a fixed time if it is unknown, so the archive is byte-identical when rebuilt from the same sources.
+     *
+     * @param archive the archive
+     * @return the number of bytes copied into the archive
+     * @throws IOException if there is an error reading a profile or extension or writing the archive
+     */
+    public long writeArchive(File archive) throws IOException {
+        final long[] bytes = new long[1];
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(archive));
+             final JarOutputStream jarStream = new JarOutputStream(os)) {
+
+            visit(new Visitor() {
+                public void visit(String name, long lastModified, InputStream stream) throws IOException {
+                    JarEntry entry = new JarEntry(name);
+                    entry.setTime(lastModified > 0 ? lastModified : UNKNOWN_TIME);
+                    jarStream.putNextEntry(entry);
+                    bytes[0] += FileHelper.copy(stream, jarStream);
+                    MetricsRegistry.getInstance().counter(MetricNames.ZIP_ENTRIES_WRITTEN).increment();
+                }
+            });
+            jarStream.flush();
+        }
+        MetricsRegistry.getInstance().counter(MetricNames.BYTES_COPIED).add(bytes[0]);
+        return bytes[0];
+    }
+
+    /**
+     * Receives the contents of extension jars.
+     */
+    public interface Visitor {
+
+        void visit(String name, long lastModified, InputStream stream) throws IOException;
+
+    }
+
+}
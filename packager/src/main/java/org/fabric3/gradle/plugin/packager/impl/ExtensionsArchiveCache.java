@@ -0,0 +1,153 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.packager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * A cache of built <code>f3.extensions.jar</code> archives keyed by the content of the extensions and profiles they were built from.
+ *
+ * The cache is kept in the root project so it is shared by all projects in the build and reused across builds. Each entry is a directory named by its key
+ * containing the archive, which allows the cached file to be added to a WAR directly. Entries are published with an atomic rename so projects packaging
+ * the same extension set in parallel do not observe partially written archives. The least recently used entries beyond {@link #MAX_ENTRIES} are removed.
+ */
+public class ExtensionsArchiveCache {
+    public static final String CACHE_DIRECTORY = ".gradle" + File.separator + "fabric3-cache" + File.separator + "extensions";
+    public static final int MAX_ENTRIES = 16;
+
+    // changes to how the archive is built must change the version so that existing entries are not reused
+    private static final String FORMAT_VERSION = "4";
+
+    private File directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the cache directory
+     */
+    public ExtensionsArchiveCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the key for the archive built from a set of extension jars. The key covers the name of each jar and the checksum of the profile or extension
+     * it is read from, so renamed jars and a different jar winning when profiles or extensions are reordered produce a different key.
+     *
+     * @param sources the extension jar names mapped to the checksum of the file each jar is read from
+     * @return the key
+     */
+    public static String getKey(Map<String, String> sources) {
+        Map<String, String> sorted = new TreeMap<>(sources);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                digest.update((byte) '\n');
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ' ');
+                digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            return FileHelper.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the cached archive for the key and marks it as recently used.
+     *
+     * @param key the key
+     * @return the archive or null if it is not cached
+     */
+    public File get(String key) {
+        File entry = new File(directory, key);
+        File archive = new File(entry, Package.F3_EXTENSIONS_JAR);
+        if (!archive.isFile()) {
+            return null;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return archive;
+    }
+
+    /**
+     * Moves a built archive into the cache. If another build has cached an archive for the same key in the meantime, that archive is kept.
+     *
+     * @param key     the key
+     * @param archive the built archive
+     * @return the cached archive
+     * @throws IOException if there is an error moving the archive into the cache
+     */
+    public File put(String key, File archive) throws IOException {
+        directory.mkdirs();
+        File entry = new File(directory, key);
+        File temporary = new File(directory, key + ".tmp" + System.nanoTime());
+        temporary.mkdirs();
+        File cached = new File(entry, Package.F3_EXTENSIONS_JAR);
+        try {
+            Files.move(archive.toPath(), new File(temporary, Package.F3_EXTENSIONS_JAR).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!cached.isFile()) {
+                throw e;
+            }
+            // cached concurrently by another project
+            entry.setLastModified(System.currentTimeMillis());
+        } finally {
+            if (temporary.exists()) {
+                FileHelper.forceDelete(temporary);
+            }
+        }
+        prune(entry);
+        return cached;
+    }
+
+    /**
+     * Removes the least recently used entries beyond {@link #MAX_ENTRIES}, except for the entry being returned to the caller.
+     */
+    private void prune(File current) throws IOException {
+        File[] entries = directory.listFiles();
+        if (entries == null || entries.length <= MAX_ENTRIES) {
+            return;
+        }
+        List<File> list = new ArrayList<>(Arrays.asList(entries));
+        Collections.sort(list, new Comparator<File>() {
+            public int compare(File first, File second) {
+                return Long.compare(second.lastModified(), first.lastModified());
+            }
+        });
+        for (File entry : list.subList(MAX_ENTRIES, list.size())) {
+            if (entry.isDirectory() && !entry.getName().contains(".tmp") && !entry.equals(current)) {
+                FileHelper.forceDelete(entry);
+            }
+        }
+    }
+}
@@ -17,9 +17,20 @@
 package org.fabric3.gradle.plugin.packager.impl;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.fabric3.gradle.plugin.core.Constants;
+import org.fabric3.gradle.plugin.core.analysis.ClassAnalysis;
+import org.fabric3.gradle.plugin.core.report.MetricsReporter;
+import org.fabric3.gradle.plugin.core.resolver.Lock;
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
 import org.gradle.api.Action;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -48,6 +59,7 @@ public class Fabric3PackagerPlugin implements Plugin<Project> {
     @Inject
     public void apply(final Project project) {
         disableJar(project);
+        MetricsReporter.install(project);
 
         final PackagerPluginConvention convention = new PackagerPluginConvention(project);
         project.getConvention().add(FABRIC3_PACKAGER_CONVENTION, convention);
@@ -57,6 +69,13 @@ public class Fabric3PackagerPlugin implements Plugin<Project> {
         War zip = project.getTasks().create("fabric3Packager", Package.class);
         zip.setDescription("Packages a Fabric3 node runtime image.");
         zip.setGroup(BasePlugin.BUILD_GROUP);
+        // the archive is not written in exploded mode, so the exploded directory is the output that is checked when the task is up to date
+        zip.getOutputs().files(new Callable<List<File>>() {
+            public List<File> call() throws Exception {
+                String explodedDirectory = convention.getExplodedDirectory();
+                return explodedDirectory == null ? Collections.<File>emptyList() : Collections.singletonList(project.file(explodedDirectory));
+            }
+        });
 
         Configuration runtimeConfiguration = project.getConfigurations().getByName("runtime");
         ArchivePublishArtifact artifact = new ArchivePublishArtifact(zip);
@@ -92,6 +111,9 @@ public class Fabric3PackagerPlugin implements Plugin<Project> {
         });
 
         createConfiguration(project.getConfigurations());
+
+        addLockTask(project, convention);
+        addAnalysisTask(project, convention, zip);
     }
 
     public void createConfiguration(ConfigurationContainer container) {
@@ -107,6 +129,35 @@ public class Fabric3PackagerPlugin implements Plugin<Project> {
 
     }
 
+    private void addLockTask(Project project, final PackagerPluginConvention convention) {
+        Lock lock = project.getTasks().create("fabric3Lock", Lock.class);
+        lock.setDescription("Resolves the Fabric3 node runtime artifacts and records their exact versions in " + ResolutionLock.LOCK_FILE + ".");
+        lock.setGroup(BasePlugin.BUILD_GROUP);
+        lock.setArtifacts(new Callable<Collection<Artifact>>() {
+            public Collection<Artifact> call() throws Exception {
+                List<Artifact> artifacts = new ArrayList<>();
+                artifacts.addAll(convention.getProfiles());
+                artifacts.addAll(convention.getExtensions());
+                artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, "fabric3-node", "jar", Constants.FABRIC3_VERSION));
+                artifacts.add(new DefaultArtifact(Constants.FABRIC3_GROUP, "fabric3-node-extensions", "jar", Constants.FABRIC3_VERSION));
+                return artifacts;
+            }
+        });
+    }
+
+    private void addAnalysisTask(final Project project, final PackagerPluginConvention convention, final War zip) {
+        ClassAnalysis analysis = project.getTasks().create("fabric3AnalyzeClasses", ClassAnalysis.class);
+        analysis.setDescription("Reports duplicate classes and split packages in the Fabric3 node runtime WAR.");
+        analysis.setGroup(BasePlugin.BUILD_GROUP);
+        analysis.dependsOn(zip);
+        analysis.setRoots(new Callable<Collection<File>>() {
+            public Collection<File> call() throws Exception {
+                String explodedDirectory = convention.getExplodedDirectory();
+                return Collections.singletonList(explodedDirectory == null ? zip.getArchivePath() : project.file(explodedDirectory));
+            }
+        });
+    }
+
     private void addDefaultExtensions(PackagerPluginConvention convention) {
         convention.extension(Constants.FABRIC3_GROUP + ":" + "fabric3-databinding-json" + ":" + Constants.FABRIC3_VERSION);
     }
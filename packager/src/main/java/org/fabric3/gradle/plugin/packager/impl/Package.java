@@ -19,13 +19,14 @@ package org.fabric3.gradle.plugin.packager.impl;
 import javax.inject.Inject;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import groovy.lang.MetaClass;
 import org.codehaus.groovy.runtime.InvokerHelper;
@@ -33,16 +34,25 @@ import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.ArtifactRequest;
-import org.eclipse.aether.resolution.ArtifactResolutionException;
-import org.eclipse.aether.resolution.ArtifactResult;
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.ArchiveEntryCounter;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.report.StopWatchFactory;
 import org.fabric3.gradle.plugin.core.resolver.AetherBootstrap;
+import org.fabric3.gradle.plugin.core.resolver.ArtifactResolver;
+import org.fabric3.gradle.plugin.core.resolver.ResolutionLock;
+import org.fabric3.gradle.plugin.core.stopwatch.Span;
+import org.fabric3.gradle.plugin.core.stopwatch.StopWatch;
+import org.fabric3.gradle.plugin.core.util.DirectoryReaper;
 import org.fabric3.gradle.plugin.core.util.FileHelper;
 import org.fabric3.gradle.plugin.core.util.ProgressLoggerCompat;
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.internal.file.copy.CopyAction;
 import org.gradle.api.tasks.bundling.War;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.logging.ProgressLogger;
 import org.gradle.logging.ProgressLoggerFactory;
@@ -56,112 +66,243 @@ import static org.fabric3.gradle.plugin.core.Constants.FABRIC3_VERSION;
 public class Package extends War {
     public static final String F3_EXTENSIONS_JAR = "f3.extensions.jar";
 
+    public static final String FLAT_EXTENSIONS_DIRECTORY = "f3-extensions";
+    public static final String FLAT_EXTENSIONS_INDEX = "f3.extensions.index";
+
+    private StopWatch stopWatch;
     private ProgressLogger progressLogger;
 
     private File stagingDirectory;
 
-    private RepositorySystem system;
-    private DefaultRepositorySystemSession session;
-    private List<RemoteRepository> repositories;
+    private ArtifactResolver resolver;
     private PackagerPluginConvention convention;
     private MetaClass metaClass;
-    private File extensionsDirectory;
+    private ExplodedWarSync sync;
 
     @Inject
     public Package(ProgressLoggerFactory progressLoggerFactory) {
         this.progressLogger = progressLoggerFactory.newOperation("fabric3Packager");
+        this.stopWatch = StopWatchFactory.create(this);
+        eachFile(new ArchiveEntryCounter());
     }
 
+    @SuppressWarnings("try") // spans are closed to mark the end of each phase
     protected void copy() {
-        init();
-        try {
+        stopWatch.start();
+        try (Span root = stopWatch.span(getName())) {
+            init();
             setExtension("war");
             File buildDirectory = getProject().getBuildDir();
             stagingDirectory = new File(buildDirectory, "f3");
             stagingDirectory.mkdirs();
 
-            extensionsDirectory = new File(stagingDirectory, "extensions");
-            extensionsDirectory.mkdir();
+            Map<Artifact, File> profiles;
+            Map<Artifact, File> extensions;
+            try (Span span = stopWatch.span("resolveExtensions")) {
+                profiles = resolve(convention.getProfiles());
+                extensions = resolve(convention.getExtensions());
+            }
+            stopWatch.split("Fabric3 Packager resolve profiles and extensions");
+            ExtensionSet extensionSet = new ExtensionSet(profiles.values(), extensions.values());
 
-            installProfiles();
-            installExtensions();
+            String layout = convention.getExtensionsLayout();
+            File extensionsJar = null;
+            if (PackagerPluginConvention.LAYOUT_FLAT.equals(layout)) {
+                File flatDirectory = new File(stagingDirectory, FLAT_EXTENSIONS_DIRECTORY);
+                try (Span span = stopWatch.span("installFlatExtensions")) {
+                    span.add(Span.BYTES, installFlatExtensions(extensionSet, flatDirectory));
+                }
+                stopWatch.split("Fabric3 Packager install extensions");
+                getWebInf().into(FLAT_EXTENSIONS_DIRECTORY).from(flatDirectory);
+            } else if (PackagerPluginConvention.LAYOUT_NESTED.equals(layout)) {
+                ExtensionsArchiveCache cache = new ExtensionsArchiveCache(new File(getProject().getRootDir(), ExtensionsArchiveCache.CACHE_DIRECTORY));
+                String key = getCacheKey(extensionSet);
+                extensionsJar = cache.get(key);
+                MetricsRegistry registry = MetricsRegistry.getInstance();
+                if (extensionsJar != null) {
+                    registry.counter(MetricNames.EXTENSIONS_CACHE_HITS).increment();
+                } else {
+                    registry.counter(MetricNames.EXTENSIONS_CACHE_MISSES).increment();
+                    try (Span span = stopWatch.span("createExtensionsArchive")) {
+                        extensionsJar = cache.put(key, createExtensionsArchive(extensionSet, stagingDirectory));
+                        span.add(Span.BYTES, extensionsJar.length());
+                    }
+                    stopWatch.split("Fabric3 Packager create extensions archive");
+                }
+            } else {
+                throw new GradleException("Unknown extensions layout: " + layout);
+            }
 
-            File extensionsJar = createExtensionsArchive(extensionsDirectory, stagingDirectory);
+            File nodeJar;
+            File nodeExtensionsJar;
+            try (Span span = stopWatch.span("resolveNode")) {
+                nodeJar = resolve(new DefaultArtifact(FABRIC3_GROUP, "fabric3-node", "jar", FABRIC3_VERSION));
+                nodeExtensionsJar = resolve(new DefaultArtifact(FABRIC3_GROUP, "fabric3-node-extensions", "jar", FABRIC3_VERSION));
+            }
+            stopWatch.split("Fabric3 Packager resolve node runtime");
 
-            File nodeJar = resolve(new DefaultArtifact(FABRIC3_GROUP, "fabric3-node", "jar", FABRIC3_VERSION));
-            File nodeExtensionsJar = resolve(new DefaultArtifact(FABRIC3_GROUP, "fabric3-node-extensions", "jar", FABRIC3_VERSION));
+            getWebInf().into("lib").from(nodeJar, nodeExtensionsJar);
+            if (extensionsJar != null) {
+                getWebInf().into("lib").from(extensionsJar);
+            }
 
-            getWebInf().into("lib").from(extensionsJar, nodeJar, nodeExtensionsJar);
+            resolver.getLock().save();
 
             progressLogger.completed("COMPLETED");
+
+            try (Span span = stopWatch.span("archive")) {
+                Operation operation = FlightRecorderEvents.archive(getPath());
+                super.copy();
+                File output = sync == null ? getArchivePath() : getProject().file(convention.getExplodedDirectory());
+                long bytes = sync == null ? getArchivePath().length() : sync.getWritten();
+                span.add(Span.BYTES, bytes);
+                operation.commit(output, bytes);
+            }
         } catch (IOException e) {
             throw new GradleException(e.getMessage(), e);
+        } finally {
+            stopWatch.stop();
+            stopWatch.flush();
+        }
+    }
+
+    /**
+     * Returns the action that writes the WAR contents, which syncs an exploded directory if one is configured. With the flat extensions layout, the
+     * extension jars are stored without compression.
+     *
+     * @return the copy action
+     */
+    protected CopyAction createCopyAction() {
+        if (sync != null) {
+            return sync;
+        }
+        if (convention != null && PackagerPluginConvention.LAYOUT_FLAT.equals(convention.getExtensionsLayout())) {
+            boolean compressed = getEntryCompression() != ZipEntryCompression.STORED;
+            return new WarWriter(getArchivePath(), compressed, "WEB-INF/" + FLAT_EXTENSIONS_DIRECTORY);
         }
-        super.copy();
+        return super.createCopyAction();
     }
 
-    private void init() {
+    private void init() throws IOException {
         ProgressLoggerCompat.setDescription(progressLogger, "Fabric3 packager plugin");
         ProgressLoggerCompat.setLoggingHeader(progressLogger, "Fabric3 packager plugin");
         progressLogger.started("STARTING");
 
         Project project = getProject();
+        convention = (PackagerPluginConvention) project.getConvention().getByName(PackagerPluginConvention.FABRIC3_PACKAGER_CONVENTION);
+
         boolean offline = project.getGradle().getStartParameter().isOffline();
-        system = AetherBootstrap.getRepositorySystem();
+        RepositorySystem system = AetherBootstrap.getRepositorySystem();
         ServiceRegistry registry = getServices();
-        session = AetherBootstrap.getRepositorySystemSession(system, registry, offline);
-        repositories = AetherBootstrap.getRepositories(registry);
+        String updatePolicy = AetherBootstrap.getUpdatePolicy(convention.getSnapshotFreshness());
+        DefaultRepositorySystemSession session = AetherBootstrap.getRepositorySystemSession(system, registry, offline, updatePolicy);
+        ResolutionLock lock = ResolutionLock.load(new File(project.getProjectDir(), ResolutionLock.LOCK_FILE), convention.isUpdateLock());
+        resolver = new ArtifactResolver(system, session, AetherBootstrap.getRepositories(registry), lock, convention.getSnapshotFreshness(),
+                                        new File(getProject().getRootDir(), ArtifactResolver.VERIFIED_CACHE));
+
+        String explodedDirectory = convention.getExplodedDirectory();
+        sync = null;
+        if (explodedDirectory != null) {
+            DirectoryReaper reaper = DirectoryReaper.forBuildDir(project.getBuildDir());
+            reaper.resume();
+            sync = new ExplodedWarSync(project.file(explodedDirectory), reaper);
+        }
 
         File buildDir = project.getBuildDir();
         File imageDir = new File(buildDir, "image");
         imageDir.mkdirs();
-        convention = (PackagerPluginConvention) project.getConvention().getByName(PackagerPluginConvention.FABRIC3_PACKAGER_CONVENTION);
     }
 
-    private File createExtensionsArchive(File extensionsDirectory, File libDirectory) throws IOException {
+    /**
+     * Writes the extensions archive directly from the extension set.
+     *
+     * @param extensionSet the extension set
+     * @param libDirectory the directory to write the archive to
+     * @return the archive
+     * @throws IOException if there is an error reading a profile or extension or writing the archive
+     */
+    private File createExtensionsArchive(ExtensionSet extensionSet, File libDirectory) throws IOException {
         File archive = new File(libDirectory, F3_EXTENSIONS_JAR);
-        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(archive));
-             JarOutputStream jarStream = new JarOutputStream(os)) {
+        Operation operation = FlightRecorderEvents.archive(getPath());
+        extensionSet.writeArchive(archive);
+        operation.commit(archive, archive.length());
+        return archive;
+    }
 
-            for (File file : extensionsDirectory.listFiles()) {
-                if (!file.getName().endsWith(".jar")) {
-                    // skip if not a jar or the library is included in the web app classpath (WEB-INF/lib)
-                    continue;
+    /**
+     * Writes the extension jars from the resolved profiles and extensions to a directory along with the {@link #FLAT_EXTENSIONS_INDEX} listing them in
+     * load order. The modification time of each jar is preserved so that unchanged jars are recognized when the WAR is synced to an exploded directory.
+     *
+     * @param extensionSet the extension set
+     * @param directory    the directory to write the jars to
+     * @return the number of bytes written
+     * @throws IOException if there is an error reading a profile or extension or writing the jars
+     */
+    private long installFlatExtensions(ExtensionSet extensionSet, final File directory) throws IOException {
+        // remove extensions staged by previous builds as they may no longer be part of the extension set
+        DirectoryReaper reaper = DirectoryReaper.forBuildDir(getProject().getBuildDir());
+        reaper.resume();
+        reaper.clean(directory);
+        final StringBuilder index = new StringBuilder();
+        final long[] bytes = new long[1];
+        extensionSet.visit(new ExtensionSet.Visitor() {
+            public void visit(String name, long lastModified, InputStream stream) throws IOException {
+                File target = new File(directory, name);
+                try (OutputStream os = new BufferedOutputStream(new FileOutputStream(target))) {
+                    bytes[0] += FileHelper.copy(stream, os);
+                }
+                if (lastModified > 0) {
+                    target.setLastModified(lastModified);
                 }
-                JarEntry entry = new JarEntry(file.getName());
-                jarStream.putNextEntry(entry);
-                FileHelper.copy(new FileInputStream(file), jarStream);
+                index.append(name).append('\n');
             }
-            jarStream.flush();
+        });
+        MetricsRegistry.getInstance().counter(MetricNames.BYTES_COPIED).add(bytes[0]);
+        try (OutputStream os = new FileOutputStream(new File(directory, FLAT_EXTENSIONS_INDEX))) {
+            os.write(index.toString().getBytes(StandardCharsets.UTF_8));
         }
-        return archive;
+        return bytes[0];
     }
 
-    private void installExtensions() throws IOException {
-        for (Artifact artifact : convention.getExtensions()) {
-            progressLogger.progress("Installing " + artifact.toString());
-            File source = resolve(artifact);
-            FileHelper.copy(source, new File(extensionsDirectory, source.getName()));
+    /**
+     * Returns the key of the extensions archive built from an extension set. The checksum verified by the resolver against the resolution lock is used
+     * if present, which avoids reading the file.
+     *
+     * @param extensionSet the extension set
+     * @return the key
+     * @throws IOException if there is an error reading a profile or calculating a checksum
+     */
+    private String getCacheKey(ExtensionSet extensionSet) throws IOException {
+        Map<File, String> checksums = new HashMap<>();
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Map.Entry<String, File> entry : extensionSet.getSources().entrySet()) {
+            File file = entry.getValue();
+            String checksum = checksums.get(file);
+            if (checksum == null) {
+                checksum = resolver.getChecksum(file);
+                if (checksum == null) {
+                    checksum = FileHelper.checksum(file, ResolutionLock.CHECKSUM_ALGORITHM);
+                }
+                checksums.put(file, checksum);
+            }
+            sources.put(entry.getKey(), checksum);
         }
+        return ExtensionsArchiveCache.getKey(sources);
     }
 
-    private void installProfiles() throws IOException {
-        for (Artifact profile : convention.getProfiles()) {
-            progressLogger.progress("Installing " + profile.toString());
-            FileHelper.extract(resolve(profile), stagingDirectory);
+    private Map<Artifact, File> resolve(Iterable<Artifact> artifacts) {
+        Map<Artifact, File> resolved = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            resolved.put(artifact, resolve(artifact));
         }
+        return resolved;
     }
 
     private File resolve(Artifact artifact) {
         progressLogger.progress("Resolving " + artifact.toString());
-        ArtifactRequest request = new ArtifactRequest();
-        request.setRepositories(repositories);
-        request.setArtifact(artifact);
-        try {
-            ArtifactResult resolvedRuntime = system.resolveArtifact(session, request);
-            return resolvedRuntime.getArtifact().getFile();
-        } catch (ArtifactResolutionException e) {
-            throw new GradleException(e.getMessage(), e);
+        try (Span span = stopWatch.span("resolve")) {
+            span.add(Span.ARTIFACTS, 1);
+            return resolver.resolve(artifact);
         }
     }
 
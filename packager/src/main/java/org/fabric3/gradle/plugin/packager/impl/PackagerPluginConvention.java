@@ -35,6 +35,8 @@ import static org.fabric3.gradle.plugin.core.util.ArtifactConverter.convert;
  */
 public class PackagerPluginConvention extends WarPluginConvention{
     public static final String FABRIC3_PACKAGER_CONVENTION = "fabric3Packager";
+    public static final String LAYOUT_NESTED = "nested";
+    public static final String LAYOUT_FLAT = "flat";
 
     private String systemConfig;
 
@@ -50,6 +52,28 @@ public class PackagerPluginConvention extends WarPluginConvention{
      */
     private String contributionTarget = "vm";
 
+    /**
+     * Minutes a locked or previously resolved snapshot is used before the remote repositories are checked for a newer version.
+     */
+    private long snapshotFreshness = 24 * 60;
+
+    /**
+     * True if artifacts resolved without a lock entry and refreshed snapshots should be recorded in the lock file. By default, only the fabric3Lock task
+     * writes the lock file.
+     */
+    private boolean updateLock;
+
+    /**
+     * Directory the WAR is written to in exploded form instead of being archived. Relative paths are resolved against the project directory.
+     */
+    private String explodedDirectory;
+
+    /**
+     * How extensions are packaged in the WAR. The nested layout packages extension jars in <code>WEB-INF/lib/f3.extensions.jar</code>. The flat layout
+     * places them in <code>WEB-INF/f3-extensions</code> with an index so they can be loaded without unpacking an enclosing archive.
+     */
+    private String extensionsLayout = LAYOUT_NESTED;
+
     private Set<Artifact> extensions = new HashSet<>();
     private Set<Artifact> profiles = new HashSet<>();
     private Set<Artifact> exclusions = new HashSet<>();
@@ -87,6 +111,38 @@ public class PackagerPluginConvention extends WarPluginConvention{
         this.contributionTarget = contributionTarget;
     }
 
+    public boolean isUpdateLock() {
+        return updateLock;
+    }
+
+    public void setUpdateLock(boolean updateLock) {
+        this.updateLock = updateLock;
+    }
+
+    public long getSnapshotFreshness() {
+        return snapshotFreshness;
+    }
+
+    public void setSnapshotFreshness(long snapshotFreshness) {
+        this.snapshotFreshness = snapshotFreshness;
+    }
+
+    public String getExplodedDirectory() {
+        return explodedDirectory;
+    }
+
+    public void setExplodedDirectory(String explodedDirectory) {
+        this.explodedDirectory = explodedDirectory;
+    }
+
+    public String getExtensionsLayout() {
+        return extensionsLayout;
+    }
+
+    public void setExtensionsLayout(String extensionsLayout) {
+        this.extensionsLayout = extensionsLayout;
+    }
+
     public void extension(Map<String, String> extension) {
         extensions.add(convert(extension, "jar"));
     }
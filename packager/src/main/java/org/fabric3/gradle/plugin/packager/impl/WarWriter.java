@@ -0,0 +1,97 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.packager.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.tools.zip.UnixStat;
+import org.apache.tools.zip.Zip64Mode;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+
+/**
+ * Writes a WAR in which the files under a directory are stored without compression, while the other files are written with the compression configured for
+ * the task. Used for the flat extensions layout, where the extension jars are already compressed and the runtime opens them in place.
+ *
+ * The Gradle <code>Zip</code> task applies a single compression method to all entries. Entries are otherwise written with the same paths, modification
+ * times and Unix modes. The archive is written to a file, so the sizes and CRC of stored entries are filled in after their contents are written.
+ */
+public class WarWriter implements CopyAction {
+    private File archive;
+    private boolean compressed;
+    private String storedDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param archive         the WAR
+     * @param compressed      true if entries outside the stored directory are deflated
+     * @param storedDirectory the path of the directory whose files are stored without compression
+     */
+    public WarWriter(File archive, boolean compressed, String storedDirectory) {
+        this.archive = archive;
+        this.compressed = compressed;
+        this.storedDirectory = storedDirectory + "/";
+    }
+
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        archive.getParentFile().mkdirs();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.setUseZip64(Zip64Mode.Never);
+            zip.setMethod(compressed ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
+            stream.process(new CopyActionProcessingStreamAction() {
+                public void processFile(FileCopyDetailsInternal details) {
+                    String path = details.getRelativePath().getPathString();
+                    try {
+                        if (details.isDirectory()) {
+                            ZipEntry entry = new ZipEntry(path + "/");
+                            entry.setTime(details.getLastModified());
+                            entry.setUnixMode(UnixStat.DIR_FLAG | details.getMode());
+                            zip.putNextEntry(entry);
+                        } else {
+                            ZipEntry entry = new ZipEntry(path);
+                            entry.setTime(details.getLastModified());
+                            entry.setUnixMode(UnixStat.FILE_FLAG | details.getMode());
+                            if (path.startsWith(storedDirectory)) {
+                                entry.setMethod(ZipEntry.STORED);
+                            }
+                            zip.putNextEntry(entry);
+                            details.copyTo(zip);
+                        }
+                        zip.closeEntry();
+                    } catch (IOException e) {
+                        throw new GradleException("Unable to write " + path + " to " + archive + ": " + e.getMessage(), e);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new GradleException("Unable to write " + archive + ": " + e.getMessage(), e);
+        }
+        return new WorkResult() {
+            public boolean getDidWork() {
+                return true;
+            }
+        };
+    }
+}
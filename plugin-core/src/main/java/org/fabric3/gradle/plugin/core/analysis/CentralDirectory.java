@@ -0,0 +1,250 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.analysis;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip archive, which allows the entries of an archive to be listed without reading their contents. Archives can be held
+ * in memory, such as nested archives, or read from a file, in which case only the end of the file and the central directory are read.
+ *
+ * Zip64 archives are not supported.
+ */
+public class CentralDirectory {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int CEN_LENGTH = 46;
+    private static final int LOC_LENGTH = 30;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    /**
+     * Returns the entries listed in the central directory of an archive.
+     *
+     * @param bytes the archive contents
+     * @return the entries
+     * @throws ZipException if the contents are not a valid zip archive
+     */
+    public static List<Entry> read(byte[] bytes) throws ZipException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = findEnd(buffer);
+        long offset = getOffset(buffer, eocd);
+        if (offset > eocd) {
+            throw new ZipException("Invalid central directory offset " + offset);
+        }
+        return parse(buffer, (int) offset, eocd, getCount(buffer, eocd));
+    }
+
+    /**
+     * Returns the entries listed in the central directory of an archive file.
+     *
+     * @param file the archive file
+     * @return the entries
+     * @throws IOException if there is an error reading the file or it is not a valid zip archive
+     */
+    public static List<Entry> read(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        byte[] tail = new byte[(int) Math.min(length, EOCD_LENGTH + MAX_COMMENT_LENGTH)];
+        file.seek(length - tail.length);
+        file.readFully(tail);
+        ByteBuffer tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = findEnd(tailBuffer);
+        long size = tailBuffer.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long offset = getOffset(tailBuffer, eocd);
+        if (offset + size > length - tail.length + eocd) {
+            throw new ZipException("Invalid central directory offset " + offset);
+        }
+        byte[] directory = new byte[(int) size];
+        file.seek(offset);
+        file.readFully(directory);
+        ByteBuffer buffer = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        return parse(buffer, 0, directory.length, getCount(tailBuffer, eocd));
+    }
+
+    private static int findEnd(ByteBuffer buffer) throws ZipException {
+        int min = Math.max(0, buffer.limit() - EOCD_LENGTH - MAX_COMMENT_LENGTH);
+        for (int i = buffer.limit() - EOCD_LENGTH; i >= min; i--) {
+            if (buffer.getInt(i) == EOCD_SIGNATURE) {
+                return i;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private static int getCount(ByteBuffer buffer, int eocd) throws ZipException {
+        int count = buffer.getShort(eocd + 10) & 0xFFFF;
+        if (count == 0xFFFF) {
+            throw new ZipException("Zip64 archives are not supported");
+        }
+        return count;
+    }
+
+    private static long getOffset(ByteBuffer buffer, int eocd) throws ZipException {
+        long offset = buffer.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (offset == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 archives are not supported");
+        }
+        return offset;
+    }
+
+    private static List<Entry> parse(ByteBuffer buffer, int pos, int limit, int count) throws ZipException {
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_LENGTH > limit || buffer.getInt(pos) != CEN_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry at offset " + pos);
+            }
+            int flags = buffer.getShort(pos + 8) & 0xFFFF;
+            int method = buffer.getShort(pos + 10) & 0xFFFF;
+            long dosTime = buffer.getInt(pos + 12) & 0xFFFFFFFFL;
+            long crc = buffer.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = buffer.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = buffer.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+            long localOffset = buffer.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (pos + CEN_LENGTH + nameLength > limit) {
+                throw new ZipException("Invalid central directory entry at offset " + pos);
+            }
+            String name = new String(buffer.array(), pos + CEN_LENGTH, nameLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, flags, method, dosTime, crc, compressedSize, size, localOffset));
+            pos += CEN_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the uncompressed contents of an entry.
+     *
+     * @param bytes the archive contents
+     * @param entry the entry
+     * @return the entry contents
+     * @throws ZipException if the entry is invalid or uses an unsupported compression method
+     */
+    public static byte[] extract(byte[] bytes, Entry entry) throws ZipException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = entry.getLocalOffset();
+        if (pos + LOC_LENGTH > bytes.length || buffer.getInt((int) pos) != LOC_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.getName());
+        }
+        int nameLength = buffer.getShort((int) pos + 26) & 0xFFFF;
+        int extraLength = buffer.getShort((int) pos + 28) & 0xFFFF;
+        long data = pos + LOC_LENGTH + nameLength + extraLength;
+        if (data + entry.getCompressedSize() > bytes.length || entry.getSize() > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid entry size for " + entry.getName());
+        }
+        int start = (int) data;
+        int length = (int) entry.getCompressedSize();
+        if (entry.getMethod() == ZipEntry.STORED) {
+            return Arrays.copyOfRange(bytes, start, start + length);
+        } else if (entry.getMethod() != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+        }
+        byte[] contents = new byte[(int) entry.getSize()];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, start, length);
+            int read = 0;
+            while (read < contents.length) {
+                int n = inflater.inflate(contents, read, contents.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated entry " + entry.getName());
+                }
+                read += n;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data for " + entry.getName() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return contents;
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    public static class Entry {
+        private String name;
+        private int flags;
+        private int method;
+        private long dosTime;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long localOffset;
+
+        public Entry(String name, int flags, int method, long dosTime, long crc, long compressedSize, long size, long localOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns the modification time in MS-DOS format, with the date in the high 16 bits.
+         *
+         * @return the modification time
+         */
+        public long getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalOffset() {
+            return localOffset;
+        }
+    }
+}
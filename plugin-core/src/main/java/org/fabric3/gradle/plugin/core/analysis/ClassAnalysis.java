@@ -0,0 +1,217 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.analysis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Reports classes that are packaged more than once and packages split across archives in the output of a Fabric3 task.
+ *
+ * Each root is either an archive or a directory, in which case the archives it contains and its <code>WEB-INF/classes</code> directories, such as those of
+ * an exploded WAR, are analyzed. Archives and class directories are scanned in parallel, including archives nested in archives. The report is written to {@link #REPORTS_DIRECTORY} and the build fails on conflicts if {@link #setFailOnConflict(boolean)} is set.
+ */
+public class ClassAnalysis extends DefaultTask {
+    public static final String REPORTS_DIRECTORY = "reports" + File.separator + "fabric3-analysis";
+
+    private static final int SAMPLES = 5;
+
+    private Callable<Collection<File>> roots;
+    private boolean failOnConflict;
+
+    /**
+     * Sets the source of the archives and directories to analyze. The source is evaluated when the task executes so that the output of the analyzed task
+     * is known.
+     *
+     * @param roots the root source
+     */
+    public void setRoots(Callable<Collection<File>> roots) {
+        this.roots = roots;
+    }
+
+    public boolean isFailOnConflict() {
+        return failOnConflict;
+    }
+
+    /**
+     * Sets whether duplicate classes or split packages fail the build.
+     *
+     * @param failOnConflict true if conflicts fail the build
+     */
+    public void setFailOnConflict(boolean failOnConflict) {
+        this.failOnConflict = failOnConflict;
+    }
+
+    @TaskAction
+    public void analyze() {
+        List<File> files = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        try {
+            for (File root : roots.call()) {
+                if (!root.exists()) {
+                    throw new GradleException("Analysis root not found: " + root);
+                }
+                collect(root, root.isDirectory() && !isClassDirectory(root) ? "" : root.getName(), files, paths);
+            }
+        } catch (GradleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GradleException("Unable to determine archives to analyze", e);
+        }
+
+        ClassIndex index = new ClassIndex();
+        for (ClassIndex.Jar jar : scan(files, paths)) {
+            index.add(jar);
+        }
+        List<ClassIndex.Duplicate> duplicates = index.getDuplicates();
+        List<ClassIndex.SplitPackage> splitPackages = index.getSplitPackages();
+
+        int duplicateCount = 0;
+        long wasted = 0;
+        for (ClassIndex.Duplicate duplicate : duplicates) {
+            duplicateCount += duplicate.getClasses().size();
+            wasted += duplicate.getWasted();
+        }
+        File report = new File(getProject().getBuildDir(), REPORTS_DIRECTORY + File.separator + getName() + ".txt");
+        try {
+            write(report, index, duplicates, splitPackages, duplicateCount, wasted);
+        } catch (IOException e) {
+            throw new GradleException("Unable to write class analysis report: " + e.getMessage(), e);
+        }
+
+        String summary = "Fabric3 class analysis: " + index.getJarCount() + " archives, " + index.getClassCount() + " classes, " + duplicateCount
+                         + " duplicate classes, " + splitPackages.size() + " split packages, " + wasted + " bytes wasted. See " + report;
+        if (duplicates.isEmpty() && splitPackages.isEmpty()) {
+            getLogger().lifecycle(summary);
+        } else if (failOnConflict) {
+            throw new GradleException(summary);
+        } else {
+            getLogger().warn(summary);
+        }
+    }
+
+    private void collect(File file, String path, List<File> files, List<String> paths) {
+        if (isClassDirectory(file)) {
+            files.add(file);
+            paths.add(path);
+        } else if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                throw new GradleException("Failed to list contents of " + file);
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                collect(child, path.isEmpty() ? child.getName() : path + "/" + child.getName(), files, paths);
+            }
+        } else if (file.getName().endsWith(".jar") || file.getName().endsWith(".war")) {
+            files.add(file);
+            paths.add(path);
+        }
+    }
+
+    private boolean isClassDirectory(File file) {
+        File parent = file.getParentFile();
+        return file.isDirectory() && "classes".equals(file.getName()) && parent != null && "WEB-INF".equals(parent.getName());
+    }
+
+    private List<ClassIndex.Jar> scan(List<File> files, List<String> paths) {
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<ClassIndex.Jar>>> futures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final String path = paths.get(i);
+                futures.add(executor.submit(new Callable<List<ClassIndex.Jar>>() {
+                    public List<ClassIndex.Jar> call() throws IOException {
+                        return ClassScanner.scan(file, path);
+                    }
+                }));
+            }
+            // collect in submission order so the report is stable
+            List<ClassIndex.Jar> jars = new ArrayList<>();
+            for (Future<List<ClassIndex.Jar>> future : futures) {
+                jars.addAll(future.get());
+            }
+            return jars;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Class analysis interrupted", e);
+        } catch (ExecutionException e) {
+            throw new GradleException("Unable to analyze archive: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void write(File file,
+                       ClassIndex index,
+                       List<ClassIndex.Duplicate> duplicates,
+                       List<ClassIndex.SplitPackage> splitPackages,
+                       int duplicateCount,
+                       long wasted) throws IOException {
+        file.getParentFile().mkdirs();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("Fabric3 class analysis for " + getProject().getPath() + "\n");
+            writer.write("Archives: " + index.getJarCount() + "\n");
+            writer.write("Classes: " + index.getClassCount() + "\n\n");
+
+            writer.write("Duplicate classes: " + duplicateCount + " (" + wasted + " bytes wasted)\n");
+            for (ClassIndex.Duplicate duplicate : duplicates) {
+                List<String> classes = duplicate.getClasses();
+                writer.write("  " + classes.size() + " classes (" + duplicate.getWasted() + " bytes wasted) in:\n");
+                for (String jar : duplicate.getJars()) {
+                    writer.write("    " + jar + "\n");
+                }
+                for (String name : classes.subList(0, Math.min(SAMPLES, classes.size()))) {
+                    writer.write("      " + name + "\n");
+                }
+                if (classes.size() > SAMPLES) {
+                    writer.write("      ... " + (classes.size() - SAMPLES) + " more\n");
+                }
+            }
+
+            writer.write("\nSplit packages: " + splitPackages.size() + "\n");
+            for (ClassIndex.SplitPackage splitPackage : splitPackages) {
+                writer.write("  " + (splitPackage.getName().isEmpty() ? "<default>" : splitPackage.getName()) + "\n");
+                for (Map.Entry<String, Integer> entry : splitPackage.getJars().entrySet()) {
+                    writer.write("    " + entry.getKey() + " (" + entry.getValue() + " classes)\n");
+                }
+            }
+        }
+    }
+
+}
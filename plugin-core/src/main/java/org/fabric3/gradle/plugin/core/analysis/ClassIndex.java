@@ -0,0 +1,261 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An index of the classes contained in a set of archives.
+ *
+ * Each archive is assigned an id and each class name maps to the ids of the archives containing it, which keeps the index small when most classes are
+ * contained in a single archive.
+ */
+public class ClassIndex {
+    private List<Jar> jars = new ArrayList<>();
+    private Map<String, int[]> locations = new HashMap<>();
+
+    /**
+     * Adds an archive to the index.
+     *
+     * @param jar the archive
+     */
+    public void add(Jar jar) {
+        int id = jars.size();
+        jars.add(jar);
+        for (String name : jar.classes) {
+            int[] ids = locations.get(name);
+            if (ids == null) {
+                locations.put(name, new int[]{id});
+            } else {
+                int[] updated = Arrays.copyOf(ids, ids.length + 1);
+                updated[ids.length] = id;
+                locations.put(name, updated);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed archives.
+     *
+     * @return the number of archives
+     */
+    public int getJarCount() {
+        return jars.size();
+    }
+
+    /**
+     * Returns the number of distinct class names.
+     *
+     * @return the number of classes
+     */
+    public int getClassCount() {
+        return locations.size();
+    }
+
+    /**
+     * Returns the classes contained in more than one archive, grouped by the archives containing them and ordered by wasted bytes.
+     *
+     * @return the duplicates
+     */
+    public List<Duplicate> getDuplicates() {
+        Map<String, Duplicate> groups = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : locations.entrySet()) {
+            int[] ids = entry.getValue();
+            if (ids.length < 2) {
+                continue;
+            }
+            String key = Arrays.toString(ids);
+            Duplicate duplicate = groups.get(key);
+            if (duplicate == null) {
+                List<String> paths = new ArrayList<>();
+                for (int id : ids) {
+                    paths.add(jars.get(id).path);
+                }
+                duplicate = new Duplicate(paths);
+                groups.put(key, duplicate);
+            }
+            // all but the largest copy of a class are wasted
+            long total = 0;
+            long max = 0;
+            for (int id : ids) {
+                long size = jars.get(id).getSize(entry.getKey());
+                total += size;
+                max = Math.max(max, size);
+            }
+            duplicate.classes.add(entry.getKey());
+            duplicate.wasted += total - max;
+        }
+        List<Duplicate> duplicates = new ArrayList<>(groups.values());
+        for (Duplicate duplicate : duplicates) {
+            Collections.sort(duplicate.classes);
+        }
+        Collections.sort(duplicates, new Comparator<Duplicate>() {
+            public int compare(Duplicate first, Duplicate second) {
+                int result = Long.compare(second.wasted, first.wasted);
+                return result != 0 ? result : first.classes.get(0).compareTo(second.classes.get(0));
+            }
+        });
+        return duplicates;
+    }
+
+    /**
+     * Returns the packages whose classes are spread across more than one archive. Packages where each archive contains the same classes are reported as
+     * duplicates rather than split packages.
+     *
+     * @return the split packages ordered by name
+     */
+    public List<SplitPackage> getSplitPackages() {
+        Map<String, Integer> classCounts = new HashMap<>();
+        Map<String, Map<Integer, Integer>> jarCounts = new TreeMap<>();
+        for (Map.Entry<String, int[]> entry : locations.entrySet()) {
+            String name = entry.getKey();
+            int pos = name.lastIndexOf('.');
+            String packageName = pos < 0 ? "" : name.substring(0, pos);
+            Integer count = classCounts.get(packageName);
+            classCounts.put(packageName, count == null ? 1 : count + 1);
+            Map<Integer, Integer> counts = jarCounts.get(packageName);
+            if (counts == null) {
+                counts = new TreeMap<>();
+                jarCounts.put(packageName, counts);
+            }
+            for (int id : entry.getValue()) {
+                Integer jarCount = counts.get(id);
+                counts.put(id, jarCount == null ? 1 : jarCount + 1);
+            }
+        }
+        List<SplitPackage> split = new ArrayList<>();
+        for (Map.Entry<String, Map<Integer, Integer>> entry : jarCounts.entrySet()) {
+            Map<Integer, Integer> counts = entry.getValue();
+            if (counts.size() < 2) {
+                continue;
+            }
+            int total = classCounts.get(entry.getKey());
+            boolean partial = false;
+            for (int count : counts.values()) {
+                partial |= count < total;
+            }
+            if (!partial) {
+                continue;
+            }
+            SplitPackage splitPackage = new SplitPackage(entry.getKey());
+            for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+                splitPackage.jars.put(jars.get(count.getKey()).path, count.getValue());
+            }
+            split.add(splitPackage);
+        }
+        return split;
+    }
+
+    /**
+     * The classes contained in an archive.
+     */
+    public static class Jar {
+        private String path;
+        private String[] classes;
+        private long[] sizes;
+
+        /**
+         * Constructor.
+         *
+         * @param path    the archive path, where nested archives are separated by <code>!/</code>
+         * @param classes the class names contained in the archive mapped to their compressed size
+         */
+        public Jar(String path, SortedMap<String, Long> classes) {
+            this.path = path;
+            this.classes = new String[classes.size()];
+            this.sizes = new long[classes.size()];
+            int i = 0;
+            for (Map.Entry<String, Long> entry : classes.entrySet()) {
+                this.classes[i] = entry.getKey();
+                this.sizes[i] = entry.getValue();
+                i++;
+            }
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getClassCount() {
+            return classes.length;
+        }
+
+        private long getSize(String name) {
+            int pos = Arrays.binarySearch(classes, name);
+            return pos < 0 ? 0 : sizes[pos];
+        }
+    }
+
+    /**
+     * Classes contained in the same set of archives.
+     */
+    public static class Duplicate {
+        private List<String> jars;
+        private List<String> classes = new ArrayList<>();
+        private long wasted;
+
+        private Duplicate(List<String> jars) {
+            this.jars = jars;
+        }
+
+        public List<String> getJars() {
+            return jars;
+        }
+
+        public List<String> getClasses() {
+            return classes;
+        }
+
+        public long getWasted() {
+            return wasted;
+        }
+    }
+
+    /**
+     * A package whose classes are contained in more than one archive.
+     */
+    public static class SplitPackage {
+        private String name;
+        private Map<String, Integer> jars = new LinkedHashMap<>();
+
+        private SplitPackage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the archives containing classes in the package mapped to the number of classes each contains.
+         *
+         * @return the archives
+         */
+        public Map<String, Integer> getJars() {
+            return jars;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+
+/**
+ * Lists the classes contained in an archive and the archives nested in it, such as <code>WEB-INF/lib</code> and <code>META-INF/lib</code> jars, or the
+ * classes in a loose class directory, such as the <code>WEB-INF/classes</code> directory of an exploded WAR.
+ *
+ * Only the central directories are read: the archive on disk is opened with {@link ZipFile} and nested archives are read into memory and listed with
+ * {@link CentralDirectory} so that class entries are never inflated. The size of a class in an archive is its compressed size and the size of a loose
+ * class is its file size.
+ */
+public class ClassScanner {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String WEB_INF_CLASSES = "WEB-INF/classes/";
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String NESTED_SEPARATOR = "!/";
+
+    /**
+     * Scans an archive or a class directory.
+     *
+     * @param file the archive or class directory
+     * @param path the path used to identify the archive or directory in reports
+     * @return the archive followed by the archives nested in it, or the class directory
+     * @throws IOException if there is an error reading the archive or directory
+     */
+    public static List<ClassIndex.Jar> scan(File file, String path) throws IOException {
+        if (file.isDirectory()) {
+            SortedMap<String, Long> classes = new TreeMap<>();
+            scanDirectory(file, "", classes);
+            return Collections.singletonList(new ClassIndex.Jar(path, classes));
+        }
+        List<ClassIndex.Jar> jars = new ArrayList<>();
+        SortedMap<String, Long> classes = new TreeMap<>();
+        List<ClassIndex.Jar> nested = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (isArchive(name)) {
+                    scan(read(zipFile, entry), path + NESTED_SEPARATOR + name, nested);
+                } else {
+                    addClass(name, entry.getCompressedSize(), classes);
+                }
+            }
+        } catch (ZipException e) {
+            throw new ZipException(path + ": " + e.getMessage());
+        }
+        jars.add(new ClassIndex.Jar(path, classes));
+        jars.addAll(nested);
+        return jars;
+    }
+
+    private static void scan(byte[] bytes, String path, List<ClassIndex.Jar> jars) throws ZipException {
+        List<CentralDirectory.Entry> entries;
+        try {
+            entries = CentralDirectory.read(bytes);
+        } catch (ZipException e) {
+            throw new ZipException(path + ": " + e.getMessage());
+        }
+        SortedMap<String, Long> classes = new TreeMap<>();
+        List<ClassIndex.Jar> nested = new ArrayList<>();
+        for (CentralDirectory.Entry entry : entries) {
+            String name = entry.getName();
+            if (name.endsWith("/")) {
+                continue;
+            }
+            if (isArchive(name)) {
+                scan(CentralDirectory.extract(bytes, entry), path + NESTED_SEPARATOR + name, nested);
+            } else {
+                addClass(name, entry.getCompressedSize(), classes);
+            }
+        }
+        jars.add(new ClassIndex.Jar(path, classes));
+        jars.addAll(nested);
+    }
+
+    private static void scanDirectory(File directory, String prefix, SortedMap<String, Long> classes) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            throw new IOException("Failed to list contents of " + directory);
+        }
+        for (File child : children) {
+            String name = prefix + child.getName();
+            if (child.isDirectory()) {
+                scanDirectory(child, name + "/", classes);
+            } else {
+                addClass(name, child.length(), classes);
+            }
+        }
+    }
+
+    private static boolean isArchive(String name) {
+        return name.endsWith(".jar") || name.endsWith(".war");
+    }
+
+    private static void addClass(String name, long size, SortedMap<String, Long> classes) {
+        if (!name.endsWith(CLASS_SUFFIX)) {
+            return;
+        }
+        if (name.startsWith(WEB_INF_CLASSES)) {
+            name = name.substring(WEB_INF_CLASSES.length());
+        } else if (name.startsWith(VERSIONS)) {
+            // multi-release classes replace the base version of the class
+            int pos = name.indexOf('/', VERSIONS.length());
+            if (pos < 0) {
+                return;
+            }
+            name = name.substring(pos + 1);
+        }
+        if (name.equals("module-info.class") || name.endsWith("/package-info.class")) {
+            return;
+        }
+        String className = name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        Long previous = classes.get(className);
+        classes.put(className, previous == null ? size : Math.max(previous, size));
+    }
+
+    private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : FileHelper.BUFFER);
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            FileHelper.copy(input, stream);
+        }
+        return stream.toByteArray();
+    }
+
+}
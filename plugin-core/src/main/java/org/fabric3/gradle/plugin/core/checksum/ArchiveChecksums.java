@@ -0,0 +1,399 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.checksum;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import groovy.lang.Closure;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.gradle.api.GradleException;
+import org.gradle.api.Transformer;
+import org.gradle.api.file.ContentFilterable;
+import org.gradle.api.file.DuplicatesStrategy;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+
+/**
+ * Wraps the copy action of an archive task to compute checksums of the archive and its entries while the archive is written.
+ *
+ * Entries are digested as the archive writer reads them, so their contents are not read again. The archive digest is taken from the writer if it implements
+ * {@link ArchiveDigests}, otherwise the archive is read once after it is written. The checksums are written next to each archive in the format of the
+ * <code>sha256sum</code> tool, so they can be verified with <code>sha256sum -c</code>:
+ * <ul>
+ * <li><code>&lt;archive&gt;.sha256</code> contains the archive checksum.</li>
+ * <li><code>&lt;archive&gt;.entries.sha256</code> contains the checksums of the file entries in path order, which can be verified in the directory the
+ * archive is extracted to.</li>
+ * </ul>
+ * The entry checksums can also be added to the archive as its last entry.
+ */
+public class ArchiveChecksums implements CopyAction {
+    public static final String ALGORITHM = "SHA-256";
+    public static final String SUFFIX = ".sha256";
+    public static final String ENTRIES_SUFFIX = ".entries.sha256";
+
+    private CopyAction delegate;
+    private List<File> archives;
+    private String manifestPath;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate     the copy action writing the archives
+     * @param archives     the archives written by the copy action
+     * @param manifestPath the path of the entry checksums manifest in the archive or null if the manifest is not added
+     */
+    public ArchiveChecksums(CopyAction delegate, List<File> archives, String manifestPath) {
+        this.delegate = delegate;
+        this.archives = archives;
+        this.manifestPath = manifestPath;
+    }
+
+    /**
+     * Returns a new digest for {@link #ALGORITHM}.
+     *
+     * @return the digest
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public WorkResult execute(final CopyActionProcessingStream stream) {
+        final Map<String, String> checksums = new TreeMap<>();
+        final long[] lastModified = {0};
+        WorkResult result = delegate.execute(new CopyActionProcessingStream() {
+            public void process(final CopyActionProcessingStreamAction action) {
+                stream.process(new CopyActionProcessingStreamAction() {
+                    public void processFile(FileCopyDetailsInternal details) {
+                        if (details.isDirectory()) {
+                            action.processFile(details);
+                            return;
+                        }
+                        lastModified[0] = Math.max(lastModified[0], details.getLastModified());
+                        action.processFile(digesting(details, checksums));
+                    }
+                });
+                if (manifestPath != null) {
+                    action.processFile(new ManifestDetails(manifestPath, toManifest(checksums).getBytes(StandardCharsets.UTF_8), lastModified[0]));
+                }
+            }
+        });
+        for (File archive : archives) {
+            try {
+                String digest = delegate instanceof ArchiveDigests ? ((ArchiveDigests) delegate).getDigest(archive) : null;
+                if (digest == null) {
+                    digest = FileHelper.checksum(archive, ALGORITHM);
+                }
+                write(new File(archive.getPath() + SUFFIX), digest + "  " + archive.getName() + "\n");
+                write(new File(archive.getPath() + ENTRIES_SUFFIX), toManifest(checksums));
+            } catch (IOException e) {
+                throw new GradleException("Unable to write checksums for " + archive + ": " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    private String toManifest(Map<String, String> checksums) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : checksums.entrySet()) {
+            builder.append(entry.getValue()).append("  ").append(entry.getKey()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private void write(File file, String contents) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(contents);
+        }
+    }
+
+    /**
+     * Returns a view of the file details that digests the contents when they are read by the archive writer. Details are proxied since the Gradle
+     * interface varies between versions.
+     */
+    private FileCopyDetailsInternal digesting(final FileCopyDetailsInternal details, final Map<String, String> checksums) {
+        final String path = details.getRelativePath().getPathString();
+        return proxy(new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("open") && method.getParameterTypes().length == 0) {
+                    return new DigestingInputStream((InputStream) forward(details, method, args), path, checksums);
+                } else if (method.getName().equals("copyTo") && args != null && args.length == 1 && args[0] instanceof OutputStream) {
+                    DigestingOutputStream stream = new DigestingOutputStream((OutputStream) args[0]);
+                    Object result = forward(details, method, new Object[]{stream});
+                    record(path, stream.digest, checksums);
+                    return result;
+                }
+                return forward(details, method, args);
+            }
+        });
+    }
+
+    private FileCopyDetailsInternal proxy(InvocationHandler handler) {
+        ClassLoader classLoader = FileCopyDetailsInternal.class.getClassLoader();
+        return (FileCopyDetailsInternal) Proxy.newProxyInstance(classLoader, new Class<?>[]{FileCopyDetailsInternal.class}, handler);
+    }
+
+    private static Object forward(FileCopyDetailsInternal details, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(details, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void record(String path, MessageDigest digest, Map<String, String> checksums) {
+        checksums.put(path, FileHelper.toHex(digest.digest()));
+    }
+
+    /**
+     * The entry checksums manifest added to the archive, built from the recorded checksums. The manifest is only read by the archive writer, so the methods
+     * used to rename, filter or exclude copied files are not supported.
+     */
+    private static class ManifestDetails implements FileCopyDetailsInternal {
+        private RelativePath relativePath;
+        private byte[] contents;
+        private long lastModified;
+
+        public ManifestDetails(String path, byte[] contents, long lastModified) {
+            this.relativePath = RelativePath.parse(true, path);
+            this.contents = contents;
+            this.lastModified = lastModified;
+        }
+
+        public RelativePath getRelativePath() {
+            return relativePath;
+        }
+
+        public String getPath() {
+            return relativePath.getPathString();
+        }
+
+        public String getName() {
+            return relativePath.getLastName();
+        }
+
+        public RelativePath getRelativeSourcePath() {
+            return relativePath;
+        }
+
+        public String getSourcePath() {
+            return getPath();
+        }
+
+        public String getSourceName() {
+            return getName();
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public boolean isIncludeEmptyDirs() {
+            return false;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return contents.length;
+        }
+
+        public int getMode() {
+            return 0644;
+        }
+
+        public DuplicatesStrategy getDuplicatesStrategy() {
+            return DuplicatesStrategy.INCLUDE;
+        }
+
+        public InputStream open() {
+            return new ByteArrayInputStream(contents);
+        }
+
+        public void copyTo(OutputStream output) {
+            try {
+                output.write(contents);
+            } catch (IOException e) {
+                throw new GradleException("Unable to write " + getPath() + ": " + e.getMessage(), e);
+            }
+        }
+
+        public boolean copyTo(File target) {
+            try (OutputStream output = new FileOutputStream(target)) {
+                output.write(contents);
+                return true;
+            } catch (IOException e) {
+                throw new GradleException("Unable to write " + target + ": " + e.getMessage(), e);
+            }
+        }
+
+        public File getFile() {
+            throw unsupported("getFile");
+        }
+
+        public void exclude() {
+            throw unsupported("exclude");
+        }
+
+        public void setName(String name) {
+            throw unsupported("setName");
+        }
+
+        public void setPath(String path) {
+            throw unsupported("setPath");
+        }
+
+        public void setRelativePath(RelativePath path) {
+            throw unsupported("setRelativePath");
+        }
+
+        public void setMode(int mode) {
+            throw unsupported("setMode");
+        }
+
+        public void setDuplicatesStrategy(DuplicatesStrategy strategy) {
+            throw unsupported("setDuplicatesStrategy");
+        }
+
+        public ContentFilterable filter(Map<String, ?> properties, Class<? extends FilterReader> filterType) {
+            throw unsupported("filter");
+        }
+
+        public ContentFilterable filter(Class<? extends FilterReader> filterType) {
+            throw unsupported("filter");
+        }
+
+        @SuppressWarnings("rawtypes")
+        public ContentFilterable filter(Closure closure) {
+            throw unsupported("filter");
+        }
+
+        public ContentFilterable filter(Transformer<String, String> transformer) {
+            throw unsupported("filter");
+        }
+
+        public ContentFilterable expand(Map<String, ?> properties) {
+            throw unsupported("expand");
+        }
+
+        public String toString() {
+            return getPath();
+        }
+
+        private UnsupportedOperationException unsupported(String method) {
+            return new UnsupportedOperationException(method + " is not supported for the checksum manifest");
+        }
+    }
+
+    private static class DigestingInputStream extends FilterInputStream {
+        private MessageDigest digest = createDigest();
+        private String path;
+        private Map<String, String> checksums;
+        private boolean recorded;
+
+        public DigestingInputStream(InputStream stream, String path, Map<String, String> checksums) {
+            super(stream);
+            this.path = path;
+            this.checksums = checksums;
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+            } else {
+                complete();
+            }
+            return b;
+        }
+
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int n = super.read(bytes, offset, length);
+            if (n > 0) {
+                digest.update(bytes, offset, n);
+            } else if (n < 0) {
+                complete();
+            }
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            // skipped bytes cannot be digested so the entry is not recorded
+            recorded = true;
+            return super.skip(n);
+        }
+
+        private void complete() {
+            if (!recorded) {
+                recorded = true;
+                record(path, digest, checksums);
+            }
+        }
+    }
+
+    private static class DigestingOutputStream extends FilterOutputStream {
+        private MessageDigest digest = createDigest();
+
+        public DigestingOutputStream(OutputStream stream) {
+            super(stream);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+        }
+
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            digest.update(bytes, offset, length);
+        }
+
+        public void close() {
+            // the archive stream is closed by the writer
+        }
+    }
+
+}
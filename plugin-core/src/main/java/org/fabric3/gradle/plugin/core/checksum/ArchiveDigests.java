@@ -0,0 +1,34 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.checksum;
+
+import java.io.File;
+
+/**
+ * Implemented by archive writers that digest the archive bytes as they are written, which avoids reading the archive again to checksum it.
+ */
+public interface ArchiveDigests {
+
+    /**
+     * Returns the {@link ArchiveChecksums#ALGORITHM} digest of an archive written by the last execution.
+     *
+     * @param archive the archive
+     * @return the hex-encoded digest or null if the archive was not digested while it was written
+     */
+    String getDigest(File archive);
+
+}
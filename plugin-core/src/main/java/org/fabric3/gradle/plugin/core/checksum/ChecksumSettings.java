@@ -0,0 +1,124 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.checksum;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.gradle.api.Task;
+import org.gradle.api.internal.AbstractTask;
+import org.gradle.api.internal.file.copy.CopyAction;
+
+/**
+ * The settings of the {@link ArchiveChecksums} written for the archives of a task. Archive tasks register the settings as a convention object, so the
+ * settings are configured as properties of the task.
+ *
+ * Archives written by a copy action implementing {@link ArchiveDigests} are digested as they are written. Other archives, such as those written by the
+ * Gradle <code>Zip</code> task, are read again after they are written to compute the archive checksum.
+ */
+public class ChecksumSettings {
+    public static final String CONVENTION_NAME = "fabric3Checksums";
+
+    private boolean checksums = true;
+    private String checksumManifest;
+
+    /**
+     * Registers checksum settings as a convention object of an archive task and declares the checksum files as task outputs.
+     *
+     * @param task     the task
+     * @param archives the archives written by the task
+     * @return the settings
+     */
+    public static ChecksumSettings register(AbstractTask task, Callable<List<File>> archives) {
+        ChecksumSettings settings = new ChecksumSettings();
+        task.getConvention().getPlugins().put(CONVENTION_NAME, settings);
+        settings.declareOutputs(task, archives);
+        return settings;
+    }
+
+    public boolean isChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Sets whether checksums are written next to the archives. Defaults to true.
+     *
+     * @param checksums true if checksums are written
+     */
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    public String getChecksumManifest() {
+        return checksumManifest;
+    }
+
+    /**
+     * Sets the path of the entry checksums manifest added to the archives. The manifest is not added by default.
+     *
+     * @param checksumManifest the manifest path
+     */
+    public void setChecksumManifest(String checksumManifest) {
+        this.checksumManifest = checksumManifest;
+    }
+
+    /**
+     * Wraps the copy action of an archive task to write checksums if they are enabled.
+     *
+     * @param action   the copy action writing the archives
+     * @param archives the archives written by the copy action
+     * @return the copy action
+     */
+    public CopyAction apply(CopyAction action, List<File> archives) {
+        return checksums ? new ArchiveChecksums(action, archives, checksumManifest) : action;
+    }
+
+    /**
+     * Declares the settings as task inputs and the checksum files written next to the archives as task outputs, so the task is not up to date if the
+     * checksums are missing or their settings change.
+     *
+     * @param task     the task
+     * @param archives the archives written by the task
+     */
+    public void declareOutputs(Task task, final Callable<List<File>> archives) {
+        task.getInputs().property("checksums", new Callable<Boolean>() {
+            public Boolean call() {
+                return checksums;
+            }
+        });
+        task.getInputs().property("checksumManifest", new Callable<String>() {
+            public String call() {
+                return checksumManifest;
+            }
+        });
+        task.getOutputs().files(new Callable<List<File>>() {
+            public List<File> call() throws Exception {
+                List<File> files = new ArrayList<>();
+                if (checksums) {
+                    for (File archive : archives.call()) {
+                        files.add(new File(archive.getPath() + ArchiveChecksums.SUFFIX));
+                        files.add(new File(archive.getPath() + ArchiveChecksums.ENTRIES_SUFFIX));
+                    }
+                }
+                return files;
+            }
+        });
+    }
+
+}
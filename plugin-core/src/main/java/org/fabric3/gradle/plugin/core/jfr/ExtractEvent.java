@@ -0,0 +1,47 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the extraction of an archive to a directory.
+ */
+@Name("org.fabric3.Extract")
+@Label("Archive Extraction")
+@Description("Extraction of an archive to a directory")
+class ExtractEvent extends FileEvent {
+    @Label("Source")
+    String source;
+
+    @Label("Destination")
+    String path;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    void set(String subject, String path, long bytes) {
+        this.source = subject;
+        this.path = path;
+        this.bytes = bytes;
+    }
+
+}
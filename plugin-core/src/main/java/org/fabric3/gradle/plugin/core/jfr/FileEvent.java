@@ -0,0 +1,37 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+
+/**
+ * Base Flight Recorder event for an operation on a subject, such as an artifact or source file, that produces or affects a file.
+ */
+@Category({"Fabric3", "Build"})
+abstract class FileEvent extends Event {
+
+    /**
+     * Sets the event fields.
+     *
+     * @param subject the subject of the operation
+     * @param path    the path of the produced or affected file
+     * @param bytes   the number of bytes processed
+     */
+    abstract void set(String subject, String path, long bytes);
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.jfr;
+
+import java.io.File;
+
+/**
+ * Emits Java Flight Recorder events for Fabric3 build operations so they can be correlated with GC and I/O activity in a recording.
+ *
+ * Event classes are only loaded if the JVM provides the <code>jdk.jfr</code> API. When it does not, or when the event type is not enabled in a running
+ * recording, a shared no-op operation is returned.
+ */
+public final class FlightRecorderEvents {
+    static final Operation NO_OP = new NoOpOperation();
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Begins an artifact resolution.
+     *
+     * @param coordinates the artifact coordinates
+     * @return the operation
+     */
+    public static Operation resolve(String coordinates) {
+        return AVAILABLE ? JfrOperation.resolve(coordinates) : NO_OP;
+    }
+
+    /**
+     * Begins the extraction of an archive.
+     *
+     * @param source the archive
+     * @return the operation
+     */
+    public static Operation extract(File source) {
+        return AVAILABLE ? JfrOperation.extract(source.getPath()) : NO_OP;
+    }
+
+    /**
+     * Begins a file copy.
+     *
+     * @param source the source file
+     * @return the operation
+     */
+    public static Operation copy(File source) {
+        return AVAILABLE ? JfrOperation.copy(source.getPath()) : NO_OP;
+    }
+
+    /**
+     * Begins the deletion of an excluded file.
+     *
+     * @param reason the reason for the deletion, e.g. the excluded artifact
+     * @return the operation
+     */
+    public static Operation delete(String reason) {
+        return AVAILABLE ? JfrOperation.delete(reason) : NO_OP;
+    }
+
+    /**
+     * Begins writing an archive.
+     *
+     * @param task the task writing the archive
+     * @return the operation
+     */
+    public static Operation archive(String task) {
+        return AVAILABLE ? JfrOperation.archive(task) : NO_OP;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private FlightRecorderEvents() {
+    }
+
+    private static class NoOpOperation implements Operation {
+
+        public void commit(File file, long bytes) {
+        }
+    }
+}
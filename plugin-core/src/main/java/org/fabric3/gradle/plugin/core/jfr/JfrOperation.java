@@ -0,0 +1,75 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.jfr;
+
+import java.io.File;
+
+import jdk.jfr.EventType;
+
+/**
+ * An operation backed by a Flight Recorder event. This class must only be loaded if the <code>jdk.jfr</code> API is available.
+ */
+class JfrOperation implements Operation {
+    // checked before an event is allocated, as operations are begun for every file copied or extracted
+    private static final EventType RESOLVE = EventType.getEventType(ResolveEvent.class);
+    private static final EventType EXTRACT = EventType.getEventType(ExtractEvent.class);
+    private static final EventType COPY = EventType.getEventType(CopyEvent.class);
+    private static final EventType DELETE = EventType.getEventType(DeleteEvent.class);
+    private static final EventType ARCHIVE = EventType.getEventType(ArchiveEvent.class);
+
+    private FileEvent event;
+    private String subject;
+
+    static Operation resolve(String coordinates) {
+        return RESOLVE.isEnabled() ? begin(new ResolveEvent(), coordinates) : FlightRecorderEvents.NO_OP;
+    }
+
+    static Operation extract(String source) {
+        return EXTRACT.isEnabled() ? begin(new ExtractEvent(), source) : FlightRecorderEvents.NO_OP;
+    }
+
+    static Operation copy(String source) {
+        return COPY.isEnabled() ? begin(new CopyEvent(), source) : FlightRecorderEvents.NO_OP;
+    }
+
+    static Operation delete(String reason) {
+        return DELETE.isEnabled() ? begin(new DeleteEvent(), reason) : FlightRecorderEvents.NO_OP;
+    }
+
+    static Operation archive(String task) {
+        return ARCHIVE.isEnabled() ? begin(new ArchiveEvent(), task) : FlightRecorderEvents.NO_OP;
+    }
+
+    private static Operation begin(FileEvent event, String subject) {
+        event.begin();
+        return new JfrOperation(event, subject);
+    }
+
+    private JfrOperation(FileEvent event, String subject) {
+        this.event = event;
+        this.subject = subject;
+    }
+
+    public void commit(File file, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(subject, file == null ? null : file.getPath(), bytes);
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.jfr;
+
+import java.io.File;
+
+/**
+ * A timed operation that is emitted as a Flight Recorder event when committed.
+ */
+public interface Operation {
+
+    /**
+     * Ends the operation and commits its event if recording is enabled.
+     *
+     * @param file  the file produced or affected by the operation
+     * @param bytes the number of bytes processed
+     */
+    void commit(File file, long bytes);
+
+}
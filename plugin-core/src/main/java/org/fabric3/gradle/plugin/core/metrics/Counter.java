@@ -0,0 +1,52 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter backed by a striped {@link LongAdder} so that concurrent updates from parallel phases do not contend on a single memory location.
+ */
+public class Counter {
+    private LongAdder adder = new LongAdder();
+
+    /**
+     * Adds to the counter.
+     *
+     * @param delta the amount to add
+     */
+    public void add(long delta) {
+        adder.add(delta);
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Returns the current value.
+     *
+     * @return the current value
+     */
+    public long get() {
+        return adder.sum();
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.metrics;
+
+/**
+ * Names of the metrics recorded by Fabric3 tasks.
+ */
+public interface MetricNames {
+
+    String ARTIFACTS_RESOLVED_LOCAL = "artifacts.resolved.local";
+
+    String ARTIFACTS_RESOLVED_REMOTE = "artifacts.resolved.remote";
+
+    String ARTIFACT_SIZE = "artifacts.size";
+
+    String LOCK_HITS = "lock.hits";
+
+    String LOCK_MISSES = "lock.misses";
+
+    String BYTES_DOWNLOADED = "bytes.downloaded";
+
+    String BYTES_COPIED = "bytes.copied";
+
+    String BYTES_EXTRACTED = "bytes.extracted";
+
+    String ZIP_ENTRIES_WRITTEN = "zip.entries.written";
+
+    String ZIP_ENTRIES_REUSED = "zip.entries.reused";
+
+    String FILES_EXCLUDED = "files.excluded";
+
+    String FILES_SYNCED = "files.synced";
+
+    String FILES_UNCHANGED = "files.unchanged";
+
+    String FILES_REMOVED = "files.removed";
+
+    String IO_TIME = "io.time.nanos";
+
+    String EXTENSIONS_CACHE_HITS = "extensions.cache.hits";
+
+    String EXTENSIONS_CACHE_MISSES = "extensions.cache.misses";
+
+    String LOCAL_RESOLUTION_RATIO = "artifacts.local.ratio";
+
+    String LOCK_HIT_RATIO = "lock.hit.ratio";
+
+    String EXTENSIONS_CACHE_HIT_RATIO = "extensions.cache.hit.ratio";
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A process-wide registry of counters, histograms and ratios.
+ *
+ * The registry is disabled by default. When disabled, {@link #counter(String)} and {@link #histogram(String)} return shared no-op instances so instrumented
+ * code pays only for a volatile read. Metric lookups are lock-free; callers should not cache returned instances across builds as the registry is reset at the
+ * start of each build.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private static final Counter NO_OP_COUNTER = new Counter() {
+        public void add(long delta) {
+        }
+    };
+
+    private static final Histogram NO_OP_HISTOGRAM = new Histogram() {
+        public void record(long value) {
+        }
+    };
+
+    private volatile boolean enabled;
+    private ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, String[]> ratios = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the registry.
+     *
+     * @return the registry
+     */
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Clears recorded values and enables or disables recording.
+     *
+     * @param enabled true if metrics should be recorded
+     */
+    public void reset(boolean enabled) {
+        counters.clear();
+        histograms.clear();
+        this.enabled = enabled;
+        ratio(MetricNames.LOCAL_RESOLUTION_RATIO, MetricNames.ARTIFACTS_RESOLVED_LOCAL, MetricNames.ARTIFACTS_RESOLVED_REMOTE);
+        ratio(MetricNames.LOCK_HIT_RATIO, MetricNames.LOCK_HITS, MetricNames.LOCK_MISSES);
+        ratio(MetricNames.EXTENSIONS_CACHE_HIT_RATIO, MetricNames.EXTENSIONS_CACHE_HITS, MetricNames.EXTENSIONS_CACHE_MISSES);
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     *
+     * @param name the counter name
+     * @return the counter
+     */
+    public Counter counter(String name) {
+        if (!enabled) {
+            return NO_OP_COUNTER;
+        }
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     *
+     * @param name the histogram name
+     * @return the histogram
+     */
+    public Histogram histogram(String name) {
+        if (!enabled) {
+            return NO_OP_HISTOGRAM;
+        }
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Defines a ratio calculated as <code>hits / (hits + misses)</code> when the registry is read.
+     *
+     * @param name   the ratio name
+     * @param hits   the name of the counter recording hits
+     * @param misses the name of the counter recording misses
+     */
+    public void ratio(String name, String hits, String misses) {
+        ratios.put(name, new String[]{hits, misses});
+    }
+
+    /**
+     * Returns the counter values sorted by name.
+     *
+     * @return the counter values
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * Returns the histograms sorted by name.
+     *
+     * @return the histograms
+     */
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Returns the ratios sorted by name. Ratios with no recorded hits or misses are omitted.
+     *
+     * @return the ratios
+     */
+    public Map<String, Double> getRatios() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : ratios.entrySet()) {
+            long hits = value(entry.getValue()[0]);
+            long total = hits + value(entry.getValue()[1]);
+            if (total > 0) {
+                values.put(entry.getKey(), (double) hits / total);
+            }
+        }
+        return values;
+    }
+
+    private long value(String name) {
+        Counter counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.report;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.fabric3.gradle.plugin.core.metrics.Histogram;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.stopwatch.StopWatch;
+import org.fabric3.gradle.plugin.core.stopwatch.TraceEventExporter;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import static org.fabric3.gradle.plugin.core.util.JsonHelper.quote;
+
+/**
+ * Resets the {@link MetricsRegistry} when a build starts using Fabric3 plugins and outputs its contents when the build finishes. The metrics are printed to
+ * the console and written to <code>metrics.json</code> in the root project performance report directory.
+ *
+ * Stopwatches of tasks executed during the build are also collected into a single Chrome trace-event file, <code>trace.json</code>, in the same directory
+ * so that the phases of projects built in parallel can be viewed on one timeline.
+ */
+public class MetricsReporter extends BuildAdapter {
+    private static final Logger LOGGER = Logging.getLogger(MetricsReporter.class);
+    private static final Map<Gradle, MetricsReporter> INSTALLED = new WeakHashMap<>();
+
+    // the reporter is a value of INSTALLED, so it must not reference the build or its projects
+    private File directory;
+    private TraceEventExporter trace = new TraceEventExporter();
+
+    /**
+     * Installs the reporter for the build the project belongs to. Subsequent calls for the same build are ignored.
+     *
+     * @param project the project applying a Fabric3 plugin
+     */
+    public static void install(Project project) {
+        Gradle gradle = project.getGradle();
+        MetricsReporter reporter;
+        synchronized (INSTALLED) {
+            if (INSTALLED.containsKey(gradle)) {
+                return;
+            }
+            boolean enabled = StopWatchFactory.isEnabled();
+            reporter = enabled ? new MetricsReporter(project.getRootProject()) : null;
+            INSTALLED.put(gradle, reporter);
+            MetricsRegistry.getInstance().reset(enabled);
+        }
+        if (reporter != null) {
+            gradle.addBuildListener(reporter);
+        }
+    }
+
+    /**
+     * Adds the spans and splits recorded for a task to the build trace. Stopwatches of tasks in builds without an installed reporter are ignored.
+     *
+     * @param task      the task
+     * @param stopWatch the task stopwatch
+     */
+    public static void trace(Task task, StopWatch stopWatch) {
+        MetricsReporter reporter;
+        synchronized (INSTALLED) {
+            reporter = INSTALLED.get(task.getProject().getGradle());
+        }
+        if (reporter != null) {
+            reporter.trace.add(task.getProject().getPath(), task.getPath(), stopWatch);
+        }
+    }
+
+    private MetricsReporter(Project rootProject) {
+        this.directory = new File(rootProject.getBuildDir(), PerformanceReport.REPORTS_DIRECTORY);
+    }
+
+    public void buildFinished(BuildResult result) {
+        synchronized (INSTALLED) {
+            INSTALLED.remove(result.getGradle());
+        }
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        Map<String, Long> counters = registry.getCounters();
+        Map<String, Histogram> histograms = registry.getHistograms();
+        Map<String, Double> ratios = registry.getRatios();
+
+        StringBuilder builder = new StringBuilder("\nFabric3 metrics:\n");
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            builder.append("  ").append(entry.getKey()).append(": count=").append(histogram.getCount()).append(" sum=").append(histogram.getSum());
+            builder.append(" p50<=").append(histogram.getPercentile(50)).append(" p99<=").append(histogram.getPercentile(99));
+            builder.append(" max=").append(histogram.getMax()).append("\n");
+        }
+        for (Map.Entry<String, Double> entry : ratios.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(String.format(Locale.ROOT, "%.3f", entry.getValue())).append("\n");
+        }
+        LOGGER.lifecycle(builder.toString());
+
+        try {
+            write(new File(directory, "metrics.json"), counters, histograms, ratios);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write Fabric3 metrics", e);
+        }
+        if (!trace.isEmpty()) {
+            try {
+                trace.write(new File(directory, "trace.json"));
+            } catch (IOException e) {
+                LOGGER.warn("Unable to write Fabric3 trace", e);
+            }
+        }
+        registry.reset(false);
+    }
+
+    private void write(File file, Map<String, Long> counters, Map<String, Histogram> histograms, Map<String, Double> ratios) throws IOException {
+        file.getParentFile().mkdirs();
+        StringBuilder builder = new StringBuilder("{\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            separator = ",\n";
+        }
+        builder.append("\n  },\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": {");
+            builder.append("\"count\": ").append(histogram.getCount()).append(", \"sum\": ").append(histogram.getSum());
+            builder.append(", \"p50\": ").append(histogram.getPercentile(50)).append(", \"p90\": ").append(histogram.getPercentile(90));
+            builder.append(", \"p99\": ").append(histogram.getPercentile(99)).append(", \"max\": ").append(histogram.getMax()).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n  },\n  \"ratios\": {");
+        separator = "\n";
+        for (Map.Entry<String, Double> entry : ratios.entrySet()) {
+            builder.append(separator).append("    ").append(quote(entry.getKey())).append(": ");
+            builder.append(String.format(Locale.ROOT, "%.4f", entry.getValue()));
+            separator = ",\n";
+        }
+        builder.append("\n  }\n}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(builder.toString());
+        }
+    }
+
+}
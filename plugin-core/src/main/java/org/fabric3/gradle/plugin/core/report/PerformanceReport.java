@@ -0,0 +1,205 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.report;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.fabric3.gradle.plugin.core.stopwatch.MemorySample;
+import org.fabric3.gradle.plugin.core.stopwatch.Span;
+import org.fabric3.gradle.plugin.core.stopwatch.SpanSummary;
+import static org.fabric3.gradle.plugin.core.util.JsonHelper.quote;
+
+/**
+ * Writes machine-readable timings for a task execution.
+ *
+ * Each execution produces <code>&lt;task&gt;.json</code> and <code>&lt;task&gt;.csv</code> in the report directory, replacing the output of the previous
+ * execution, and appends its rows to a history file shared by all projects in the build so trends can be charted across builds. One row is written per
+ * phase, where a phase is a span summary identified by its path from the root span.
+ */
+public class PerformanceReport {
+    public static final String REPORTS_DIRECTORY = "reports" + File.separator + "fabric3-performance";
+    public static final String HISTORY_DIRECTORY = ".gradle" + File.separator + "fabric3-performance";
+    public static final String HISTORY_FILE = "history.csv";
+
+    private static final String CSV_HEADER = "timestamp,project,task,phase,thread,count,durationMs,selfMs,bytes,artifacts\n";
+    private static final Object HISTORY_LOCK = new Object();
+
+    private String project;
+    private String task;
+    private File reportDirectory;
+    private File historyFile;
+
+    /**
+     * Constructor.
+     *
+     * @param project         the project path
+     * @param task            the task path
+     * @param reportDirectory the directory to write per-task reports to
+     * @param historyFile     the history file to append to
+     */
+    public PerformanceReport(String project, String task, File reportDirectory, File historyFile) {
+        this.project = project;
+        this.task = task;
+        this.reportDirectory = reportDirectory;
+        this.historyFile = historyFile;
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @param totalTime the total elapsed time in nanoseconds
+     * @param splits    the splits with elapsed times in nanoseconds
+     * @param memory    the memory cost of the splits, which may be empty
+     * @param spans     the root spans
+     * @throws IOException if there is an error writing the report
+     */
+    public void write(long totalTime, Map<String[], Long> splits, Map<String[], MemorySample> memory, List<Span> spans) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        List<Phase> phases = new ArrayList<>();
+        flatten(null, SpanSummary.summarize(spans), phases);
+
+        reportDirectory.mkdirs();
+        String name = task.substring(task.lastIndexOf(':') + 1);
+
+        StringBuilder csv = new StringBuilder(CSV_HEADER);
+        appendRows(timestamp, phases, csv);
+        write(new File(reportDirectory, name + ".csv"), csv.toString());
+        write(new File(reportDirectory, name + ".json"), toJson(timestamp, totalTime, splits, memory, phases));
+
+        StringBuilder history = new StringBuilder();
+        appendRows(timestamp, phases, history);
+        appendHistory(history.toString());
+    }
+
+    private void flatten(String parent, List<SpanSummary> summaries, List<Phase> phases) {
+        for (SpanSummary summary : summaries) {
+            String path = parent == null ? summary.getName() : parent + "/" + summary.getName();
+            phases.add(new Phase(path, summary));
+            flatten(path, summary.getChildren(), phases);
+        }
+    }
+
+    private void appendRows(long timestamp, List<Phase> phases, StringBuilder builder) {
+        for (Phase phase : phases) {
+            SpanSummary summary = phase.summary;
+            builder.append(timestamp).append(',');
+            builder.append(csv(project)).append(',').append(csv(task)).append(',').append(csv(phase.path)).append(',');
+            builder.append(csv(summary.getThreadName())).append(',').append(summary.getCount()).append(',');
+            builder.append(millis(summary.getTotalTime())).append(',').append(millis(summary.getSelfTime())).append(',');
+            builder.append(summary.getCounter(Span.BYTES)).append(',').append(summary.getCounter(Span.ARTIFACTS)).append('\n');
+        }
+    }
+
+    private String toJson(long timestamp, long totalTime, Map<String[], Long> splits, Map<String[], MemorySample> memory, List<Phase> phases) {
+        StringBuilder builder = new StringBuilder("{\n");
+        builder.append("  \"project\": ").append(quote(project)).append(",\n");
+        builder.append("  \"task\": ").append(quote(task)).append(",\n");
+        builder.append("  \"timestamp\": ").append(timestamp).append(",\n");
+        builder.append("  \"durationMs\": ").append(millis(totalTime)).append(",\n");
+        builder.append("  \"splits\": [");
+        if (splits != null) {
+            String separator = "\n";
+            for (Map.Entry<String[], Long> entry : splits.entrySet()) {
+                builder.append(separator).append("    {\"split\": ").append(quote(String.join(" ", entry.getKey())));
+                builder.append(", \"elapsedMs\": ").append(millis(entry.getValue()));
+                MemorySample sample = memory.get(entry.getKey());
+                if (sample != null) {
+                    builder.append(", \"allocatedBytes\": ").append(sample.getAllocatedBytes());
+                    builder.append(", \"gcCount\": ").append(sample.getGcCount());
+                    builder.append(", \"gcTimeMs\": ").append(sample.getGcTime());
+                    builder.append(", \"peakHeapBytes\": ").append(sample.getPeakHeap());
+                }
+                builder.append("}");
+                separator = ",\n";
+            }
+        }
+        builder.append("\n  ],\n");
+        builder.append("  \"phases\": [");
+        String separator = "\n";
+        for (Phase phase : phases) {
+            SpanSummary summary = phase.summary;
+            builder.append(separator).append("    {\"phase\": ").append(quote(phase.path));
+            builder.append(", \"thread\": ").append(quote(summary.getThreadName()));
+            builder.append(", \"count\": ").append(summary.getCount());
+            builder.append(", \"durationMs\": ").append(millis(summary.getTotalTime()));
+            builder.append(", \"selfMs\": ").append(millis(summary.getSelfTime()));
+            builder.append(", \"bytes\": ").append(summary.getCounter(Span.BYTES));
+            builder.append(", \"artifacts\": ").append(summary.getCounter(Span.ARTIFACTS)).append("}");
+            separator = ",\n";
+        }
+        builder.append("\n  ]\n}\n");
+        return builder.toString();
+    }
+
+    @SuppressWarnings("try") // the file lock is held for the duration of the block
+    private void appendHistory(String rows) throws IOException {
+        historyFile.getParentFile().mkdirs();
+        // parallel project execution appends from several threads in this JVM; the file lock guards against concurrent builds
+        synchronized (HISTORY_LOCK) {
+            try (FileChannel channel = FileChannel.open(historyFile.toPath(),
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.APPEND);
+                 FileLock ignored = channel.lock()) {
+                if (channel.size() == 0) {
+                    channel.write(ByteBuffer.wrap(CSV_HEADER.getBytes(StandardCharsets.UTF_8)));
+                }
+                channel.write(ByteBuffer.wrap(rows.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    private void write(File file, String contents) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(contents);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000d);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static class Phase {
+        private String path;
+        private SpanSummary summary;
+
+        private Phase(String path, SpanSummary summary) {
+            this.path = path;
+            this.summary = summary;
+        }
+    }
+}
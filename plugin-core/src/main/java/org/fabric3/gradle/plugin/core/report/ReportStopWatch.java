@@ -0,0 +1,57 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.fabric3.gradle.plugin.core.stopwatch.StreamStopWatch;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+
+/**
+ * A stopwatch that outputs timings to a stream and writes a {@link PerformanceReport} for the task it measures. Spans are also added to
+ * the build trace written by {@link MetricsReporter}.
+ */
+public class ReportStopWatch extends StreamStopWatch {
+    private Task task;
+
+    public ReportStopWatch(Task task, TimeUnit unit, PrintStream stream) {
+        super(task.getPath(), unit, stream);
+        this.task = task;
+    }
+
+    public void flush() {
+        super.flush();
+        // resolve directories when flushing as the build directory may be reconfigured after the task is created
+        Project project = task.getProject();
+        File reportDirectory = new File(project.getBuildDir(), PerformanceReport.REPORTS_DIRECTORY);
+        File historyFile = new File(new File(project.getRootDir(), PerformanceReport.HISTORY_DIRECTORY), PerformanceReport.HISTORY_FILE);
+        PerformanceReport report = new PerformanceReport(project.getPath(), task.getPath(), reportDirectory, historyFile);
+        try {
+            Map<String[], Long> calculated = splits == null ? null : getSplits();
+            report.write(end - start, calculated, getMemory(), getSpans());
+        } catch (IOException e) {
+            task.getLogger().warn("Unable to write Fabric3 performance report", e);
+        }
+        MetricsReporter.trace(task, this);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.report;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fabric3.gradle.plugin.core.stopwatch.NoOpStopWatch;
+import org.fabric3.gradle.plugin.core.stopwatch.StopWatch;
+import org.gradle.api.Task;
+
+/**
+ * Creates stopwatches for Fabric3 tasks. Timings are recorded and reported only if the <code>fabric3.performance</code> system property is set to true.
+ * Setting <code>fabric3.performance.memory</code> to true additionally records the allocation and garbage collection cost of each split.
+ */
+public class StopWatchFactory {
+    public static final String PERFORMANCE_PROPERTY = "fabric3.performance";
+    public static final String MEMORY_PROPERTY = "fabric3.performance.memory";
+
+    /**
+     * Returns true if performance measurement is enabled.
+     *
+     * @return true if performance measurement is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PERFORMANCE_PROPERTY));
+    }
+
+    /**
+     * Creates a stopwatch for the task.
+     *
+     * @param task the task
+     * @return the stopwatch
+     */
+    public static StopWatch create(Task task) {
+        if (isEnabled()) {
+            ReportStopWatch stopWatch = new ReportStopWatch(task, TimeUnit.MILLISECONDS, System.out);
+            stopWatch.setTrackMemory(Boolean.parseBoolean(System.getProperty(MEMORY_PROPERTY)));
+            return stopWatch;
+        }
+        return new NoOpStopWatch();
+    }
+
+    private StopWatchFactory() {
+    }
+}
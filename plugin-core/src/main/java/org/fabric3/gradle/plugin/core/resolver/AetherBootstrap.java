@@ -22,18 +22,25 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.AbstractRepositoryListener;
 import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.Proxy;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
 import org.gradle.api.artifacts.repositories.ArtifactRepository;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
@@ -61,17 +68,69 @@ public class AetherBootstrap {
     }
 
     public static DefaultRepositorySystemSession getRepositorySystemSession(RepositorySystem system, ServiceRegistry registry, boolean offline) {
-        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        return getRepositorySystemSession(system, registry, offline, null);
+    }
+
+    /**
+     * Returns a session that overrides the update policy of remote repositories.
+     *
+     * @param system       the repository system
+     * @param registry     the Gradle service registry
+     * @param offline      true if the build is offline
+     * @param updatePolicy the update policy or null to use the repository policies
+     * @return the session
+     */
+    public static DefaultRepositorySystemSession getRepositorySystemSession(RepositorySystem system,
+                                                                            ServiceRegistry registry,
+                                                                            boolean offline,
+                                                                            String updatePolicy) {
         File file = new File(registry.get(RepositoryHandler.class).mavenLocal().getUrl().getPath());
-        LocalRepository localRepo = new LocalRepository(file);
+        return getRepositorySystemSession(system, file, offline, updatePolicy);
+    }
+
+    /**
+     * Returns a session backed by the given local repository directory.
+     *
+     * @param system          the repository system
+     * @param localRepository the local repository directory
+     * @param offline         true if the build is offline
+     * @param updatePolicy    the update policy or null to use the repository policies
+     * @return the session
+     */
+    public static DefaultRepositorySystemSession getRepositorySystemSession(RepositorySystem system,
+                                                                            File localRepository,
+                                                                            boolean offline,
+                                                                            String updatePolicy) {
+        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        LocalRepository localRepo = new LocalRepository(localRepository);
         session.setLocalRepositoryManager(system.newLocalRepositoryManager(session, localRepo));
         session.setCache(new DefaultRepositoryCache());
         session.setOffline(offline);
         // avoid unnecessary snapshot resolution
         session.setConfigProperty("aether.artifactResolver.snapshotNormalization", false);
+        if (updatePolicy != null) {
+            session.setUpdatePolicy(updatePolicy);
+        }
+        if (MetricsRegistry.getInstance().isEnabled()) {
+            session.setRepositoryListener(new MetricsRepositoryListener());
+            session.setTransferListener(new MetricsTransferListener());
+        }
         return session;
     }
 
+    /**
+     * Returns the update policy for checking remote repositories for newer snapshots.
+     *
+     * @param freshness the time in minutes resolved snapshots are considered current
+     * @return the update policy
+     */
+    public static String getUpdatePolicy(long freshness) {
+        if (freshness <= 0) {
+            return RepositoryPolicy.UPDATE_POLICY_ALWAYS;
+        }
+        return RepositoryPolicy.UPDATE_POLICY_INTERVAL + ":" + freshness;
+    }
+
     public static List<RemoteRepository> getRepositories(ServiceRegistry registry) {
         Iterator<ArtifactRepository> iterator = registry.get(RepositoryHandler.class).iterator();
         List<RemoteRepository> repositories = new ArrayList<>();
@@ -100,4 +159,30 @@ public class AetherBootstrap {
 
     private AetherBootstrap() {
     }
+
+    /**
+     * Records whether artifacts were resolved from the local or a remote repository.
+     */
+    private static class MetricsRepositoryListener extends AbstractRepositoryListener {
+
+        public void artifactResolved(RepositoryEvent event) {
+            if (event.getRepository() instanceof LocalRepository) {
+                MetricsRegistry.getInstance().counter(MetricNames.ARTIFACTS_RESOLVED_LOCAL).increment();
+            } else if (event.getRepository() instanceof RemoteRepository) {
+                MetricsRegistry.getInstance().counter(MetricNames.ARTIFACTS_RESOLVED_REMOTE).increment();
+            }
+        }
+    }
+
+    /**
+     * Records bytes downloaded from remote repositories, including metadata and checksums.
+     */
+    private static class MetricsTransferListener extends AbstractTransferListener {
+
+        public void transferSucceeded(TransferEvent event) {
+            if (event.getRequestType() == TransferEvent.RequestType.GET) {
+                MetricsRegistry.getInstance().counter(MetricNames.BYTES_DOWNLOADED).add(event.getTransferredBytes());
+            }
+        }
+    }
 }
@@ -0,0 +1,277 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.resolver;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+import org.fabric3.gradle.plugin.core.util.FileHelper;
+import org.fabric3.gradle.plugin.core.util.FileSync;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Resolves artifacts using Aether, honoring the versions pinned in a {@link ResolutionLock}.
+ *
+ * A locked artifact whose file is present in the local repository is returned directly without invoking Aether. Otherwise, the locked (timestamped) version
+ * is resolved, which does not require <code>maven-metadata.xml</code> lookups. In both cases the checksum of the file is verified against the lock. To avoid
+ * reading a local file on every build, successful verifications are recorded in a cache file owned by the build, keyed by the path, size and modification
+ * time of the file, and trusted until either changes. The local repository itself is never written to.
+ *
+ * Locked snapshots older than the freshness window are re-resolved against the declared version if the lock is writable, and the lock is updated. A
+ * read-only lock keeps pinning the locked version, and a warning is logged that the lock should be updated with the <code>fabric3Lock</code> task.
+ */
+public class ArtifactResolver {
+    /**
+     * The verified checksums cache relative to the root project directory.
+     */
+    public static final String VERIFIED_CACHE = ".gradle" + File.separator + "fabric3-cache" + File.separator + "verified-checksums";
+
+    private static final String VERIFIED_HEADER = "# Fabric3 verified artifact checksums. Generated by the Fabric3 plugins.";
+    private static final Logger LOGGER = Logging.getLogger(ArtifactResolver.class);
+
+    private RepositorySystem system;
+    private RepositorySystemSession session;
+    private List<RemoteRepository> repositories;
+    private ResolutionLock lock;
+    private long freshness;
+    private Map<File, String> checksums = new HashMap<>();
+    private File verifiedCache;
+    private Map<String, String> verified;
+
+    /**
+     * Constructor.
+     *
+     * @param system       the repository system
+     * @param session      the repository session
+     * @param repositories the remote repositories
+     * @param lock         the resolution lock
+     * @param freshness    the time in minutes a locked snapshot is used before it is checked for updates
+     */
+    public ArtifactResolver(RepositorySystem system,
+                            RepositorySystemSession session,
+                            List<RemoteRepository> repositories,
+                            ResolutionLock lock,
+                            long freshness) {
+        this(system, session, repositories, lock, freshness, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param system        the repository system
+     * @param session       the repository session
+     * @param repositories  the remote repositories
+     * @param lock          the resolution lock
+     * @param freshness     the time in minutes a locked snapshot is used before it is checked for updates
+     * @param verifiedCache the file recording verified checksums or null if local files are verified by each build
+     */
+    public ArtifactResolver(RepositorySystem system,
+                            RepositorySystemSession session,
+                            List<RemoteRepository> repositories,
+                            ResolutionLock lock,
+                            long freshness,
+                            File verifiedCache) {
+        this.system = system;
+        this.session = session;
+        this.repositories = repositories;
+        this.lock = lock;
+        this.freshness = TimeUnit.MINUTES.toMillis(freshness);
+        this.verifiedCache = verifiedCache;
+    }
+
+    /**
+     * Resolves an artifact.
+     *
+     * @param artifact the declared artifact
+     * @return the resolved artifact file
+     * @throws GradleException if the artifact cannot be resolved or does not match the lock
+     */
+    public File resolve(Artifact artifact) {
+        Operation operation = FlightRecorderEvents.resolve(artifact.toString());
+        File file = resolveFile(artifact);
+        operation.commit(file, file.length());
+        return file;
+    }
+
+    /**
+     * Returns the checksum of a resolved file if it was verified against the lock or calculated when the file was recorded in the lock.
+     *
+     * @param file the resolved file
+     * @return the {@link ResolutionLock#CHECKSUM_ALGORITHM} checksum or null if it is not known
+     */
+    public String getChecksum(File file) {
+        return checksums.get(file);
+    }
+
+    /**
+     * Returns the resolution lock.
+     *
+     * @return the resolution lock
+     */
+    public ResolutionLock getLock() {
+        return lock;
+    }
+
+    private File resolveFile(Artifact artifact) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        ResolutionLock.Entry entry = lock.getPinned(artifact, freshness);
+        if (entry != null) {
+            registry.counter(MetricNames.LOCK_HITS).increment();
+            if (lock.isStale(artifact, freshness)) {
+                LOGGER.warn("Fabric3: the locked version " + entry.getVersion() + " of " + ResolutionLock.getKey(artifact) + " is older than the snapshot "
+                            + "freshness and is still used. Run the fabric3Lock task to update " + ResolutionLock.LOCK_FILE + ".");
+            }
+            Artifact locked = artifact.setVersion(entry.getVersion());
+            File file = new File(session.getLocalRepository().getBasedir(), session.getLocalRepositoryManager().getPathForLocalArtifact(locked));
+            if (file.length() == entry.getSize()) {
+                // resolved without Aether
+                verify(file, entry, artifact);
+                registry.counter(MetricNames.ARTIFACTS_RESOLVED_LOCAL).increment();
+                registry.histogram(MetricNames.ARTIFACT_SIZE).record(entry.getSize());
+                return file;
+            }
+            File resolved = resolveArtifact(locked).getFile();
+            verify(resolved, entry, artifact);
+            registry.histogram(MetricNames.ARTIFACT_SIZE).record(resolved.length());
+            return resolved;
+        }
+        if (lock.isEnabled()) {
+            registry.counter(MetricNames.LOCK_MISSES).increment();
+        }
+        Artifact resolved = resolveArtifact(artifact);
+        registry.histogram(MetricNames.ARTIFACT_SIZE).record(resolved.getFile().length());
+        if (lock.isWritable()) {
+            String checksum = checksum(resolved.getFile());
+            checksums.put(resolved.getFile(), checksum);
+            lock.put(artifact, resolved, checksum, System.currentTimeMillis());
+        }
+        return resolved.getFile();
+    }
+
+    /**
+     * Verifies the checksum of a file against its lock entry unless the file was verified since it was last modified.
+     */
+    private void verify(File file, ResolutionLock.Entry entry, Artifact artifact) {
+        String expected = entry.getChecksum();
+        String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        if (expected.equals(getVerified().get(key))) {
+            checksums.put(file, expected);
+            return;
+        }
+        if (!expected.equals(checksum(file))) {
+            throw new GradleException("Checksum of " + file + " does not match " + ResolutionLock.LOCK_FILE + " for " + artifact
+                                      + ". Delete the file to resolve it again.");
+        }
+        checksums.put(file, expected);
+        if (verifiedCache != null) {
+            verified.put(key, expected);
+            try {
+                writeVerified();
+            } catch (IOException e) {
+                // the file is verified again by the next build
+                LOGGER.info("Fabric3: unable to write " + verifiedCache + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the verified checksums keyed by file path, size and modification time.
+     */
+    private Map<String, String> getVerified() {
+        if (verified == null) {
+            verified = new TreeMap<>();
+            if (verifiedCache != null && verifiedCache.isFile()) {
+                try {
+                    for (String line : Files.readAllLines(verifiedCache.toPath(), StandardCharsets.UTF_8)) {
+                        int separator = line.lastIndexOf('=');
+                        if (!line.startsWith("#") && separator > 0) {
+                            verified.put(line.substring(0, separator), line.substring(separator + 1));
+                        }
+                    }
+                } catch (IOException e) {
+                    // the files are verified again
+                    verified.clear();
+                }
+            }
+        }
+        return verified;
+    }
+
+    private void writeVerified() throws IOException {
+        verifiedCache.getParentFile().mkdirs();
+        File temp = FileSync.getTempFile(verifiedCache);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(VERIFIED_HEADER + "\n");
+            for (Map.Entry<String, String> entry : verified.entrySet()) {
+                // entries for files that were replaced or removed are dropped
+                String key = entry.getKey();
+                String path = key.substring(0, key.lastIndexOf('|', key.lastIndexOf('|') - 1));
+                if (new File(path).isFile()) {
+                    writer.write(key + "=" + entry.getValue() + "\n");
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        FileSync.commit(temp, verifiedCache);
+    }
+
+    private Artifact resolveArtifact(Artifact artifact) {
+        ArtifactRequest request = new ArtifactRequest();
+        request.setRepositories(repositories);
+        request.setArtifact(artifact);
+        try {
+            ArtifactResult result = system.resolveArtifact(session, request);
+            return result.getArtifact();
+        } catch (ArtifactResolutionException e) {
+            throw new GradleException(e.getMessage(), e);
+        }
+    }
+
+    private String checksum(File file) {
+        try {
+            return FileHelper.checksum(file, ResolutionLock.CHECKSUM_ALGORITHM);
+        } catch (IOException e) {
+            throw new GradleException(e.getMessage(), e);
+        }
+    }
+}
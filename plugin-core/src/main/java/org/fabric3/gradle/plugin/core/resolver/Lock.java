@@ -0,0 +1,93 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.resolver;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.fabric3.gradle.plugin.core.util.ProgressLoggerCompat;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.internal.service.ServiceRegistry;
+import org.gradle.logging.ProgressLogger;
+import org.gradle.logging.ProgressLoggerFactory;
+
+/**
+ * Resolves the artifacts declared in a plugin convention against the remote repositories and writes their exact versions and checksums to the project
+ * {@link ResolutionLock#LOCK_FILE}.
+ */
+public class Lock extends DefaultTask {
+    private ProgressLogger progressLogger;
+    private Callable<Collection<Artifact>> artifacts;
+
+    @Inject
+    public Lock(ProgressLoggerFactory progressLoggerFactory) {
+        this.progressLogger = progressLoggerFactory.newOperation("fabric3Lock");
+    }
+
+    /**
+     * Sets the source of artifacts to lock. The source is evaluated when the task executes so that the convention is fully configured.
+     *
+     * @param artifacts the artifact source
+     */
+    public void setArtifacts(Callable<Collection<Artifact>> artifacts) {
+        this.artifacts = artifacts;
+    }
+
+    @TaskAction
+    public void lock() {
+        ProgressLoggerCompat.setDescription(progressLogger, "Fabric3 lock");
+        ProgressLoggerCompat.setLoggingHeader(progressLogger, "Fabric3 lock");
+        progressLogger.started("STARTING");
+
+        Project project = getProject();
+        boolean offline = project.getGradle().getStartParameter().isOffline();
+        RepositorySystem system = AetherBootstrap.getRepositorySystem();
+        ServiceRegistry registry = getServices();
+        // always check the remote repositories for the latest snapshots when locking
+        DefaultRepositorySystemSession session = AetherBootstrap.getRepositorySystemSession(system, registry, offline, RepositoryPolicy.UPDATE_POLICY_ALWAYS);
+
+        File file = new File(project.getProjectDir(), ResolutionLock.LOCK_FILE);
+        ResolutionLock lock = ResolutionLock.create(file);
+        ArtifactResolver resolver = new ArtifactResolver(system, session, AetherBootstrap.getRepositories(registry), lock, 0,
+                                                         new File(getProject().getRootDir(), ArtifactResolver.VERIFIED_CACHE));
+        try {
+            for (Artifact artifact : artifacts.call()) {
+                progressLogger.progress("Locking " + artifact.toString());
+                resolver.resolve(artifact);
+            }
+            lock.save();
+        } catch (IOException e) {
+            throw new GradleException(e.getMessage(), e);
+        } catch (GradleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GradleException("Unable to determine artifacts to lock", e);
+        }
+        progressLogger.completed("COMPLETED");
+    }
+
+}
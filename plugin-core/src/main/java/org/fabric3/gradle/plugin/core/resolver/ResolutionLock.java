@@ -0,0 +1,265 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.resolver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * The contents of a <code>fabric3.lock</code> file, which pins each declared artifact to the exact version resolved by the <code>fabric3Lock</code> task.
+ *
+ * Entries are keyed by the declared coordinates and record the resolved (timestamped, in the case of snapshots) version, the SHA-1 checksum and size of the
+ * resolved file, and the time the entry was last checked against the remote repositories. Entries are written in key order so the file is stable under
+ * version control.
+ *
+ * Locks loaded by builds other than <code>fabric3Lock</code> are read-only unless updates are explicitly enabled, so ordinary builds do not rewrite the lock
+ * file kept under version control.
+ */
+public class ResolutionLock {
+    public static final String LOCK_FILE = "fabric3.lock";
+    public static final String CHECKSUM_ALGORITHM = "SHA-1";
+
+    private static final String HEADER = "# Fabric3 resolution lock. Generated by the fabric3Lock task.";
+
+    private File file;
+    private boolean enabled;
+    private boolean writable;
+    private boolean dirty;
+    private Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Loads the lock file as a read-only lock. If the file does not exist, the returned lock is disabled.
+     *
+     * @param file the lock file
+     * @return the lock
+     * @throws IOException if there is an error reading the file
+     */
+    public static ResolutionLock load(File file) throws IOException {
+        return load(file, false);
+    }
+
+    /**
+     * Loads the lock file. If the file does not exist, the returned lock is disabled and will not be written.
+     *
+     * @param file     the lock file
+     * @param writable true if resolutions recorded with {@link #put(Artifact, Artifact, String, long)} are written to the file when it is saved
+     * @return the lock
+     * @throws IOException if there is an error reading the file
+     */
+    public static ResolutionLock load(File file, boolean writable) throws IOException {
+        ResolutionLock lock = new ResolutionLock(file);
+        if (!file.exists()) {
+            return lock;
+        }
+        lock.enabled = true;
+        lock.writable = writable;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int pos = line.indexOf('=');
+                String[] values = pos < 0 ? new String[0] : line.substring(pos + 1).split("\\|");
+                if (values.length != 4) {
+                    throw new IOException("Invalid entry in " + file + ": " + line);
+                }
+                try {
+                    lock.entries.put(line.substring(0, pos), new Entry(values[0], values[1], Long.parseLong(values[2]), Long.parseLong(values[3])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid entry in " + file + ": " + line, e);
+                }
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Creates an empty, enabled lock that replaces the contents of the given file when saved.
+     *
+     * @param file the lock file
+     * @return the lock
+     */
+    public static ResolutionLock create(File file) {
+        ResolutionLock lock = new ResolutionLock(file);
+        lock.enabled = true;
+        lock.writable = true;
+        lock.dirty = true;
+        return lock;
+    }
+
+    /**
+     * Returns the key for an artifact, which is composed of the declared coordinates.
+     *
+     * @param artifact the artifact
+     * @return the key
+     */
+    public static String getKey(Artifact artifact) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(artifact.getGroupId()).append(':').append(artifact.getArtifactId()).append(':').append(artifact.getExtension());
+        if (artifact.getClassifier() != null && artifact.getClassifier().length() > 0) {
+            builder.append(':').append(artifact.getClassifier());
+        }
+        return builder.append(':').append(artifact.getVersion()).toString();
+    }
+
+    private ResolutionLock(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns true if the lock is backed by a lock file.
+     *
+     * @return true if the lock is backed by a lock file
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the lock records new resolutions.
+     *
+     * @return true if the lock records new resolutions
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Returns the locked entry for the declared artifact or null if the artifact is not locked.
+     *
+     * @param artifact the declared artifact
+     * @return the entry or null
+     */
+    public Entry get(Artifact artifact) {
+        return entries.get(getKey(artifact));
+    }
+
+    /**
+     * Returns the entry the declared artifact is pinned to or null if it must be resolved against the remote repositories. A stale snapshot entry is only
+     * released if the lock is writable and can be updated with the newly resolved version; a read-only lock keeps pinning it.
+     *
+     * @param artifact  the declared artifact
+     * @param freshness the time in milliseconds a locked snapshot is used before it is checked for updates
+     * @return the entry or null
+     */
+    public Entry getPinned(Artifact artifact, long freshness) {
+        if (writable && isStale(artifact, freshness)) {
+            return null;
+        }
+        return get(artifact);
+    }
+
+    /**
+     * Returns true if the declared artifact is a snapshot locked longer than the freshness window.
+     *
+     * @param artifact  the declared artifact
+     * @param freshness the time in milliseconds a locked snapshot is used before it is checked for updates
+     * @return true if the entry is stale
+     */
+    public boolean isStale(Artifact artifact, long freshness) {
+        Entry entry = get(artifact);
+        return entry != null && artifact.isSnapshot() && System.currentTimeMillis() - entry.getTimestamp() > freshness;
+    }
+
+    /**
+     * Records the resolution of a declared artifact.
+     *
+     * @param declared  the declared artifact
+     * @param resolved  the resolved artifact
+     * @param checksum  the checksum of the resolved file
+     * @param timestamp the time the artifact was checked against the remote repositories
+     * @throws IllegalStateException if the lock is not writable
+     */
+    public void put(Artifact declared, Artifact resolved, String checksum, long timestamp) {
+        if (!writable) {
+            throw new IllegalStateException("Lock is read-only: " + file);
+        }
+        entries.put(getKey(declared), new Entry(resolved.getVersion(), checksum, resolved.getFile().length(), timestamp));
+        dirty = true;
+    }
+
+    /**
+     * Writes the lock file if it is writable and has been modified.
+     *
+     * @throws IOException if there is an error writing the file
+     */
+    public void save() throws IOException {
+        if (!enabled || !writable || !dirty) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write("\n");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(entry.getKey() + "=" + value.getVersion() + "|" + value.getChecksum() + "|" + value.getSize() + "|" + value.getTimestamp() + "\n");
+            }
+        }
+        dirty = false;
+    }
+
+    /**
+     * A locked artifact.
+     */
+    public static class Entry {
+        private String version;
+        private String checksum;
+        private long size;
+        private long timestamp;
+
+        public Entry(String version, String checksum, long size, long timestamp) {
+            this.version = version;
+            this.checksum = checksum;
+            this.size = size;
+            this.timestamp = timestamp;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
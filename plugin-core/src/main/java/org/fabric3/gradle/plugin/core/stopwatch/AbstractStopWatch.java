@@ -1,7 +1,14 @@
 package org.fabric3.gradle.plugin.core.stopwatch;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,17 +20,39 @@ public abstract class AbstractStopWatch implements StopWatch {
     protected long start;
     protected Map<String[], Long> splits;
     protected long end;
+    protected Queue<Span> spans = new ConcurrentLinkedQueue<>();
+    protected boolean trackMemory;
+    protected MemorySample startSample;
+    protected Map<String[], MemorySample> samples;
+
+    private ThreadLocal<Deque<DefaultSpan>> current = new ThreadLocal<Deque<DefaultSpan>>() {
+        protected Deque<DefaultSpan> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
 
     public AbstractStopWatch(String id, TimeUnit unit) {
         this.id = id;
         this.unit = unit;
     }
 
+    /**
+     * Enables capturing allocated bytes, garbage collection and peak heap usage for each split.
+     *
+     * @param trackMemory true if memory should be tracked
+     */
+    public void setTrackMemory(boolean trackMemory) {
+        this.trackMemory = trackMemory;
+    }
+
     public void start() {
+        if (trackMemory) {
+            startSample = MemorySample.capture();
+        }
         start = System.nanoTime();
     }
 
-    public void split(String... markers) {
+    public synchronized void split(String... markers) {
         if (markers == null) {
             throw new IllegalArgumentException("A marker must be specified");
         }
@@ -32,17 +61,43 @@ public abstract class AbstractStopWatch implements StopWatch {
             splits = new LinkedHashMap<>();
         }
         splits.put(markers, now);
+        if (trackMemory) {
+            if (samples == null) {
+                samples = new LinkedHashMap<>();
+            }
+            samples.put(markers, MemorySample.capture());
+        }
+    }
+
+    public Span span(String name) {
+        Deque<DefaultSpan> stack = current.get();
+        // discard spans closed on another thread
+        while (!stack.isEmpty() && stack.peek().isClosed()) {
+            stack.pop();
+        }
+        return open(stack.peek(), name);
+    }
+
+    public Span span(Span parent, String name) {
+        return open(parent instanceof DefaultSpan ? (DefaultSpan) parent : null, name);
     }
 
     public void stop() {
         end = System.nanoTime();
     }
 
+    public long getStartTime() {
+        return start;
+    }
+
     public long getTotalTime() {
         return unit.convert(end - start, TimeUnit.NANOSECONDS);
     }
 
-    public Map<String[], Long> getSplits() {
+    public synchronized Map<String[], Long> getSplits() {
+        if (splits == null) {
+            return Collections.emptyMap();
+        }
         Map<String[], Long> calculated = new LinkedHashMap<String[], Long>(splits.size());
         for (Map.Entry<String[], Long> entry : splits.entrySet()) {
             calculated.put(entry.getKey(), entry.getValue() - start);
@@ -50,4 +105,45 @@ public abstract class AbstractStopWatch implements StopWatch {
         return calculated;
     }
 
+    public synchronized Map<String[], MemorySample> getMemory() {
+        if (samples == null || startSample == null) {
+            return Collections.emptyMap();
+        }
+        Map<String[], MemorySample> calculated = new LinkedHashMap<>(samples.size());
+        MemorySample previous = startSample;
+        for (Map.Entry<String[], MemorySample> entry : samples.entrySet()) {
+            calculated.put(entry.getKey(), entry.getValue().since(previous));
+            previous = entry.getValue();
+        }
+        return calculated;
+    }
+
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Callback when a span is closed.
+     *
+     * @param span the span
+     */
+    void closed(DefaultSpan span) {
+        Deque<DefaultSpan> stack = current.get();
+        stack.remove(span);
+        if (stack.isEmpty()) {
+            current.remove();
+        }
+    }
+
+    private Span open(DefaultSpan parent, String name) {
+        DefaultSpan span = new DefaultSpan(this, name, parent);
+        if (parent == null) {
+            spans.add(span);
+        } else {
+            parent.addChild(span);
+        }
+        current.get().push(span);
+        return span;
+    }
+
 }
@@ -0,0 +1,95 @@
+package org.fabric3.gradle.plugin.core.stopwatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Default span implementation. Children may be added concurrently from multiple threads.
+ */
+class DefaultSpan implements Span {
+    private AbstractStopWatch stopWatch;
+    private String name;
+    private String threadName;
+    private DefaultSpan parent;
+    private Queue<Span> children = new ConcurrentLinkedQueue<>();
+    private Map<String, Long> counters = new ConcurrentHashMap<>();
+    private long start;
+    private volatile long end = -1;
+
+    DefaultSpan(AbstractStopWatch stopWatch, String name, DefaultSpan parent) {
+        this.stopWatch = stopWatch;
+        this.name = name;
+        this.parent = parent;
+        this.threadName = Thread.currentThread().getName();
+        this.start = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    public List<Span> getChildren() {
+        return new ArrayList<>(children);
+    }
+
+    public long getStartTime() {
+        return start;
+    }
+
+    public long getEndTime() {
+        return end;
+    }
+
+    public long getTotalTime() {
+        long current = end;
+        return (current == -1 ? System.nanoTime() : current) - start;
+    }
+
+    public long getSelfTime() {
+        long self = getTotalTime();
+        for (Span child : children) {
+            if (threadName.equals(child.getThreadName())) {
+                self -= child.getTotalTime();
+            }
+        }
+        return Math.max(self, 0);
+    }
+
+    public void add(String counter, long delta) {
+        counters.merge(counter, delta, Long::sum);
+    }
+
+    public Map<String, Long> getCounters() {
+        return new LinkedHashMap<>(counters);
+    }
+
+    public void close() {
+        if (end != -1) {
+            return;
+        }
+        end = System.nanoTime();
+        stopWatch.closed(this);
+    }
+
+    boolean isClosed() {
+        return end != -1;
+    }
+
+    void addChild(Span child) {
+        children.add(child);
+    }
+
+}
@@ -0,0 +1,194 @@
+package org.fabric3.gradle.plugin.core.stopwatch;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * The memory cost of a stopwatch split: bytes allocated by the splitting thread, garbage collections and their accumulated time, and the JVM-wide peak heap
+ * usage.
+ *
+ * Allocated bytes are only available on JVMs that support per-thread allocation accounting and when consecutive samples are taken on the same thread;
+ * otherwise they are reported as -1. Collection counts and times are JVM-wide and therefore include the work of tasks running in parallel.
+ *
+ * The peak heap of a split is derived from garbage collection notifications, so the peak usage of the JVM memory pools is never reset. Heap usage only
+ * decreases during a collection, so the peak between two samples is the larger of the heap used at either sample and the heap used before each collection
+ * in between. On JVMs that do not emit collection notifications, only the heap used at the samples is considered.
+ */
+public class MemorySample {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // the heap used before recent collections keyed by a collection sequence number
+    private static final NavigableMap<Long, Long> COLLECTIONS = new ConcurrentSkipListMap<>();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final int MAX_COLLECTIONS = 4096;
+
+    static {
+        listenForCollections();
+    }
+
+    private long threadId;
+    private long sequence;
+    private long heapUsed;
+    private long allocatedBytes;
+    private long gcCount;
+    private long gcTime;
+    private long peakHeap;
+
+    /**
+     * Captures the current memory counters.
+     *
+     * @return the sample
+     */
+    public static MemorySample capture() {
+        long threadId = Thread.currentThread().getId();
+        long allocated = -1;
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                allocated = threads.getThreadAllocatedBytes(threadId);
+            }
+        }
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        long sequence = SEQUENCE.get();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        MemorySample sample = new MemorySample(threadId, allocated, count, time, used);
+        sample.sequence = sequence;
+        sample.heapUsed = used;
+        return sample;
+    }
+
+    private MemorySample(long threadId, long allocatedBytes, long gcCount, long gcTime, long peakHeap) {
+        this.threadId = threadId;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTime = gcTime;
+        this.peakHeap = peakHeap;
+    }
+
+    /**
+     * Returns the cost incurred between a previous sample and this one. The peak heap of the returned sample is the peak since the previous sample.
+     *
+     * @param previous the previous sample
+     * @return the difference
+     */
+    public MemorySample since(MemorySample previous) {
+        long allocated = -1;
+        if (threadId == previous.threadId && allocatedBytes >= 0 && previous.allocatedBytes >= 0) {
+            allocated = allocatedBytes - previous.allocatedBytes;
+        }
+        long peak = Math.max(heapUsed, previous.heapUsed);
+        for (long beforeCollection : COLLECTIONS.subMap(previous.sequence, false, sequence, true).values()) {
+            peak = Math.max(peak, beforeCollection);
+        }
+        MemorySample difference = new MemorySample(threadId, allocated, gcCount - previous.gcCount, gcTime - previous.gcTime, peak);
+        difference.sequence = sequence;
+        difference.heapUsed = heapUsed;
+        return difference;
+    }
+
+    /**
+     * Returns the bytes allocated by the thread or -1 if not available.
+     *
+     * @return the allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the number of garbage collections.
+     *
+     * @return the number of garbage collections
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * Returns the accumulated garbage collection time in milliseconds.
+     *
+     * @return the garbage collection time
+     */
+    public long getGcTime() {
+        return gcTime;
+    }
+
+    /**
+     * Returns the peak heap usage in bytes since the previous sample, or the heap used when the sample was captured.
+     *
+     * @return the peak heap usage
+     */
+    public long getPeakHeap() {
+        return peakHeap;
+    }
+
+    public String toString() {
+        String allocated = allocatedBytes < 0 ? "n/a" : megabytes(allocatedBytes);
+        return "allocated=" + allocated + " gc=" + gcCount + "/" + gcTime + "ms peakHeap=" + megabytes(peakHeap);
+    }
+
+    /**
+     * Records the heap used before each garbage collection. Registration is skipped if the JVM does not provide collection notifications.
+     */
+    private static void listenForCollections() {
+        try {
+            final Set<String> heapPools = new HashSet<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            NotificationListener listener = new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long used = 0;
+                    for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                        if (heapPools.contains(entry.getKey())) {
+                            used += entry.getValue().getUsed();
+                        }
+                    }
+                    COLLECTIONS.put(SEQUENCE.incrementAndGet(), used);
+                    if (COLLECTIONS.size() > MAX_COLLECTIONS) {
+                        COLLECTIONS.pollFirstEntry();
+                    }
+                }
+            };
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+                }
+            }
+        } catch (LinkageError e) {
+            // collection notifications are not supported by the JVM
+        }
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024d * 1024d));
+    }
+}
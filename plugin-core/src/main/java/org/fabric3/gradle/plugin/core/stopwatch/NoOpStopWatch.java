@@ -1,11 +1,14 @@
 package org.fabric3.gradle.plugin.core.stopwatch;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A no-op stopwatch intended for use in production systems or when performance metrics are turned off. Method calls should be optimized away by the JIT.
  */
 public class NoOpStopWatch implements StopWatch {
+    private static final Span NO_OP_SPAN = new NoOpSpan();
 
     public void start() {
 
@@ -15,19 +18,86 @@ public class NoOpStopWatch implements StopWatch {
 
     }
 
+    public Span span(String name) {
+        return NO_OP_SPAN;
+    }
+
+    public Span span(Span parent, String name) {
+        return NO_OP_SPAN;
+    }
+
     public void stop() {
 
     }
 
+    public long getStartTime() {
+        return 0;
+    }
+
     public long getTotalTime() {
         return 0;
     }
 
+    public Map<String[], MemorySample> getMemory() {
+        return Collections.emptyMap();
+    }
+
     public Map<String[], Long> getSplits() {
         return null;
     }
 
+    public List<Span> getSpans() {
+        return Collections.emptyList();
+    }
+
     public void flush() {
 
     }
+
+    private static class NoOpSpan implements Span {
+
+        public String getName() {
+            return "";
+        }
+
+        public String getThreadName() {
+            return "";
+        }
+
+        public Span getParent() {
+            return null;
+        }
+
+        public List<Span> getChildren() {
+            return Collections.emptyList();
+        }
+
+        public long getStartTime() {
+            return 0;
+        }
+
+        public long getEndTime() {
+            return 0;
+        }
+
+        public long getTotalTime() {
+            return 0;
+        }
+
+        public long getSelfTime() {
+            return 0;
+        }
+
+        public void add(String counter, long delta) {
+
+        }
+
+        public Map<String, Long> getCounters() {
+            return Collections.emptyMap();
+        }
+
+        public void close() {
+
+        }
+    }
 }
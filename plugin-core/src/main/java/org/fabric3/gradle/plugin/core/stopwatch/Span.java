@@ -0,0 +1,100 @@
+package org.fabric3.gradle.plugin.core.stopwatch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A timed region of work recorded by a {@link StopWatch}. Spans nest: a span opened while another span is open on the same thread becomes its child. Spans
+ * may also be opened on worker threads under an explicit parent.
+ *
+ * Spans are closed by calling {@link #close()}, typically using try-with-resources. Times are reported in nanoseconds.
+ */
+public interface Span extends AutoCloseable {
+
+    /**
+     * Counter for the number of bytes processed.
+     */
+    String BYTES = "bytes";
+
+    /**
+     * Counter for the number of artifacts processed.
+     */
+    String ARTIFACTS = "artifacts";
+
+    /**
+     * Returns the span name.
+     *
+     * @return the span name
+     */
+    String getName();
+
+    /**
+     * Returns the name of the thread the span was opened on.
+     *
+     * @return the thread name
+     */
+    String getThreadName();
+
+    /**
+     * Returns the parent span or null if this is a root span.
+     *
+     * @return the parent span or null
+     */
+    Span getParent();
+
+    /**
+     * Returns a snapshot of the child spans in the order they were opened.
+     *
+     * @return the child spans
+     */
+    List<Span> getChildren();
+
+    /**
+     * Returns the value of {@link System#nanoTime()} when the span was opened.
+     *
+     * @return the start time
+     */
+    long getStartTime();
+
+    /**
+     * Returns the value of {@link System#nanoTime()} when the span was closed or -1 if it is open.
+     *
+     * @return the end time
+     */
+    long getEndTime();
+
+    /**
+     * Returns the elapsed time of the span including its children. If the span is open, the time elapsed so far is returned.
+     *
+     * @return the total time
+     */
+    long getTotalTime();
+
+    /**
+     * Returns the total time minus the time spent in children opened on the same thread. Children running concurrently on other threads do not reduce the
+     * self time.
+     *
+     * @return the self time
+     */
+    long getSelfTime();
+
+    /**
+     * Adds to a counter associated with the span such as {@link #BYTES}. May be called from any thread.
+     *
+     * @param counter the counter name
+     * @param delta   the amount to add
+     */
+    void add(String counter, long delta);
+
+    /**
+     * Returns a snapshot of the counters recorded directly on this span, excluding children.
+     *
+     * @return the counters
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Closes the span.
+     */
+    void close();
+}
@@ -0,0 +1,128 @@
+package org.fabric3.gradle.plugin.core.stopwatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates sibling spans with the same name opened on the same thread, such as one span per resolved artifact, into a single node. Counters are inclusive
+ * of all descendants.
+ */
+public class SpanSummary {
+    private String name;
+    private String threadName;
+    private int count;
+    private long totalTime;
+    private long selfTime;
+    private Map<String, Long> counters = new LinkedHashMap<>();
+    private List<SpanSummary> children;
+
+    /**
+     * Summarizes a list of sibling spans.
+     *
+     * @param spans the spans
+     * @return the summaries in the order the first span of each group was opened
+     */
+    public static List<SpanSummary> summarize(List<Span> spans) {
+        Map<String, List<Span>> groups = new LinkedHashMap<>();
+        for (Span span : spans) {
+            String key = span.getName() + "\u0000" + span.getThreadName();
+            List<Span> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(span);
+        }
+        List<SpanSummary> summaries = new ArrayList<>(groups.size());
+        for (List<Span> group : groups.values()) {
+            summaries.add(new SpanSummary(group));
+        }
+        return summaries;
+    }
+
+    private SpanSummary(List<Span> group) {
+        Span first = group.get(0);
+        name = first.getName();
+        threadName = first.getThreadName();
+        count = group.size();
+        List<Span> descendants = new ArrayList<>();
+        for (Span span : group) {
+            totalTime += span.getTotalTime();
+            selfTime += span.getSelfTime();
+            add(span.getCounters());
+            descendants.addAll(span.getChildren());
+        }
+        children = summarize(descendants);
+        for (SpanSummary child : children) {
+            add(child.getCounters());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the number of spans merged into this summary.
+     *
+     * @return the number of spans
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the summed total time in nanoseconds.
+     *
+     * @return the total time
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Returns the summed self time in nanoseconds.
+     *
+     * @return the self time
+     */
+    public long getSelfTime() {
+        return selfTime;
+    }
+
+    /**
+     * Returns the counters, including those of descendants.
+     *
+     * @return the counters
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Returns the counter value or 0 if it was not recorded.
+     *
+     * @param counter the counter name
+     * @return the value
+     */
+    public long getCounter(String counter) {
+        Long value = counters.get(counter);
+        return value == null ? 0 : value;
+    }
+
+    public List<SpanSummary> getChildren() {
+        return children;
+    }
+
+    private void add(Map<String, Long> values) {
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            counters.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    }
+
+}
@@ -1,11 +1,12 @@
 package org.fabric3.gradle.plugin.core.stopwatch;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * A stopwatch that measures elapsed time.
  *
- * Note implementations are not thread-safe.
+ * Splits and spans may be recorded from multiple threads. {@link #start()}, {@link #stop()} and {@link #flush()} must be called from a single thread.
  */
 public interface StopWatch {
 
@@ -22,11 +23,35 @@ public interface StopWatch {
      */
     void split(String... markers);
 
+    /**
+     * Opens a span. If a span is open on the current thread, the new span becomes its child; otherwise it is a root span.
+     *
+     * @param name the span name
+     * @return the span, which must be closed when the measured work completes
+     */
+    Span span(String name);
+
+    /**
+     * Opens a span as a child of the given parent. Used to attach work performed on a worker thread to a span opened on another thread.
+     *
+     * @param parent the parent span or null to open a root span
+     * @param name   the span name
+     * @return the span, which must be closed when the measured work completes
+     */
+    Span span(Span parent, String name);
+
     /**
      * Stops recording elapsed time.
      */
     void stop();
 
+    /**
+     * Returns the value of {@link System#nanoTime()} when {@link #start()} was called.
+     *
+     * @return the start time
+     */
+    long getStartTime();
+
     /**
      * Returns the total elapsed time after {@link #stop()} has been called.
      *
@@ -41,6 +66,21 @@ public interface StopWatch {
      */
     Map<String[], Long> getSplits();
 
+    /**
+     * Returns the memory cost of each split, measured from the previous split or the start of the stopwatch. The map is empty if memory tracking is not
+     * enabled.
+     *
+     * @return the map of splits with the key the markers and the value the memory cost
+     */
+    Map<String[], MemorySample> getMemory();
+
+    /**
+     * Returns the root spans in the order they were opened.
+     *
+     * @return the root spans
+     */
+    List<Span> getSpans();
+
     /**
      * Outputs timings to a destination such as the console or log file.
      */
@@ -1,12 +1,15 @@
 package org.fabric3.gradle.plugin.core.stopwatch;
 
 import java.io.PrintStream;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
  * A stopwatch that sends timing measurements to an output stream.
  *
+ * Spans are rendered as a tree, with sibling spans merged as described in {@link SpanSummary}.
+ *
  * Note that this implementation does not close the provided stream; clients are responsible for closing the stream.
  */
 public class StreamStopWatch extends AbstractStopWatch {
@@ -26,12 +29,12 @@ public class StreamStopWatch extends AbstractStopWatch {
         }
         builder.append("Total time: ").append(getTotalTime()).append("\n");
         if (splits != null && !splits.isEmpty()) {
-
+            Map<String[], MemorySample> memory = getMemory();
             for (Map.Entry<String[], Long> entry : getSplits().entrySet()) {
                 String[] markers = entry.getKey();
                 long elapsed = unit.convert(entry.getValue(), TimeUnit.NANOSECONDS);
                 if (markers.length == 1) {
-                    builder.append("  ").append(markers[0]).append(":").append(elapsed).append("\n");
+                    builder.append("  ").append(markers[0]).append(":").append(elapsed);
                 } else {
                     builder.append("  ");
                     for (String marker : markers) {
@@ -39,10 +42,39 @@ public class StreamStopWatch extends AbstractStopWatch {
                     }
                     builder.append(":").append(elapsed);
                 }
+                MemorySample sample = memory.get(markers);
+                if (sample != null) {
+                    builder.append(" ").append(sample);
+                }
+                builder.append("\n");
 
             }
         }
+        if (!spans.isEmpty()) {
+            builder.append("Spans (total/self):\n");
+            render(SpanSummary.summarize(getSpans()), 1, builder);
+        }
         stream.println(builder.toString());
     }
 
+    private void render(List<SpanSummary> summaries, int depth, StringBuilder builder) {
+        for (SpanSummary summary : summaries) {
+            for (int i = 0; i < depth; i++) {
+                builder.append("  ");
+            }
+            builder.append(summary.getName());
+            if (summary.getCount() > 1) {
+                builder.append(" (x").append(summary.getCount()).append(")");
+            }
+            builder.append(" [").append(summary.getThreadName()).append("]: ");
+            builder.append(unit.convert(summary.getTotalTime(), TimeUnit.NANOSECONDS)).append("/");
+            builder.append(unit.convert(summary.getSelfTime(), TimeUnit.NANOSECONDS));
+            for (Map.Entry<String, Long> entry : summary.getCounters().entrySet()) {
+                builder.append(" ").append(entry.getKey()).append("=").append(entry.getValue());
+            }
+            builder.append("\n");
+            render(summary.getChildren(), depth + 1, builder);
+        }
+    }
+
 }
@@ -0,0 +1,171 @@
+package org.fabric3.gradle.plugin.core.stopwatch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.fabric3.gradle.plugin.core.util.JsonHelper.quote;
+
+/**
+ * Exports spans and splits recorded by stopwatches as Chrome trace-event JSON, which can be opened in <code>chrome://tracing</code> or Perfetto.
+ *
+ * Each stopwatch is added under a process name, typically the project path, so that the output contains one process track per project and one thread track
+ * per thread within it. Spans become complete (<code>X</code>) events carrying their counters as arguments; splits become instant (<code>i</code>) events
+ * on the thread that opened the first root span, with their memory cost as arguments when tracked. Timestamps are relative to the earliest recorded start
+ * so stopwatches from concurrently executing tasks in the same JVM line up.
+ */
+public class TraceEventExporter {
+    private Map<String, Integer> processes = new LinkedHashMap<>();
+    private Map<String, Integer> threads = new LinkedHashMap<>();
+    private List<Event> events = new ArrayList<>();
+    private long base = Long.MAX_VALUE;
+
+    /**
+     * Adds the spans and splits recorded by a stopwatch.
+     *
+     * @param process   the process track name
+     * @param task      the task the stopwatch measured, added to each event as an argument
+     * @param stopWatch the stopwatch
+     */
+    public synchronized void add(String process, String task, StopWatch stopWatch) {
+        int pid = id(processes, process);
+        List<Span> spans = stopWatch.getSpans();
+        for (Span span : spans) {
+            add(process, pid, task, span);
+        }
+        Map<String[], Long> splits = stopWatch.getSplits();
+        if (!spans.isEmpty()) {
+            Map<String[], MemorySample> memory = stopWatch.getMemory();
+            int tid = id(threads, process + "\u0000" + spans.get(0).getThreadName());
+            for (Map.Entry<String[], Long> entry : splits.entrySet()) {
+                long time = stopWatch.getStartTime() + entry.getValue();
+                MemorySample sample = memory.get(entry.getKey());
+                Map<String, Long> args = null;
+                if (sample != null) {
+                    args = new LinkedHashMap<>();
+                    args.put("allocatedBytes", sample.getAllocatedBytes());
+                    args.put("gcCount", sample.getGcCount());
+                    args.put("gcTimeMs", sample.getGcTime());
+                    args.put("peakHeapBytes", sample.getPeakHeap());
+                }
+                events.add(new Event("i", String.join(" ", entry.getKey()), pid, tid, time, 0, task, args));
+            }
+        }
+    }
+
+    /**
+     * Returns true if no events have been added.
+     *
+     * @return true if no events have been added
+     */
+    public synchronized boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    /**
+     * Writes the trace file.
+     *
+     * @param file the file
+     * @throws IOException if there is an error writing the file
+     */
+    public synchronized void write(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [\n");
+            String separator = "";
+            for (Map.Entry<String, Integer> entry : processes.entrySet()) {
+                writer.write(separator);
+                writer.write("{\"ph\": \"M\", \"name\": \"process_name\", \"pid\": " + entry.getValue() + ", \"args\": {\"name\": " + quote(entry.getKey()) + "}}");
+                separator = ",\n";
+            }
+            for (Map.Entry<String, Integer> entry : threads.entrySet()) {
+                String[] key = entry.getKey().split("\u0000", 2);
+                writer.write(separator);
+                writer.write("{\"ph\": \"M\", \"name\": \"thread_name\", \"pid\": " + processes.get(key[0]) + ", \"tid\": " + entry.getValue()
+                             + ", \"args\": {\"name\": " + quote(key[1]) + "}}");
+                separator = ",\n";
+            }
+            for (Event event : events) {
+                writer.write(separator);
+                writer.write(event.toJson(base));
+                separator = ",\n";
+            }
+            writer.write("\n]}\n");
+        }
+    }
+
+    private void add(String process, int pid, String task, Span span) {
+        int tid = id(threads, process + "\u0000" + span.getThreadName());
+        long end = span.getEndTime() == -1 ? System.nanoTime() : span.getEndTime();
+        events.add(new Event("X", span.getName(), pid, tid, span.getStartTime(), end - span.getStartTime(), task, span.getCounters()));
+        for (Span child : span.getChildren()) {
+            add(process, pid, task, child);
+        }
+    }
+
+    private int id(Map<String, Integer> ids, String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size() + 1;
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    private class Event {
+        private String phase;
+        private String name;
+        private int pid;
+        private int tid;
+        private long start;
+        private long duration;
+        private String task;
+        private Map<String, Long> counters;
+
+        private Event(String phase, String name, int pid, int tid, long start, long duration, String task, Map<String, Long> counters) {
+            this.phase = phase;
+            this.name = name;
+            this.pid = pid;
+            this.tid = tid;
+            this.start = start;
+            this.duration = duration;
+            this.task = task;
+            this.counters = counters;
+            base = Math.min(base, start);
+        }
+
+        private String toJson(long base) {
+            StringBuilder builder = new StringBuilder("{\"ph\": \"").append(phase).append("\", \"name\": ").append(quote(name));
+            builder.append(", \"pid\": ").append(pid).append(", \"tid\": ").append(tid);
+            builder.append(", \"ts\": ").append(micros(start - base));
+            if ("X".equals(phase)) {
+                builder.append(", \"dur\": ").append(micros(duration));
+            } else {
+                builder.append(", \"s\": \"t\"");
+            }
+            builder.append(", \"args\": {\"task\": ").append(quote(task));
+            if (counters != null) {
+                for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                    builder.append(", ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+                }
+            }
+            return builder.append("}}").toString();
+        }
+
+        private String micros(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", nanos / 1000d);
+        }
+    }
+}
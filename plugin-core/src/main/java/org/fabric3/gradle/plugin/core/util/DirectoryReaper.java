@@ -0,0 +1,253 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Deletes stale directories in the background so the build does not wait for large trees to be removed.
+ *
+ * A discarded directory is atomically renamed into a trash directory, which must be on the same file system, and then deleted on a shared pool of daemon
+ * threads. Subdirectories near the top of the tree are deleted in parallel and deeper subtrees are deleted by walking them. Deletion does not block the JVM
+ * from exiting, so directories left in the trash by an earlier build are deleted when {@link #resume()} is called.
+ */
+public class DirectoryReaper {
+    /**
+     * The trash directory relative to the project build directory.
+     */
+    public static final String TRASH_DIRECTORY = "fabric3" + File.separator + "trash";
+
+    /**
+     * The depth up to which subdirectories are deleted as separate tasks.
+     */
+    private static final int FORK_DEPTH = 3;
+
+    private static final Logger LOGGER = Logging.getLogger(DirectoryReaper.class);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    // trash entries being deleted by this JVM, as the plugin classes are shared by builds run in the same daemon
+    private static final Set<Path> SCHEDULED = ConcurrentHashMap.newKeySet();
+
+    private Path trash;
+
+    /**
+     * Constructor.
+     *
+     * @param trash the trash directory
+     */
+    public DirectoryReaper(File trash) {
+        this.trash = trash.toPath().toAbsolutePath();
+    }
+
+    /**
+     * Returns the reaper for a project build directory.
+     *
+     * @param buildDir the build directory
+     * @return the reaper
+     */
+    public static DirectoryReaper forBuildDir(File buildDir) {
+        return new DirectoryReaper(new File(buildDir, TRASH_DIRECTORY));
+    }
+
+    /**
+     * Removes a directory. The directory no longer exists when this method returns, although its contents may still be being deleted. If the directory cannot
+     * be renamed into the trash, it is deleted before returning.
+     *
+     * @param directory the directory
+     * @throws IOException if there is an error renaming or deleting the directory
+     */
+    public void discard(File directory) throws IOException {
+        Path source = directory.toPath();
+        if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Operation operation = FlightRecorderEvents.delete(directory.getPath());
+        Files.createDirectories(trash);
+        Path target = trash.resolve(directory.getName() + "-" + Long.toString(System.nanoTime(), 36));
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // the trash is on a different file system
+            delete(source);
+            operation.commit(directory, 0);
+            return;
+        }
+        operation.commit(directory, 0);
+        schedule(target);
+    }
+
+    /**
+     * Empties a directory, leaving it in place.
+     *
+     * @param directory the directory
+     * @throws IOException if there is an error renaming or deleting the directory
+     */
+    public void clean(File directory) throws IOException {
+        discard(directory);
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+    }
+
+    /**
+     * Schedules the deletion of directories left in the trash by builds that exited before they were deleted.
+     *
+     * @throws IOException if there is an error listing the trash
+     */
+    public void resume() throws IOException {
+        if (!Files.isDirectory(trash)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(trash)) {
+            for (Path entry : stream) {
+                schedule(entry);
+            }
+        }
+    }
+
+    private void schedule(final Path entry) {
+        if (!SCHEDULED.add(entry)) {
+            return;
+        }
+        POOL.execute(new ScheduledDelete(entry));
+    }
+
+    /**
+     * Deletes a tree on the pool and waits for the deletion to complete.
+     */
+    private void delete(Path path) throws IOException {
+        DeleteTask task = new DeleteTask(path, 0);
+        POOL.invoke(task);
+        if (task.failure != null) {
+            throw task.failure;
+        }
+    }
+
+    /**
+     * Deletes a trash entry in the background and releases it so a later build can resume its deletion if it fails.
+     */
+    private static class ScheduledDelete extends RecursiveAction {
+        private static final long serialVersionUID = 2473419520468937381L;
+
+        private transient Path entry;
+
+        public ScheduledDelete(Path entry) {
+            this.entry = entry;
+        }
+
+        protected void compute() {
+            try {
+                DeleteTask task = new DeleteTask(entry, 0);
+                task.invoke();
+                if (task.failure != null) {
+                    LOGGER.warn("Fabric3: unable to delete " + entry + ", it is deleted again by the next build: " + task.failure);
+                }
+            } finally {
+                SCHEDULED.remove(entry);
+            }
+        }
+    }
+
+    private static class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = -5863307528314785482L;
+
+        private transient Path path;
+        private int depth;
+        private IOException failure;
+
+        public DeleteTask(Path path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+        protected void compute() {
+            try {
+                if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(path);
+                } else if (depth >= FORK_DEPTH) {
+                    walk(path);
+                } else {
+                    deleteChildren();
+                }
+            } catch (IOException e) {
+                // the entry remains in the trash and is deleted by the next build that resumes
+                failure = e;
+            }
+        }
+
+        private void deleteChildren() throws IOException {
+            List<DeleteTask> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DeleteTask(child, depth + 1));
+                    } else {
+                        Files.deleteIfExists(child);
+                    }
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+            for (DeleteTask task : tasks) {
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+            }
+            Files.deleteIfExists(path);
+        }
+
+        private void walk(Path root) throws IOException {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    if (e != null) {
+                        throw e;
+                    }
+                    Files.deleteIfExists(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+}
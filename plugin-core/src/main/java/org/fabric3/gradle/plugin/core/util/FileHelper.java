@@ -29,10 +29,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.fabric3.gradle.plugin.core.jfr.FlightRecorderEvents;
+import org.fabric3.gradle.plugin.core.jfr.Operation;
+import org.fabric3.gradle.plugin.core.metrics.MetricNames;
+import org.fabric3.gradle.plugin.core.metrics.MetricsRegistry;
+
 /**
  * Helper methods for working with files.
  */
@@ -47,9 +54,13 @@ public class FileHelper {
      *
      * @param source      the zip file
      * @param destination the target directory
+     * @return the number of bytes extracted
      * @throws IOException if there is an error during extraction
      */
-    public static void extract(File source, File destination) throws IOException {
+    public static long extract(File source, File destination) throws IOException {
+        Operation operation = FlightRecorderEvents.extract(source);
+        long start = System.nanoTime();
+        long bytes = 0;
         ZipFile zipfile;
         zipfile = new ZipFile(source);
         Enumeration enumeration = zipfile.entries();
@@ -66,18 +77,39 @@ public class FileHelper {
                 File outputFile = new File(destination, name);
                 try (InputStream sourceStream = new BufferedInputStream(zipfile.getInputStream(entry));
                      OutputStream targetStream = new BufferedOutputStream(new FileOutputStream(outputFile), FileHelper.BUFFER)) {
-                    FileHelper.copy(sourceStream, targetStream);
+                    bytes += FileHelper.copy(sourceStream, targetStream);
                     targetStream.flush();
                 }
             }
         }
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.counter(MetricNames.BYTES_EXTRACTED).add(bytes);
+        registry.histogram(MetricNames.IO_TIME).record(System.nanoTime() - start);
+        operation.commit(destination, bytes);
+        return bytes;
     }
 
-    public static void copy(File source, File target) throws IOException {
+    /**
+     * Copies a file.
+     *
+     * @param source the source file
+     * @param target the target file
+     * @return the number of bytes copied
+     * @throws IOException if there is an error copying the file
+     */
+    public static long copy(File source, File target) throws IOException {
+        Operation operation = FlightRecorderEvents.copy(source);
+        long start = System.nanoTime();
+        long bytes;
         try (InputStream sourceStream = new BufferedInputStream(new FileInputStream(source));
              OutputStream targetStream = new BufferedOutputStream(new FileOutputStream(target))) {
-            copy(sourceStream, targetStream);
+            bytes = copy(sourceStream, targetStream);
         }
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.counter(MetricNames.BYTES_COPIED).add(bytes);
+        registry.histogram(MetricNames.IO_TIME).record(System.nanoTime() - start);
+        operation.commit(target, bytes);
+        return bytes;
     }
 
     public static int copy(InputStream input, OutputStream output) throws IOException {
@@ -91,6 +123,57 @@ public class FileHelper {
         return count;
     }
 
+    /**
+     * Calculates the digest of a file's contents.
+     *
+     * @param file      the file
+     * @param algorithm the digest algorithm, e.g. SHA-1
+     * @return the digest as a lowercase hex string
+     * @throws IOException if there is an error reading the file
+     */
+    public static String checksum(File file, String algorithm) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            return checksum(stream, algorithm);
+        }
+    }
+
+    /**
+     * Calculates the digest of the remaining contents of a stream. The stream is not closed.
+     *
+     * @param stream    the stream
+     * @param algorithm the digest algorithm, e.g. SHA-1
+     * @return the digest as a lowercase hex string
+     * @throws IOException if there is an error reading the stream
+     */
+    public static String checksum(InputStream stream, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+        byte[] buffer = new byte[BUFFER * 4];
+        int n;
+        while (-1 != (n = stream.read(buffer))) {
+            digest.update(buffer, 0, n);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Converts bytes to a lowercase hex string.
+     *
+     * @param bytes the bytes
+     * @return the hex string
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
     /**
      * Delete a file. If file is a directory, delete it and all sub-directories.
      *
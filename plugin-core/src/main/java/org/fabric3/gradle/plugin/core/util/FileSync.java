@@ -0,0 +1,248 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Helper methods for replacing files that may be read while they are replaced, such as files in a runtime image or an exploded WAR.
+ *
+ * A target is unchanged if it has the size and modification time of its source. If only the modification time differs, the contents are compared, using
+ * the CRC of the source when it is known, and the modification time of the target is updated if they match. Changed targets are written to a temporary
+ * file and atomically renamed over the target so that a runtime or file watcher does not observe partially written files. The temporary file is written
+ * next to the target or, when the directory of the target is scanned for new files, in a staging directory on the same file system.
+ */
+public class FileSync {
+    /**
+     * The suffix of temporary files written next to their target.
+     */
+    public static final String TEMP_SUFFIX = ".f3tmp";
+
+    protected FileSync() {
+    }
+
+    /**
+     * Returns the contents of a file as a source.
+     *
+     * @param file the file
+     * @return the source
+     */
+    public static Source source(final File file) {
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        return new Source() {
+            public long getSize() {
+                return size;
+            }
+
+            public long getLastModified() {
+                return lastModified;
+            }
+
+            public long getCrc() {
+                return -1;
+            }
+
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+        };
+    }
+
+    /**
+     * Returns the temporary file used to replace a target.
+     *
+     * @param target the target
+     * @return the temporary file
+     */
+    public static File getTempFile(File target) {
+        return new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Atomically renames a temporary file over its target.
+     *
+     * @param temp   the temporary file
+     * @param target the target
+     * @throws IOException if the file cannot be renamed
+     */
+    public static void commit(File temp, File target) throws IOException {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns true if a target file has the contents of a source. If the contents match but the modification times differ, the modification time of the
+     * target is set to that of the source so that later checks do not read the file.
+     *
+     * @param target the target
+     * @param source the source
+     * @return true if the target is unchanged
+     * @throws IOException if there is an error reading the target or source
+     */
+    public static boolean isUnchanged(File target, Source source) throws IOException {
+        if (!target.isFile() || target.length() != source.getSize()) {
+            return false;
+        }
+        long lastModified = source.getLastModified();
+        if (lastModified > 0 && target.lastModified() == lastModified) {
+            return true;
+        }
+        long crc = source.getCrc();
+        boolean unchanged = crc >= 0 ? crc(target) == crc : contentEquals(target, source);
+        if (unchanged && lastModified > 0) {
+            target.setLastModified(lastModified);
+        }
+        return unchanged;
+    }
+
+    /**
+     * Replaces a target with the contents of a source, writing the contents to a temporary file next to the target. The target is given the modification
+     * time of the source.
+     *
+     * @param target the target
+     * @param source the source
+     * @return the number of bytes written
+     * @throws IOException if there is an error reading the source or writing the target
+     */
+    public static long replace(File target, Source source) throws IOException {
+        return write(source, getTempFile(target), target);
+    }
+
+    /**
+     * Replaces a target with the contents of a source, writing the contents to a temporary file in a staging directory. The staging directory must be on
+     * the same file system as the target.
+     *
+     * @param target           the target
+     * @param source           the source
+     * @param stagingDirectory the staging directory
+     * @return the number of bytes written
+     * @throws IOException if there is an error reading the source or writing the target
+     */
+    public static long replace(File target, Source source, File stagingDirectory) throws IOException {
+        stagingDirectory.mkdirs();
+        return write(source, new File(stagingDirectory, target.getName() + TEMP_SUFFIX), target);
+    }
+
+    private static long write(Source source, File temp, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        try {
+            long bytes;
+            try (InputStream input = source.open(); OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+                bytes = FileHelper.copy(input, output);
+            }
+            if (source.getLastModified() > 0) {
+                temp.setLastModified(source.getLastModified());
+            }
+            commit(temp, target);
+            return bytes;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] buffer = new byte[FileHelper.BUFFER * 4];
+            int n;
+            while (-1 != (n = stream.read(buffer))) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static boolean contentEquals(File target, Source source) throws IOException {
+        try (InputStream first = new FileInputStream(target); InputStream second = source.open()) {
+            byte[] firstBuffer = new byte[FileHelper.BUFFER * 4];
+            byte[] secondBuffer = new byte[FileHelper.BUFFER * 4];
+            while (true) {
+                int n = read(first, firstBuffer);
+                if (n != read(second, secondBuffer)) {
+                    return false;
+                }
+                if (n == 0) {
+                    return true;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (firstBuffer[i] != secondBuffer[i]) {
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a buffer unless the end of the stream is reached.
+     */
+    private static int read(InputStream stream, byte[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length && (n = stream.read(buffer, total, buffer.length - total)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * The contents of a file to sync.
+     */
+    public interface Source {
+
+        /**
+         * Returns the size of the contents.
+         *
+         * @return the size
+         */
+        long getSize();
+
+        /**
+         * Returns the modification time of the contents.
+         *
+         * @return the modification time or -1 if it is not known
+         */
+        long getLastModified();
+
+        /**
+         * Returns the CRC-32 of the contents if it is known without reading them, such as for an archive entry.
+         *
+         * @return the CRC or -1 if it is not known
+         * @throws IOException if there is an error reading the CRC
+         */
+        long getCrc() throws IOException;
+
+        /**
+         * Opens the contents.
+         *
+         * @return the stream
+         * @throws IOException if there is an error opening the contents
+         */
+        InputStream open() throws IOException;
+
+    }
+
+}
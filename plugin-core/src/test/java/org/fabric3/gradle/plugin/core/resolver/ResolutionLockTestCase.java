@@ -0,0 +1,147 @@
+/*
+ * Fabric3
+ * Copyright (c) 2009-2015 Metaform Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fabric3.gradle.plugin.core.resolver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+/**
+ *
+ */
+public class ResolutionLockTestCase extends TestCase {
+    private File directory;
+    private File lockFile;
+    private Artifact declared;
+    private Artifact resolved;
+
+    public void testRoundTrip() throws Exception {
+        ResolutionLock lock = ResolutionLock.create(lockFile);
+        lock.put(declared, resolved, "abc123", 1000L);
+        lock.save();
+
+        List<String> lines = Files.readAllLines(lockFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("#"));
+        assertEquals("org.fabric3:test:jar:1.0-SNAPSHOT=1.0-20150101.120000-1|abc123|5|1000", lines.get(1));
+
+        ResolutionLock loaded = ResolutionLock.load(lockFile);
+        assertTrue(loaded.isEnabled());
+        assertFalse(loaded.isWritable());
+        ResolutionLock.Entry entry = loaded.get(declared);
+        assertEquals("1.0-20150101.120000-1", entry.getVersion());
+        assertEquals("abc123", entry.getChecksum());
+        assertEquals(5, entry.getSize());
+        assertEquals(1000, entry.getTimestamp());
+        assertNull(loaded.get(new DefaultArtifact("org.fabric3:other:1.0")));
+    }
+
+    public void testReadOnlyLockRejectsPut() throws Exception {
+        ResolutionLock.create(lockFile).save();
+        ResolutionLock lock = ResolutionLock.load(lockFile);
+        try {
+            lock.put(declared, resolved, "abc123", 1000L);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testWritableLockRecordsResolutions() throws Exception {
+        ResolutionLock.create(lockFile).save();
+        long length = lockFile.length();
+
+        ResolutionLock unchanged = ResolutionLock.load(lockFile, true);
+        unchanged.save();
+        assertEquals(length, lockFile.length());
+
+        ResolutionLock lock = ResolutionLock.load(lockFile, true);
+        lock.put(declared, resolved, "abc123", 1000L);
+        lock.save();
+        assertEquals("abc123", ResolutionLock.load(lockFile).get(declared).getChecksum());
+    }
+
+    public void testStaleSnapshot() throws Exception {
+        ResolutionLock created = ResolutionLock.create(lockFile);
+        created.put(declared, resolved, "abc123", 1000L);
+        Artifact release = new DefaultArtifact("org.fabric3:release:1.0");
+        created.put(release, new DefaultArtifact("org.fabric3:release:1.0").setFile(resolved.getFile()), "def456", 1000L);
+        created.save();
+        long freshness = 60000L;
+
+        ResolutionLock readOnly = ResolutionLock.load(lockFile);
+        assertTrue(readOnly.isStale(declared, freshness));
+        assertEquals("1.0-20150101.120000-1", readOnly.getPinned(declared, freshness).getVersion());
+
+        ResolutionLock writable = ResolutionLock.load(lockFile, true);
+        assertTrue(writable.isStale(declared, freshness));
+        assertNull(writable.getPinned(declared, freshness));
+
+        assertFalse(writable.isStale(release, freshness));
+        assertEquals("def456", writable.getPinned(release, freshness).getChecksum());
+
+        writable.put(declared, resolved, "abc123", System.currentTimeMillis());
+        assertFalse(writable.isStale(declared, freshness));
+        assertEquals("abc123", writable.getPinned(declared, freshness).getChecksum());
+    }
+
+    public void testMissingLockIsDisabled() throws Exception {
+        ResolutionLock lock = ResolutionLock.load(lockFile, true);
+        assertFalse(lock.isEnabled());
+        assertNull(lock.get(declared));
+        lock.save();
+        assertFalse(lockFile.exists());
+    }
+
+    public void testInvalidEntry() throws Exception {
+        try (OutputStream stream = new FileOutputStream(lockFile)) {
+            stream.write("org.fabric3:test:jar:1.0=1.0|abc123\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            ResolutionLock.load(lockFile);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("lock").toFile();
+        lockFile = new File(directory, ResolutionLock.LOCK_FILE);
+        File file = new File(directory, "test.jar");
+        Files.write(file.toPath(), "hello".getBytes(StandardCharsets.UTF_8));
+        declared = new DefaultArtifact("org.fabric3:test:1.0-SNAPSHOT");
+        resolved = new DefaultArtifact("org.fabric3:test:1.0-20150101.120000-1").setFile(file);
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}